@@ -0,0 +1,207 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.crud.MetadataResolver;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.metadata.mongo.MongoDataStoreParser;
+import com.redhat.lightblue.metadata.parser.Extensions;
+import com.redhat.lightblue.metadata.parser.JSONMetadataParser;
+import com.redhat.lightblue.metadata.types.DefaultTypes;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+
+/**
+ * Metadata and documents used by the benchmarks. The test metadata and
+ * documents of the crud module are loaded from the classpath, and documents
+ * of arbitrary size and nesting depth are generated with their metadata.
+ */
+public final class BenchmarkData {
+
+    public static final JsonNodeFactory NODE_FACTORY = JsonNodeFactory.withExactBigDecimals(true);
+
+    /**
+     * Name of the generated nested entity
+     */
+    public static final String NESTED_ENTITY = "nested";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Loads a json document from the classpath
+     */
+    public static JsonNode loadJson(String resource) throws IOException {
+        try (InputStream is = BenchmarkData.class.getClassLoader().getResourceAsStream(resource)) {
+            if (is == null) {
+                throw new IOException("Resource not found:" + resource);
+            }
+            StringBuilder bld = new StringBuilder();
+            Reader reader = new InputStreamReader(is, StandardCharsets.UTF_8);
+            char[] buf = new char[4096];
+            int n;
+            while ((n = reader.read(buf)) > 0) {
+                bld.append(buf, 0, n);
+            }
+            return JsonUtils.json(bld.toString());
+        }
+    }
+
+    /**
+     * Parses entity metadata, the same way the mongo metadata does
+     */
+    public static EntityMetadata parseMetadata(JsonNode node) {
+        Extensions<JsonNode> extensions = new Extensions<>();
+        extensions.addDefaultExtensions();
+        extensions.registerDataStoreParser("mongo", new MongoDataStoreParser<JsonNode>());
+        JSONMetadataParser parser = new JSONMetadataParser(extensions, new DefaultTypes(), NODE_FACTORY);
+        EntityMetadata md = parser.parseEntityMetadata(node);
+        PredefinedFields.ensurePredefinedFields(md);
+        return md;
+    }
+
+    /**
+     * Loads entity metadata from the classpath
+     */
+    public static EntityMetadata loadMetadata(String resource) throws IOException {
+        return parseMetadata(loadJson(resource));
+    }
+
+    /**
+     * Returns a metadata resolver returning md
+     */
+    public static MetadataResolver resolver(final EntityMetadata md) {
+        return new MetadataResolver() {
+            @Override
+            public EntityMetadata getEntityMetadata(String entityName) {
+                return md;
+            }
+        };
+    }
+
+    /**
+     * Returns testdata1.json, an instance of testMetadata.json, with all its
+     * arrays containing arraySize elements
+     */
+    public static JsonDoc testDocument(int arraySize) throws IOException {
+        ObjectNode root = (ObjectNode) loadJson("testdata1.json");
+        ObjectNode field6 = (ObjectNode) root.get("field6");
+        ArrayNode nf5 = field6.putArray("nf5");
+        ArrayNode nf6 = field6.putArray("nf6");
+        ArrayNode field7 = root.putArray("field7");
+        for (int i = 0; i < arraySize; i++) {
+            nf5.add(i);
+            nf6.add("value" + i);
+            ObjectNode elem = field7.addObject();
+            elem.put("elemf1", "value" + i + "_1");
+            elem.put("elemf2", "value" + i + "_2");
+            elem.put("elemf3", i);
+        }
+        return new JsonDoc(root);
+    }
+
+    /**
+     * Returns the metadata of an entity with an object nested depth levels
+     * deep, and an array of objects:
+     *
+     * <pre>
+     *   level: { s1, s2, i1, b1, child: { s1, s2, i1, b1, child: ... } }
+     *   items: [ { s1, s2, i1, b1 } ]
+     * </pre>
+     */
+    public static EntityMetadata nestedMetadata(int depth) {
+        ObjectNode root = NODE_FACTORY.objectNode();
+        ObjectNode info = root.putObject("entityInfo");
+        info.put("name", NESTED_ENTITY);
+        ObjectNode ds = info.putObject("datastore");
+        ds.put("backend", "mongo");
+        ds.put("collection", NESTED_ENTITY);
+        ObjectNode schema = root.putObject("schema");
+        schema.put("name", NESTED_ENTITY);
+        schema.putObject("version").put("value", "1.0").put("changelog", "benchmark");
+        schema.putObject("status").put("value", "active");
+        ObjectNode access = schema.putObject("access");
+        for (String op : new String[]{"insert", "update", "delete", "find"}) {
+            access.putArray(op).add("anyone");
+        }
+        ObjectNode fields = schema.putObject("fields");
+        fields.putObject("objectType").put("type", "string");
+        fields.putObject("_id").put("type", "string");
+        if (depth > 0) {
+            ObjectNode level = fields.putObject("level");
+            level.put("type", "object");
+            addLevelFields(level.putObject("fields"), depth);
+        }
+        ObjectNode items = fields.putObject("items");
+        items.put("type", "array");
+        ObjectNode item = items.putObject("items");
+        item.put("type", "object");
+        addLevelFields(item.putObject("fields"), 1);
+        return parseMetadata(root);
+    }
+
+    /**
+     * Returns an instance of nestedMetadata(depth) with arraySize items
+     */
+    public static JsonDoc nestedDocument(int depth, int arraySize) {
+        ObjectNode root = NODE_FACTORY.objectNode();
+        root.put("objectType", NESTED_ENTITY);
+        if (depth > 0) {
+            addLevelValues(root.putObject("level"), depth, 0);
+        }
+        ArrayNode items = root.putArray("items");
+        for (int i = 0; i < arraySize; i++) {
+            addLevelValues(items.addObject(), 1, i);
+        }
+        return new JsonDoc(root);
+    }
+
+    private static void addLevelFields(ObjectNode fields, int depth) {
+        fields.putObject("s1").put("type", "string");
+        fields.putObject("s2").put("type", "string");
+        fields.putObject("i1").put("type", "integer");
+        fields.putObject("b1").put("type", "boolean");
+        if (depth > 1) {
+            ObjectNode child = fields.putObject("child");
+            child.put("type", "object");
+            addLevelFields(child.putObject("fields"), depth - 1);
+        }
+    }
+
+    private static void addLevelValues(ObjectNode node, int depth, int n) {
+        node.put("s1", "string value " + n);
+        node.put("s2", "another string value " + depth);
+        node.put("i1", n * depth);
+        node.put("b1", n % 2 == 0);
+        if (depth > 1) {
+            addLevelValues(node.putObject("child"), depth - 1, n);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.redhat.lightblue.mongo.hystrix.FindOneCommand;
+import com.redhat.lightblue.mongo.test.EmbeddedMongo;
+
+/**
+ * Benchmarks findOne by _id with thread and semaphore isolation of the
+ * Hystrix command against the embedded mongo. The sampled latencies show
+ * the overhead of handing the command to the thread pool.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindOneIsolationBenchmark {
+
+    private static final int NUM_DOCS = 1000;
+
+    @Param({"THREAD", "SEMAPHORE"})
+    public HystrixCommandProperties.ExecutionIsolationStrategy isolation;
+
+    private EmbeddedMongo mongo;
+    private DBCollection coll;
+
+    /**
+     * The _id of the next document read by a benchmark thread
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        DBObject nextQuery() {
+            next = (next + 1) % NUM_DOCS;
+            return new BasicDBObject("_id", next);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        mongo = EmbeddedMongo.getInstance();
+        coll = mongo.getDB().getCollection("findOneBenchmark");
+        for (int i = 0; i < NUM_DOCS; i++) {
+            coll.insert(new BasicDBObject("_id", i).append("value", "value" + i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongo.reset();
+    }
+
+    @Benchmark
+    public DBObject findOne(Cursor cursor) {
+        DBObject query = cursor.nextQuery();
+        DBObject doc = new FindOneCommand(coll, query, null, isolation).execute();
+        if (doc == null) {
+            throw new IllegalStateException("Not found:" + query);
+        }
+        return doc;
+    }
+}
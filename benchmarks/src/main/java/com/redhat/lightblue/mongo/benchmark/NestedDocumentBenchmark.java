@@ -0,0 +1,97 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.DBObject;
+import com.redhat.lightblue.crud.mongo.Translator;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+
+/**
+ * Benchmarks document translation and projection on generated documents
+ * with an object nested depth levels deep, and an array of arraySize objects.
+ *
+ * @see BenchmarkData#nestedMetadata(int)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class NestedDocumentBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int depth;
+
+    @Param({"0", "16", "256"})
+    public int arraySize;
+
+    /**
+     * Whether the translator uses compiled translation plans
+     */
+    @Param({"true", "false"})
+    public boolean compiled;
+
+    private Translator translator;
+    private JsonDoc doc;
+    private DBObject dbObject;
+    private Projector projector;
+
+    @Setup
+    public void setup() throws Exception {
+        EntityMetadata md = BenchmarkData.nestedMetadata(depth);
+        translator = new Translator(BenchmarkData.resolver(md), BenchmarkData.NODE_FACTORY, compiled);
+        doc = BenchmarkData.nestedDocument(depth, arraySize);
+        dbObject = translator.toBson(doc);
+        projector = Projector.getInstance(Projection.fromJson(JsonUtils.json("{\"field\":\"*\",\"recursive\":true}")), md);
+    }
+
+    @Benchmark
+    public JsonDoc toJson() {
+        return translator.toJson(dbObject);
+    }
+
+    @Benchmark
+    public DBObject toBson() {
+        return translator.toBson(doc);
+    }
+
+    @Benchmark
+    public JsonDoc project() {
+        return projector.project(doc, BenchmarkData.NODE_FACTORY);
+    }
+}
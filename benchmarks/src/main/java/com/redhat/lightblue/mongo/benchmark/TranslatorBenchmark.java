@@ -0,0 +1,147 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mongodb.DBObject;
+import com.redhat.lightblue.crud.mongo.Translator;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.JsonUtils;
+
+/**
+ * Benchmarks the Translator and Projector steps of a find on
+ * testMetadata.json, with testdata1.json documents whose arrays contain
+ * arraySize elements. The query, sort and projection benchmarks do not depend
+ * on arraySize.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class TranslatorBenchmark {
+
+    private static final String QUERY = "{'$and':["
+            + "{'field':'field1','op':'=','rvalue':'f1'},"
+            + "{'field':'field3','op':'>','rvalue':0},"
+            + "{'field':'field6.nf7.nnf2','op':'$in','values':[1,2,3]},"
+            + "{'array':'field6.nf6','contains':'$any','values':['one','two']},"
+            + "{'array':'field7','elemMatch':{'field':'elemf3','op':'>=','rvalue':1}}]}";
+
+    private static final String PROJECTION = "["
+            + "{'field':'field1','include':true},"
+            + "{'field':'field6','include':true,'recursive':true},"
+            + "{'field':'field7.*.elemf1','include':true}]";
+
+    private static final String SORT = "{'field3':'$asc'}";
+
+    @Param({"2", "64", "1024"})
+    public int arraySize;
+
+    /**
+     * Whether the translator uses compiled translation plans and query
+     * templates
+     */
+    @Param({"true", "false"})
+    public boolean compiled;
+
+    private EntityMetadata md;
+    private Translator translator;
+    private JsonDoc doc;
+    private DBObject dbObject;
+    private QueryExpression query;
+    private Projection projection;
+    private Sort sort;
+    private Projector projector;
+
+    @Setup
+    public void setup() throws Exception {
+        md = BenchmarkData.loadMetadata("testMetadata.json");
+        translator = new Translator(BenchmarkData.resolver(md), BenchmarkData.NODE_FACTORY, compiled);
+        doc = BenchmarkData.testDocument(arraySize);
+        dbObject = translator.toBson(doc);
+        query = QueryExpression.fromJson(json(QUERY));
+        projection = Projection.fromJson(json(PROJECTION));
+        sort = Sort.fromJson(json(SORT));
+        projector = Projector.getInstance(projection, md);
+    }
+
+    private static JsonNode json(String s) throws Exception {
+        return JsonUtils.json(s.replace('\'', '\"'));
+    }
+
+    @Benchmark
+    public JsonDoc toJson() {
+        return translator.toJson(dbObject);
+    }
+
+    @Benchmark
+    public DBObject toBson() {
+        return translator.toBson(doc);
+    }
+
+    @Benchmark
+    public DBObject translateQuery() {
+        return translator.translate(md, query);
+    }
+
+    @Benchmark
+    public DBObject translateSort() {
+        return translator.translate(sort);
+    }
+
+    @Benchmark
+    public DBObject translateProjection() {
+        return translator.translateProjection(md, projection, query, sort);
+    }
+
+    @Benchmark
+    public JsonDoc project() {
+        return projector.project(doc, BenchmarkData.NODE_FACTORY);
+    }
+
+    /**
+     * The per-document work of a find: translate the document read from the
+     * db to json, and project it
+     */
+    @Benchmark
+    public JsonDoc findDocument() {
+        return projector.project(translator.toJson(dbObject), BenchmarkData.NODE_FACTORY);
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.common.mongo;
+
+import java.io.Serializable;
+
+/**
+ * Datasource specific settings for the operations running on a Mongo
+ * datasource
+ */
+public class DatasourceSettings implements Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    /**
+     * Default number of updated documents written to the db in one batch. By
+     * default, updated documents are written one by one.
+     */
+    public static final int DEFAULT_UPDATE_BATCH_SIZE = 1;
+
+    /**
+     * Default maximum age in milliseconds of a batch of updated documents. 0
+     * means there is no age limit.
+     */
+    public static final long DEFAULT_UPDATE_BATCH_MAX_AGE_MS = 0;
+
+    /**
+     * Default number of documents removed in one batch by server side
+     * deletes. By default, the result set is removed with a single call.
+     */
+    public static final int DEFAULT_DELETE_BATCH_SIZE = 0;
+
+    /**
+     * Default size in bytes of the capped collection the slow operations are
+     * written to
+     */
+    public static final long DEFAULT_SLOW_OPERATION_COLLECTION_SIZE = 16 * 1024 * 1024;
+
+    private int updateBatchSize = DEFAULT_UPDATE_BATCH_SIZE;
+    private long updateBatchMaxAgeMS = DEFAULT_UPDATE_BATCH_MAX_AGE_MS;
+    private boolean serverSideDelete = false;
+    private boolean saveCollapseLookups = false;
+    private boolean serverSideUpdate = false;
+    private int deleteBatchSize = DEFAULT_DELETE_BATCH_SIZE;
+    private String findReadPreference;
+    private boolean exprComparisons = false;
+    private int findBatchSize = 0;
+    private long findMaxTimeMS = 0;
+    private boolean findNoCursorTimeout = false;
+    private boolean findPartial = false;
+    private boolean findExhaust = false;
+    private int findParallelThreshold = 0;
+    private long slowOperationThresholdMS = 0;
+    private boolean slowOperationExplain = false;
+    private String slowOperationCollection;
+    private long slowOperationCollectionSize = DEFAULT_SLOW_OPERATION_COLLECTION_SIZE;
+
+    /**
+     * Gets the number of updated documents written to the db in one batch
+     */
+    public int getUpdateBatchSize() {
+        return updateBatchSize;
+    }
+
+    /**
+     * Sets the number of updated documents written to the db in one batch. If
+     * 1 or less, updated documents are written one by one.
+     */
+    public void setUpdateBatchSize(int updateBatchSize) {
+        this.updateBatchSize = updateBatchSize;
+    }
+
+    /**
+     * Gets the maximum age in milliseconds of a batch of updated documents
+     */
+    public long getUpdateBatchMaxAgeMS() {
+        return updateBatchMaxAgeMS;
+    }
+
+    /**
+     * Sets the maximum age in milliseconds of a batch of updated documents. The
+     * age is checked per document, when the next document is read from the
+     * cursor, so a batch can wait longer if the cursor is slow. 0 means there
+     * is no age limit, and the batch is written when it is full.
+     */
+    public void setUpdateBatchMaxAgeMS(long updateBatchMaxAgeMS) {
+        this.updateBatchMaxAgeMS = updateBatchMaxAgeMS;
+    }
+
+    /**
+     * If true, no per-document delete interceptors are registered for the
+     * entities of this datasource, so entities without delete hooks can be
+     * deleted without retrieving the documents
+     */
+    public boolean isServerSideDelete() {
+        return serverSideDelete;
+    }
+
+    /**
+     * Sets whether entities without delete hooks can be deleted without
+     * retrieving the documents. Set this only if there are no
+     * PRE_CRUD_DELETE_DOC or POST_CRUD_DELETE_DOC interceptors.
+     */
+    public void setServerSideDelete(boolean serverSideDelete) {
+        this.serverSideDelete = serverSideDelete;
+    }
+
+    /**
+     * If true, the lookups of the current versions of saved documents are
+     * collapsed with the concurrent lookups of other requests on the same
+     * collection
+     */
+    public boolean isSaveCollapseLookups() {
+        return saveCollapseLookups;
+    }
+
+    /**
+     * Sets whether the lookups of the current versions of saved documents are
+     * collapsed into batched $in queries. A collapsed lookup waits up to the
+     * collapser batch delay before it is sent, so enable this only if many
+     * concurrent saves run on the same collection.
+     */
+    public void setSaveCollapseLookups(boolean saveCollapseLookups) {
+        this.saveCollapseLookups = saveCollapseLookups;
+    }
+
+    /**
+     * If true, no per-document update interceptors are registered for the
+     * entities of this datasource, so updates that can be translated to a
+     * native update expression can update all documents with a single call
+     * if the updated documents are not projected and there are no update
+     * hooks
+     */
+    public boolean isServerSideUpdate() {
+        return serverSideUpdate;
+    }
+
+    /**
+     * Sets whether updates can be performed with a single multi-document
+     * update call without retrieving the documents. Set this only if there are
+     * no PRE_CRUD_UPDATE_DOC or POST_CRUD_UPDATE_DOC interceptors.
+     */
+    public void setServerSideUpdate(boolean serverSideUpdate) {
+        this.serverSideUpdate = serverSideUpdate;
+    }
+
+    /**
+     * Gets the number of documents removed in one batch by server side deletes
+     */
+    public int getDeleteBatchSize() {
+        return deleteBatchSize;
+    }
+
+    /**
+     * Sets the number of documents removed in one batch by server side
+     * deletes. If 0 or less, the result set is removed with a single call.
+     */
+    public void setDeleteBatchSize(int deleteBatchSize) {
+        this.deleteBatchSize = deleteBatchSize;
+    }
+
+    /**
+     * Gets the read preference for the find operations on this datasource. If
+     * null, the read preference of the client is used.
+     */
+    public String getFindReadPreference() {
+        return findReadPreference;
+    }
+
+    /**
+     * Sets the read preference for the find operations on this datasource,
+     * one of primary, primaryPreferred, secondary, secondaryPreferred, or
+     * nearest. The reads performed by updates, deletes and saves always go to
+     * the primary.
+     */
+    public void setFindReadPreference(String findReadPreference) {
+        this.findReadPreference = findReadPreference;
+    }
+
+    /**
+     * If true, field to field comparisons are translated to $expr queries
+     * instead of $where JavaScript when possible
+     */
+    public boolean isExprComparisons() {
+        return exprComparisons;
+    }
+
+    /**
+     * Sets whether field to field comparisons are translated to $expr queries
+     * instead of $where JavaScript when possible. $expr requires MongoDB 3.6
+     * or later.
+     */
+    public void setExprComparisons(boolean exprComparisons) {
+        this.exprComparisons = exprComparisons;
+    }
+
+    /**
+     * Gets the number of documents returned by the server in one batch for
+     * find operations. If 0, the default batch size of the finder is used.
+     */
+    public int getFindBatchSize() {
+        return findBatchSize;
+    }
+
+    /**
+     * Sets the number of documents returned by the server in one batch for
+     * find operations. If 0, the default batch size of the finder is used.
+     */
+    public void setFindBatchSize(int findBatchSize) {
+        this.findBatchSize = findBatchSize;
+    }
+
+    /**
+     * Gets the maximum time in milliseconds the server spends executing a find
+     * query. 0 means there is no time limit. The limit is enforced by the
+     * server while the cursor is iterated, independently of the Hystrix
+     * timeout of the find command.
+     */
+    public long getFindMaxTimeMS() {
+        return findMaxTimeMS;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds the server spends executing a find
+     * query. 0 means there is no time limit. The limit is enforced by the
+     * server while the cursor is iterated, independently of the Hystrix
+     * timeout of the find command.
+     */
+    public void setFindMaxTimeMS(long findMaxTimeMS) {
+        this.findMaxTimeMS = findMaxTimeMS;
+    }
+
+    /**
+     * If true, the server does not time out idle find cursors
+     */
+    public boolean isFindNoCursorTimeout() {
+        return findNoCursorTimeout;
+    }
+
+    /**
+     * Sets whether the server times out idle find cursors
+     */
+    public void setFindNoCursorTimeout(boolean findNoCursorTimeout) {
+        this.findNoCursorTimeout = findNoCursorTimeout;
+    }
+
+    /**
+     * If true, find operations on a sharded cluster return partial results
+     * when some shards are down
+     */
+    public boolean isFindPartial() {
+        return findPartial;
+    }
+
+    /**
+     * Sets whether find operations on a sharded cluster return partial
+     * results when some shards are down
+     */
+    public void setFindPartial(boolean findPartial) {
+        this.findPartial = findPartial;
+    }
+
+    /**
+     * If true, find operations use exhaust cursors
+     */
+    public boolean isFindExhaust() {
+        return findExhaust;
+    }
+
+    /**
+     * Sets whether find operations use exhaust cursors, so the server streams
+     * all batches without waiting for getMore requests. Exhaust cursors are
+     * not supported by mongos.
+     */
+    public void setFindExhaust(boolean findExhaust) {
+        this.findExhaust = findExhaust;
+    }
+
+    /**
+     * Gets the minimum number of found documents translated and projected in
+     * parallel. 0 means found documents are always processed sequentially.
+     */
+    public int getFindParallelThreshold() {
+        return findParallelThreshold;
+    }
+
+    /**
+     * Sets the minimum number of found documents translated and projected in
+     * parallel. Large result sets are processed in chunks of this size. If 0
+     * or less, found documents are always processed sequentially.
+     */
+    public void setFindParallelThreshold(int findParallelThreshold) {
+        this.findParallelThreshold = findParallelThreshold;
+    }
+
+    /**
+     * Gets the duration in milliseconds above which find, update and delete
+     * operations are recorded as slow operations. 0 means slow operations
+     * are not recorded.
+     */
+    public long getSlowOperationThresholdMS() {
+        return slowOperationThresholdMS;
+    }
+
+    /**
+     * Sets the duration in milliseconds above which find, update and delete
+     * operations are recorded as slow operations. If 0 or less, slow
+     * operations are not recorded.
+     */
+    public void setSlowOperationThresholdMS(long slowOperationThresholdMS) {
+        this.slowOperationThresholdMS = slowOperationThresholdMS;
+    }
+
+    /**
+     * If true, the query of a slow operation is explained
+     */
+    public boolean isSlowOperationExplain() {
+        return slowOperationExplain;
+    }
+
+    /**
+     * Sets whether the query of a slow operation is explained to capture its
+     * index usage. The explain runs asynchronously, after the operation
+     * returns.
+     */
+    public void setSlowOperationExplain(boolean slowOperationExplain) {
+        this.slowOperationExplain = slowOperationExplain;
+    }
+
+    /**
+     * Gets the name of the capped collection slow operations are written to,
+     * or null if they are only kept in memory
+     */
+    public String getSlowOperationCollection() {
+        return slowOperationCollection;
+    }
+
+    /**
+     * Sets the name of the capped collection slow operations are written to.
+     * The collection is created in the database of the datasource if it does
+     * not exist. If null, slow operations are only kept in memory.
+     */
+    public void setSlowOperationCollection(String slowOperationCollection) {
+        this.slowOperationCollection = slowOperationCollection;
+    }
+
+    /**
+     * Gets the size in bytes of the capped slow operation collection
+     */
+    public long getSlowOperationCollectionSize() {
+        return slowOperationCollectionSize;
+    }
+
+    /**
+     * Sets the size in bytes the capped slow operation collection is created
+     * with
+     */
+    public void setSlowOperationCollectionSize(long slowOperationCollectionSize) {
+        this.slowOperationCollectionSize = slowOperationCollectionSize;
+    }
+
+    @Override
+    public String toString() {
+        return "updateBatchSize:" + updateBatchSize + " updateBatchMaxAgeMS:" + updateBatchMaxAgeMS
+                + " serverSideUpdate:" + serverSideUpdate
+                + " serverSideDelete:" + serverSideDelete + " deleteBatchSize:" + deleteBatchSize
+                + " saveCollapseLookups:" + saveCollapseLookups
+                + " findReadPreference:" + findReadPreference
+                + " exprComparisons:" + exprComparisons
+                + " findBatchSize:" + findBatchSize + " findMaxTimeMS:" + findMaxTimeMS
+                + " findNoCursorTimeout:" + findNoCursorTimeout + " findPartial:" + findPartial
+                + " findExhaust:" + findExhaust + " findParallelThreshold:" + findParallelThreshold
+                + " slowOperationThresholdMS:" + slowOperationThresholdMS
+                + " slowOperationExplain:" + slowOperationExplain
+                + " slowOperationCollection:" + slowOperationCollection
+                + " slowOperationCollectionSize:" + slowOperationCollectionSize;
+    }
+}
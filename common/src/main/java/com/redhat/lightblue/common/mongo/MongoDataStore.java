@@ -32,6 +32,7 @@ public class MongoDataStore implements DataStore, Serializable {
     private String datasourceName;
     private String databaseName;
     private String collectionName;
+    private String readPreference;
 
     public MongoDataStore() {
     }
@@ -103,6 +104,27 @@ public class MongoDataStore implements DataStore, Serializable {
         this.collectionName = argCollectionName;
     }
 
+    /**
+     * Gets the read preference for the find operations on this collection.
+     * If null, the read preference of the datasource is used.
+     *
+     * @return the value of readPreference
+     */
+    public String getReadPreference() {
+        return this.readPreference;
+    }
+
+    /**
+     * Sets the read preference for the find operations on this collection,
+     * one of primary, primaryPreferred, secondary, secondaryPreferred, or
+     * nearest
+     *
+     * @param argReadPreference Value to assign to this.readPreference
+     */
+    public void setReadPreference(String argReadPreference) {
+        this.readPreference = argReadPreference;
+    }
+
     @Override
     public String toString() {
         StringBuilder bld = new StringBuilder(64);
@@ -115,6 +137,9 @@ public class MongoDataStore implements DataStore, Serializable {
         if (collectionName != null) {
             bld.append("collection:").append(collectionName);
         }
+        if (readPreference != null) {
+            bld.append(":readPreference:").append(readPreference);
+        }
         return bld.toString();
     }
 
@@ -23,7 +23,9 @@ import com.redhat.lightblue.config.DataSourcesConfiguration;
 import com.redhat.lightblue.config.ControllerConfiguration;
 import com.redhat.lightblue.config.ControllerFactory;
 import com.redhat.lightblue.crud.CRUDController;
+import com.redhat.lightblue.crud.mongo.JmxMetricsRegistry;
 import com.redhat.lightblue.crud.mongo.MongoCRUDController;
+import com.redhat.lightblue.crud.mongo.SlowOperationRecorder;
 
 public class MongoCRUDFactory implements ControllerFactory {
     @Override
@@ -31,7 +33,12 @@ public class MongoCRUDFactory implements ControllerFactory {
                                            DataSourcesConfiguration ds) {
         try {
             DBResolver resolver = new MongoDBResolver(ds);
-            return new MongoCRUDController(resolver);
+            MongoCRUDController controller = new MongoCRUDController(resolver);
+            if (Boolean.getBoolean(JmxMetricsRegistry.ENABLED_PROPERTY)) {
+                controller.setMetricsRegistry(JmxMetricsRegistry.getSharedInstance());
+            }
+            controller.setSlowOperationRecorder(SlowOperationRecorder.getSharedInstance());
+            return controller;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
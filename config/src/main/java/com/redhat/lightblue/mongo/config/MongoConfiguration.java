@@ -22,6 +22,7 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLSocketFactory;
@@ -40,10 +41,16 @@ import com.mongodb.DB;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
 import com.mongodb.MongoCredential;
+import com.mongodb.ReadPreference;
 import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.redhat.lightblue.common.mongo.DatasourceSettings;
 import com.redhat.lightblue.config.DataSourceConfiguration;
 import com.redhat.lightblue.metadata.mongo.MongoDataStoreParser;
 import com.redhat.lightblue.metadata.parser.DataStoreParser;
+import com.redhat.lightblue.mongo.hystrix.CommandSettings;
+import com.redhat.lightblue.mongo.hystrix.DatasourceCommandSettings;
+import com.netflix.hystrix.HystrixCommandProperties;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 
@@ -74,6 +81,40 @@ public class MongoConfiguration implements DataSourceConfiguration {
     private boolean ssl = Boolean.FALSE;
     private boolean noCertValidation = Boolean.FALSE;
     private Class metadataDataStoreParser = MongoDataStoreParser.class;
+    private transient volatile MongoClient client;
+    private Integer minConnectionsPerHost;
+    private Integer threadsAllowedToBlockForConnectionMultiplier;
+    private Integer maxWaitTime;
+    private Integer maxConnectionIdleTime;
+    private Integer maxConnectionLifeTime;
+    private Integer connectTimeout;
+    private Integer socketTimeout;
+    private Boolean socketKeepAlive;
+    private Integer heartbeatFrequency;
+    private Integer heartbeatConnectTimeout;
+    private Integer heartbeatSocketTimeout;
+    private Integer acceptableLatencyDifference;
+    private String readPreference;
+    private String writeConcern;
+    private String findReadPreference;
+    private boolean exprComparisons = false;
+    private int findBatchSize = 0;
+    private long findMaxTimeMS = 0;
+    private boolean findNoCursorTimeout = false;
+    private boolean findPartial = false;
+    private boolean findExhaust = false;
+    private DatasourceCommandSettings hystrixSettings;
+    private int findParallelThreshold = 0;
+    private long slowOperationThresholdMS = 0;
+    private boolean slowOperationExplain = false;
+    private String slowOperationCollection;
+    private long slowOperationCollectionSize = DatasourceSettings.DEFAULT_SLOW_OPERATION_COLLECTION_SIZE;
+    private int updateBatchSize = DatasourceSettings.DEFAULT_UPDATE_BATCH_SIZE;
+    private long updateBatchMaxAgeMS = DatasourceSettings.DEFAULT_UPDATE_BATCH_MAX_AGE_MS;
+    private boolean serverSideUpdate = false;
+    private boolean serverSideDelete = false;
+    private int deleteBatchSize = DatasourceSettings.DEFAULT_DELETE_BATCH_SIZE;
+    private boolean saveCollapseLookups = false;
 
     public void addServerAddress(String hostname, int port) throws UnknownHostException {
         this.servers.add(new ServerAddress(hostname, port));
@@ -179,6 +220,552 @@ public class MongoConfiguration implements DataSourceConfiguration {
         database = s;
     }
 
+    /**
+     * The number of updated documents written to the db in one batch
+     */
+    public int getUpdateBatchSize() {
+        return updateBatchSize;
+    }
+
+    /**
+     * The number of updated documents written to the db in one batch
+     */
+    public void setUpdateBatchSize(int n) {
+        updateBatchSize = n;
+    }
+
+    /**
+     * The maximum age in milliseconds of a batch of updated documents, checked
+     * per document
+     */
+    public long getUpdateBatchMaxAgeMS() {
+        return updateBatchMaxAgeMS;
+    }
+
+    /**
+     * The maximum age in milliseconds of a batch of updated documents, checked
+     * per document
+     */
+    public void setUpdateBatchMaxAgeMS(long l) {
+        updateBatchMaxAgeMS = l;
+    }
+
+    /**
+     * If true, there are no per-document update interceptors, and updates that
+     * can be translated are performed without retrieving the documents if
+     * there are no update hooks and no projection
+     */
+    public boolean isServerSideUpdate() {
+        return serverSideUpdate;
+    }
+
+    /**
+     * If true, there are no per-document update interceptors, and updates that
+     * can be translated are performed without retrieving the documents if
+     * there are no update hooks and no projection
+     */
+    public void setServerSideUpdate(boolean b) {
+        serverSideUpdate = b;
+    }
+
+    /**
+     * If true, there are no per-document delete interceptors, and entities
+     * without delete hooks are deleted without retrieving the documents
+     */
+    public boolean isServerSideDelete() {
+        return serverSideDelete;
+    }
+
+    /**
+     * If true, there are no per-document delete interceptors, and entities
+     * without delete hooks are deleted without retrieving the documents
+     */
+    public void setServerSideDelete(boolean b) {
+        serverSideDelete = b;
+    }
+
+    /**
+     * The number of documents removed in one batch by server side deletes
+     */
+    public int getDeleteBatchSize() {
+        return deleteBatchSize;
+    }
+
+    /**
+     * The number of documents removed in one batch by server side deletes
+     */
+    public void setDeleteBatchSize(int n) {
+        deleteBatchSize = n;
+    }
+
+    /**
+     * If true, the lookups of the current versions of saved documents are
+     * collapsed with concurrent lookups on the same collection
+     */
+    public boolean isSaveCollapseLookups() {
+        return saveCollapseLookups;
+    }
+
+    /**
+     * If true, the lookups of the current versions of saved documents are
+     * collapsed with concurrent lookups on the same collection
+     */
+    public void setSaveCollapseLookups(boolean b) {
+        saveCollapseLookups = b;
+    }
+
+    /**
+     * The minimum number of connections kept open to each host
+     */
+    public Integer getMinConnectionsPerHost() {
+        return minConnectionsPerHost;
+    }
+
+    /**
+     * The minimum number of connections kept open to each host
+     */
+    public void setMinConnectionsPerHost(Integer n) {
+        minConnectionsPerHost = n;
+    }
+
+    /**
+     * Multiplied by connectionsPerHost, gives the number of threads that can
+     * wait for a connection before the wait queue overflows
+     */
+    public Integer getThreadsAllowedToBlockForConnectionMultiplier() {
+        return threadsAllowedToBlockForConnectionMultiplier;
+    }
+
+    /**
+     * Multiplied by connectionsPerHost, gives the number of threads that can
+     * wait for a connection before the wait queue overflows
+     */
+    public void setThreadsAllowedToBlockForConnectionMultiplier(Integer n) {
+        threadsAllowedToBlockForConnectionMultiplier = n;
+    }
+
+    /**
+     * The maximum time in milliseconds a thread waits for a connection
+     */
+    public Integer getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * The maximum time in milliseconds a thread waits for a connection
+     */
+    public void setMaxWaitTime(Integer n) {
+        maxWaitTime = n;
+    }
+
+    /**
+     * The maximum time in milliseconds a pooled connection can stay idle
+     */
+    public Integer getMaxConnectionIdleTime() {
+        return maxConnectionIdleTime;
+    }
+
+    /**
+     * The maximum time in milliseconds a pooled connection can stay idle
+     */
+    public void setMaxConnectionIdleTime(Integer n) {
+        maxConnectionIdleTime = n;
+    }
+
+    /**
+     * The maximum life time in milliseconds of a pooled connection
+     */
+    public Integer getMaxConnectionLifeTime() {
+        return maxConnectionLifeTime;
+    }
+
+    /**
+     * The maximum life time in milliseconds of a pooled connection
+     */
+    public void setMaxConnectionLifeTime(Integer n) {
+        maxConnectionLifeTime = n;
+    }
+
+    /**
+     * The connection timeout in milliseconds
+     */
+    public Integer getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * The connection timeout in milliseconds
+     */
+    public void setConnectTimeout(Integer n) {
+        connectTimeout = n;
+    }
+
+    /**
+     * The socket read timeout in milliseconds
+     */
+    public Integer getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+     * The socket read timeout in milliseconds
+     */
+    public void setSocketTimeout(Integer n) {
+        socketTimeout = n;
+    }
+
+    /**
+     * Whether keep-alive is enabled on the sockets
+     */
+    public Boolean getSocketKeepAlive() {
+        return socketKeepAlive;
+    }
+
+    /**
+     * Whether keep-alive is enabled on the sockets
+     */
+    public void setSocketKeepAlive(Boolean b) {
+        socketKeepAlive = b;
+    }
+
+    /**
+     * How often in milliseconds the state of the servers is checked
+     */
+    public Integer getHeartbeatFrequency() {
+        return heartbeatFrequency;
+    }
+
+    /**
+     * How often in milliseconds the state of the servers is checked
+     */
+    public void setHeartbeatFrequency(Integer n) {
+        heartbeatFrequency = n;
+    }
+
+    /**
+     * The connection timeout in milliseconds for server state checks
+     */
+    public Integer getHeartbeatConnectTimeout() {
+        return heartbeatConnectTimeout;
+    }
+
+    /**
+     * The connection timeout in milliseconds for server state checks
+     */
+    public void setHeartbeatConnectTimeout(Integer n) {
+        heartbeatConnectTimeout = n;
+    }
+
+    /**
+     * The socket timeout in milliseconds for server state checks
+     */
+    public Integer getHeartbeatSocketTimeout() {
+        return heartbeatSocketTimeout;
+    }
+
+    /**
+     * The socket timeout in milliseconds for server state checks
+     */
+    public void setHeartbeatSocketTimeout(Integer n) {
+        heartbeatSocketTimeout = n;
+    }
+
+    /**
+     * Servers with ping times within this many milliseconds of the nearest
+     * server are eligible for reads not sent to the primary
+     */
+    public Integer getAcceptableLatencyDifference() {
+        return acceptableLatencyDifference;
+    }
+
+    /**
+     * Servers with ping times within this many milliseconds of the nearest
+     * server are eligible for reads not sent to the primary
+     */
+    public void setAcceptableLatencyDifference(Integer n) {
+        acceptableLatencyDifference = n;
+    }
+
+    /**
+     * The default read preference of the client, one of primary,
+     * primaryPreferred, secondary, secondaryPreferred, or nearest
+     */
+    public String getReadPreference() {
+        return readPreference;
+    }
+
+    /**
+     * The default read preference of the client, one of primary,
+     * primaryPreferred, secondary, secondaryPreferred, or nearest
+     */
+    public void setReadPreference(String s) {
+        if (s != null) {
+            // Validate
+            ReadPreference.valueOf(s);
+        }
+        readPreference = s;
+    }
+
+    /**
+     * The default write concern of the client, the name of one of the
+     * constants of WriteConcern, such as acknowledged, journaled, or majority
+     */
+    public String getWriteConcern() {
+        return writeConcern;
+    }
+
+    /**
+     * The default write concern of the client, the name of one of the
+     * constants of WriteConcern, such as acknowledged, journaled, or majority
+     */
+    public void setWriteConcern(String s) {
+        if (s != null && WriteConcern.valueOf(s) == null) {
+            throw new IllegalArgumentException("Invalid writeConcern:" + s);
+        }
+        writeConcern = s;
+    }
+
+    /**
+     * The read preference for the find operations on this datasource. Reads
+     * performed by updates, deletes and saves always go to the primary.
+     */
+    public String getFindReadPreference() {
+        return findReadPreference;
+    }
+
+    /**
+     * The read preference for the find operations on this datasource. Reads
+     * performed by updates, deletes and saves always go to the primary.
+     */
+    public void setFindReadPreference(String s) {
+        if (s != null) {
+            // Validate
+            ReadPreference.valueOf(s);
+        }
+        findReadPreference = s;
+    }
+
+    /**
+     * If true, field to field comparisons are translated to $expr queries
+     * instead of $where JavaScript when possible. Requires MongoDB 3.6 or
+     * later.
+     */
+    public boolean isExprComparisons() {
+        return exprComparisons;
+    }
+
+    /**
+     * If true, field to field comparisons are translated to $expr queries
+     * instead of $where JavaScript when possible. Requires MongoDB 3.6 or
+     * later.
+     */
+    public void setExprComparisons(boolean b) {
+        exprComparisons = b;
+    }
+
+    /**
+     * Number of documents returned by the server in one batch for find
+     * operations. If 0, the default batch size of the finder is used.
+     */
+    public int getFindBatchSize() {
+        return findBatchSize;
+    }
+
+    /**
+     * Number of documents returned by the server in one batch for find
+     * operations. If 0, the default batch size of the finder is used.
+     */
+    public void setFindBatchSize(int i) {
+        findBatchSize = i;
+    }
+
+    /**
+     * Maximum time in milliseconds the server spends executing a find query. 0
+     * means there is no time limit. The limit is enforced by the server while
+     * the cursor is iterated, independently of the Hystrix timeout of the
+     * find command.
+     */
+    public long getFindMaxTimeMS() {
+        return findMaxTimeMS;
+    }
+
+    /**
+     * Maximum time in milliseconds the server spends executing a find query. 0
+     * means there is no time limit. The limit is enforced by the server while
+     * the cursor is iterated, independently of the Hystrix timeout of the
+     * find command.
+     */
+    public void setFindMaxTimeMS(long l) {
+        findMaxTimeMS = l;
+    }
+
+    /**
+     * If true, the server does not time out idle find cursors
+     */
+    public boolean isFindNoCursorTimeout() {
+        return findNoCursorTimeout;
+    }
+
+    /**
+     * If true, the server does not time out idle find cursors
+     */
+    public void setFindNoCursorTimeout(boolean b) {
+        findNoCursorTimeout = b;
+    }
+
+    /**
+     * If true, find operations on a sharded cluster return partial results
+     * when some shards are down
+     */
+    public boolean isFindPartial() {
+        return findPartial;
+    }
+
+    /**
+     * If true, find operations on a sharded cluster return partial results
+     * when some shards are down
+     */
+    public void setFindPartial(boolean b) {
+        findPartial = b;
+    }
+
+    /**
+     * If true, find operations use exhaust cursors. Exhaust cursors are not
+     * supported by mongos.
+     */
+    public boolean isFindExhaust() {
+        return findExhaust;
+    }
+
+    /**
+     * If true, find operations use exhaust cursors. Exhaust cursors are not
+     * supported by mongos.
+     */
+    public void setFindExhaust(boolean b) {
+        findExhaust = b;
+    }
+
+    /**
+     * Minimum number of found documents translated and projected in parallel.
+     * If 0, found documents are always processed sequentially.
+     */
+    public int getFindParallelThreshold() {
+        return findParallelThreshold;
+    }
+
+    /**
+     * Minimum number of found documents translated and projected in parallel.
+     * If 0, found documents are always processed sequentially.
+     */
+    public void setFindParallelThreshold(int i) {
+        findParallelThreshold = i;
+    }
+
+    /**
+     * Duration in milliseconds above which find, update and delete operations
+     * are recorded as slow operations. If 0, slow operations are not
+     * recorded.
+     */
+    public long getSlowOperationThresholdMS() {
+        return slowOperationThresholdMS;
+    }
+
+    /**
+     * Duration in milliseconds above which find, update and delete operations
+     * are recorded as slow operations. If 0, slow operations are not
+     * recorded.
+     */
+    public void setSlowOperationThresholdMS(long l) {
+        slowOperationThresholdMS = l;
+    }
+
+    /**
+     * If true, the queries of slow operations are explained
+     */
+    public boolean isSlowOperationExplain() {
+        return slowOperationExplain;
+    }
+
+    /**
+     * If true, the queries of slow operations are explained
+     */
+    public void setSlowOperationExplain(boolean b) {
+        slowOperationExplain = b;
+    }
+
+    /**
+     * Name of the capped collection slow operations are written to. If null,
+     * slow operations are only kept in memory.
+     */
+    public String getSlowOperationCollection() {
+        return slowOperationCollection;
+    }
+
+    /**
+     * Name of the capped collection slow operations are written to. If null,
+     * slow operations are only kept in memory.
+     */
+    public void setSlowOperationCollection(String s) {
+        slowOperationCollection = s;
+    }
+
+    /**
+     * Size in bytes of the capped slow operation collection
+     */
+    public long getSlowOperationCollectionSize() {
+        return slowOperationCollectionSize;
+    }
+
+    /**
+     * Size in bytes of the capped slow operation collection
+     */
+    public void setSlowOperationCollectionSize(long l) {
+        slowOperationCollectionSize = l;
+    }
+
+    /**
+     * Hystrix settings of the commands running on this datasource. If null,
+     * the commands use the shared thread pool and the Hystrix defaults.
+     */
+    public DatasourceCommandSettings getHystrixSettings() {
+        return hystrixSettings;
+    }
+
+    /**
+     * Hystrix settings of the commands running on this datasource. If null,
+     * the commands use the shared thread pool and the Hystrix defaults. The
+     * settings are registered when the client of this datasource is created.
+     */
+    public void setHystrixSettings(DatasourceCommandSettings s) {
+        hystrixSettings = s;
+    }
+
+    /**
+     * Returns the settings for the operations running on this datasource
+     */
+    public DatasourceSettings getDatasourceSettings() {
+        DatasourceSettings settings = new DatasourceSettings();
+        settings.setUpdateBatchSize(updateBatchSize);
+        settings.setUpdateBatchMaxAgeMS(updateBatchMaxAgeMS);
+        settings.setServerSideUpdate(serverSideUpdate);
+        settings.setServerSideDelete(serverSideDelete);
+        settings.setDeleteBatchSize(deleteBatchSize);
+        settings.setSaveCollapseLookups(saveCollapseLookups);
+        settings.setFindReadPreference(findReadPreference);
+        settings.setExprComparisons(exprComparisons);
+        settings.setFindBatchSize(findBatchSize);
+        settings.setFindMaxTimeMS(findMaxTimeMS);
+        settings.setFindNoCursorTimeout(findNoCursorTimeout);
+        settings.setFindPartial(findPartial);
+        settings.setFindExhaust(findExhaust);
+        settings.setFindParallelThreshold(findParallelThreshold);
+        settings.setSlowOperationThresholdMS(slowOperationThresholdMS);
+        settings.setSlowOperationExplain(slowOperationExplain);
+        settings.setSlowOperationCollection(slowOperationCollection);
+        settings.setSlowOperationCollectionSize(slowOperationCollectionSize);
+        return settings;
+    }
+
     private static final TrustManager[] trustAllCerts = new TrustManager[]{
         new X509TrustManager() {
             @Override
@@ -225,6 +812,48 @@ public class MongoConfiguration implements DataSourceConfiguration {
         if (connectionsPerHost != null) {
             builder.connectionsPerHost(connectionsPerHost);
         }
+        if (minConnectionsPerHost != null) {
+            builder.minConnectionsPerHost(minConnectionsPerHost);
+        }
+        if (threadsAllowedToBlockForConnectionMultiplier != null) {
+            builder.threadsAllowedToBlockForConnectionMultiplier(threadsAllowedToBlockForConnectionMultiplier);
+        }
+        if (maxWaitTime != null) {
+            builder.maxWaitTime(maxWaitTime);
+        }
+        if (maxConnectionIdleTime != null) {
+            builder.maxConnectionIdleTime(maxConnectionIdleTime);
+        }
+        if (maxConnectionLifeTime != null) {
+            builder.maxConnectionLifeTime(maxConnectionLifeTime);
+        }
+        if (connectTimeout != null) {
+            builder.connectTimeout(connectTimeout);
+        }
+        if (socketTimeout != null) {
+            builder.socketTimeout(socketTimeout);
+        }
+        if (socketKeepAlive != null) {
+            builder.socketKeepAlive(socketKeepAlive);
+        }
+        if (heartbeatFrequency != null) {
+            builder.heartbeatFrequency(heartbeatFrequency);
+        }
+        if (heartbeatConnectTimeout != null) {
+            builder.heartbeatConnectTimeout(heartbeatConnectTimeout);
+        }
+        if (heartbeatSocketTimeout != null) {
+            builder.heartbeatSocketTimeout(heartbeatSocketTimeout);
+        }
+        if (acceptableLatencyDifference != null) {
+            builder.acceptableLatencyDifference(acceptableLatencyDifference);
+        }
+        if (readPreference != null) {
+            builder.readPreference(ReadPreference.valueOf(readPreference));
+        }
+        if (writeConcern != null) {
+            builder.writeConcern(WriteConcern.valueOf(writeConcern));
+        }
 
         if (ssl) {
             // taken from MongoClientURI, written this way so we don't have to
@@ -235,7 +864,46 @@ public class MongoConfiguration implements DataSourceConfiguration {
         return builder.build();
     }
 
+    /**
+     * Returns the client for this datasource. The client is created when this
+     * is first called, and the same client, with its connection pool, is
+     * shared by all callers until shutdown() is called.
+     */
     public MongoClient getMongoClient() throws UnknownHostException {
+        MongoClient c = client;
+        if (c == null) {
+            synchronized (this) {
+                c = client;
+                if (c == null) {
+                    c = createMongoClient();
+                    if (hystrixSettings != null) {
+                        DatasourceCommandSettings.register(c, hystrixSettings);
+                    }
+                    client = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Closes the client of this datasource, if there is one. A new client is
+     * created if the datasource is used after this call.
+     */
+    public void shutdown() {
+        MongoClient c;
+        synchronized (this) {
+            c = client;
+            client = null;
+        }
+        if (c != null) {
+            LOGGER.debug("Closing client for {}", database);
+            DatasourceCommandSettings.unregister(c);
+            c.close();
+        }
+    }
+
+    private MongoClient createMongoClient() throws UnknownHostException {
         MongoClientOptions options = getMongoClientOptions();
         LOGGER.debug("getMongoClient with server: {}, servers:{} and options:{}", theServer, servers, options);
         if (theServer != null) {
@@ -245,6 +913,9 @@ public class MongoConfiguration implements DataSourceConfiguration {
         }
     }
 
+    /**
+     * Returns the database of this datasource using the shared client
+     */
     public DB getDB() throws UnknownHostException {
         return getMongoClient().getDB(database);
     }
@@ -258,9 +929,42 @@ public class MongoConfiguration implements DataSourceConfiguration {
             bld.append("servers:").append(servers).append('\n');
         }
         bld.append("connectionsPerHost:").append(connectionsPerHost).append('\n').
+                append("minConnectionsPerHost:").append(minConnectionsPerHost).append('\n').
+                append("threadsAllowedToBlockForConnectionMultiplier:").append(threadsAllowedToBlockForConnectionMultiplier).append('\n').
+                append("maxWaitTime:").append(maxWaitTime).append('\n').
+                append("maxConnectionIdleTime:").append(maxConnectionIdleTime).append('\n').
+                append("maxConnectionLifeTime:").append(maxConnectionLifeTime).append('\n').
+                append("connectTimeout:").append(connectTimeout).append('\n').
+                append("socketTimeout:").append(socketTimeout).append('\n').
+                append("socketKeepAlive:").append(socketKeepAlive).append('\n').
+                append("heartbeatFrequency:").append(heartbeatFrequency).append('\n').
+                append("heartbeatConnectTimeout:").append(heartbeatConnectTimeout).append('\n').
+                append("heartbeatSocketTimeout:").append(heartbeatSocketTimeout).append('\n').
+                append("acceptableLatencyDifference:").append(acceptableLatencyDifference).append('\n').
+                append("readPreference:").append(readPreference).append('\n').
+                append("writeConcern:").append(writeConcern).append('\n').
                 append("database:").append(database).append('\n').
                 append("ssl:").append(ssl).append('\n').
-                append("noCertValidation:").append(noCertValidation);
+                append("noCertValidation:").append(noCertValidation).append('\n').
+                append("updateBatchSize:").append(updateBatchSize).append('\n').
+                append("updateBatchMaxAgeMS:").append(updateBatchMaxAgeMS).append('\n').
+                append("serverSideUpdate:").append(serverSideUpdate).append('\n').
+                append("serverSideDelete:").append(serverSideDelete).append('\n').
+                append("deleteBatchSize:").append(deleteBatchSize).append('\n').
+                append("saveCollapseLookups:").append(saveCollapseLookups).append('\n').
+                append("findReadPreference:").append(findReadPreference).append('\n').
+                append("exprComparisons:").append(exprComparisons).append('\n').
+                append("findBatchSize:").append(findBatchSize).append('\n').
+                append("findMaxTimeMS:").append(findMaxTimeMS).append('\n').
+                append("findNoCursorTimeout:").append(findNoCursorTimeout).append('\n').
+                append("findPartial:").append(findPartial).append('\n').
+                append("findExhaust:").append(findExhaust).append('\n').
+                append("findParallelThreshold:").append(findParallelThreshold).append('\n').
+                append("slowOperationThresholdMS:").append(slowOperationThresholdMS).append('\n').
+                append("slowOperationExplain:").append(slowOperationExplain).append('\n').
+                append("slowOperationCollection:").append(slowOperationCollection).append('\n').
+                append("slowOperationCollectionSize:").append(slowOperationCollectionSize).append('\n').
+                append("hystrix:").append(hystrixSettings).append('\n');
         bld.append("credentials:");
         boolean first = true;
         for (MongoCredential c : credentials) {
@@ -355,6 +1059,49 @@ public class MongoConfiguration implements DataSourceConfiguration {
         return bld.toString();
     }
 
+    private static Integer getInteger(JsonNode node, String name, Integer defaultValue) {
+        JsonNode x = node.get(name);
+        if (x == null || x.isNull()) {
+            return defaultValue;
+        }
+        if (!x.canConvertToInt()) {
+            throw new IllegalArgumentException("Invalid " + name + ":" + x);
+        }
+        return x.asInt();
+    }
+
+    private DatasourceCommandSettings hystrixSettingsFromJson(JsonNode node) {
+        JsonNode x = node.get("name");
+        DatasourceCommandSettings settings = new DatasourceCommandSettings(x == null ? database : x.asText());
+        settings.setDefaults(commandSettingsFromJson(node));
+        x = node.get("commands");
+        if (x != null) {
+            Iterator<Map.Entry<String, JsonNode>> itr = x.fields();
+            while (itr.hasNext()) {
+                Map.Entry<String, JsonNode> entry = itr.next();
+                settings.setCommandSettings(entry.getKey(), commandSettingsFromJson(entry.getValue()));
+            }
+        }
+        return settings;
+    }
+
+    private static CommandSettings commandSettingsFromJson(JsonNode node) {
+        CommandSettings settings = new CommandSettings();
+        JsonNode x = node.get("threadPoolKey");
+        if (x != null) {
+            settings.setThreadPoolKey(x.asText());
+        }
+        x = node.get("isolation");
+        if (x != null) {
+            settings.setIsolation(HystrixCommandProperties.ExecutionIsolationStrategy.valueOf(x.asText().toUpperCase()));
+        }
+        settings.setPoolSize(getInteger(node, "poolSize", null));
+        settings.setQueueSize(getInteger(node, "queueSize", null));
+        settings.setTimeoutMS(getInteger(node, "timeoutMS", null));
+        settings.setMaxConcurrentRequests(getInteger(node, "maxConcurrentRequests", null));
+        return settings;
+    }
+
     @Override
     public void initializeFromJson(JsonNode node) {
         if (node != null) {
@@ -362,6 +1109,78 @@ public class MongoConfiguration implements DataSourceConfiguration {
             if (x != null) {
                 connectionsPerHost = x.asInt();
             }
+            minConnectionsPerHost = getInteger(node, "minConnectionsPerHost", minConnectionsPerHost);
+            threadsAllowedToBlockForConnectionMultiplier = getInteger(node, "threadsAllowedToBlockForConnectionMultiplier",
+                    threadsAllowedToBlockForConnectionMultiplier);
+            maxWaitTime = getInteger(node, "maxWaitTime", maxWaitTime);
+            maxConnectionIdleTime = getInteger(node, "maxConnectionIdleTime", maxConnectionIdleTime);
+            maxConnectionLifeTime = getInteger(node, "maxConnectionLifeTime", maxConnectionLifeTime);
+            connectTimeout = getInteger(node, "connectTimeout", connectTimeout);
+            socketTimeout = getInteger(node, "socketTimeout", socketTimeout);
+            heartbeatFrequency = getInteger(node, "heartbeatFrequency", heartbeatFrequency);
+            heartbeatConnectTimeout = getInteger(node, "heartbeatConnectTimeout", heartbeatConnectTimeout);
+            heartbeatSocketTimeout = getInteger(node, "heartbeatSocketTimeout", heartbeatSocketTimeout);
+            acceptableLatencyDifference = getInteger(node, "acceptableLatencyDifference", acceptableLatencyDifference);
+            x = node.get("socketKeepAlive");
+            if (x != null) {
+                socketKeepAlive = x.asBoolean();
+            }
+            x = node.get("readPreference");
+            if (x != null) {
+                setReadPreference(x.asText());
+            }
+            x = node.get("writeConcern");
+            if (x != null) {
+                setWriteConcern(x.asText());
+            }
+            x = node.get("findReadPreference");
+            if (x != null) {
+                setFindReadPreference(x.asText());
+            }
+            x = node.get("exprComparisons");
+            if (x != null) {
+                exprComparisons = x.asBoolean();
+            }
+            x = node.get("findBatchSize");
+            if (x != null) {
+                findBatchSize = x.asInt();
+            }
+            x = node.get("findMaxTimeMS");
+            if (x != null) {
+                findMaxTimeMS = x.asLong();
+            }
+            x = node.get("findNoCursorTimeout");
+            if (x != null) {
+                findNoCursorTimeout = x.asBoolean();
+            }
+            x = node.get("findPartial");
+            if (x != null) {
+                findPartial = x.asBoolean();
+            }
+            x = node.get("findExhaust");
+            if (x != null) {
+                findExhaust = x.asBoolean();
+            }
+            x = node.get("findParallelThreshold");
+            if (x != null) {
+                findParallelThreshold = x.asInt();
+            }
+            x = node.get("slowOperationThresholdMS");
+            if (x != null) {
+                slowOperationThresholdMS = x.asLong();
+            }
+            x = node.get("slowOperationExplain");
+            if (x != null) {
+                slowOperationExplain = x.asBoolean();
+            }
+            x = node.get("slowOperationCollection");
+            if (x != null) {
+                slowOperationCollection = x.asText();
+            }
+            x = node.get("slowOperationCollectionSize");
+            if (x != null) {
+                slowOperationCollectionSize = x.asLong();
+            }
             x = node.get("ssl");
             if (x != null) {
                 ssl = x.asBoolean();
@@ -383,6 +1202,34 @@ public class MongoConfiguration implements DataSourceConfiguration {
             if (x != null) {
                 database = x.asText();
             }
+            x = node.get("updateBatchSize");
+            if (x != null) {
+                updateBatchSize = x.asInt();
+            }
+            x = node.get("updateBatchMaxAgeMS");
+            if (x != null) {
+                updateBatchMaxAgeMS = x.asLong();
+            }
+            x = node.get("serverSideUpdate");
+            if (x != null) {
+                serverSideUpdate = x.asBoolean();
+            }
+            x = node.get("serverSideDelete");
+            if (x != null) {
+                serverSideDelete = x.asBoolean();
+            }
+            x = node.get("deleteBatchSize");
+            if (x != null) {
+                deleteBatchSize = x.asInt();
+            }
+            x = node.get("saveCollapseLookups");
+            if (x != null) {
+                saveCollapseLookups = x.asBoolean();
+            }
+            x = node.get("hystrix");
+            if (x != null) {
+                hystrixSettings = hystrixSettingsFromJson(x);
+            }
             JsonNode jsonNodeServers = node.get("servers");
             if (jsonNodeServers != null && jsonNodeServers.isArray()) {
                 Iterator<JsonNode> elements = jsonNodeServers.elements();
@@ -18,25 +18,30 @@
  */
 package com.redhat.lightblue.mongo.config;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mongodb.DB;
-import com.redhat.lightblue.common.mongo.DBResolver;
+import com.redhat.lightblue.common.mongo.DatasourceSettingsResolver;
+import com.redhat.lightblue.common.mongo.DatasourceSettings;
 import com.redhat.lightblue.common.mongo.MongoDataStore;
-import com.redhat.lightblue.config.DataSourceConfiguration;
 import com.redhat.lightblue.config.DataSourcesConfiguration;
 
-public class MongoDBResolver implements DBResolver {
+/**
+ * Resolves DB objects using the datasource configurations. Each datasource has
+ * a single client shared by all resolvers using the same datasource
+ * configuration, so the number of connections to a datasource is bounded by
+ * its configuration. This class is thread-safe.
+ */
+public class MongoDBResolver implements DatasourceSettingsResolver {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MongoDBResolver.class);
 
     private final Map<String, MongoConfiguration> datasources;
-    private final Map<String, DB> dbMap = new HashMap<>();
-    private final Map<String, DB> dsMap = new HashMap<>();
+    private final Map<String, MongoConfiguration> dbMap = new ConcurrentHashMap<>();
 
     public MongoDBResolver(DataSourcesConfiguration ds) {
         datasources = ds.getDataSourcesByType(MongoConfiguration.class);
@@ -47,30 +52,32 @@ public class MongoDBResolver implements DBResolver {
         LOGGER.debug("Returning DB for {}", store);
         DB db = null;
         try {
+            // The client of a datasource is shared, and it caches its DB
+            // objects, so DBs are not cached here. That way a DB never
+            // outlives the client it was created by.
+            MongoConfiguration cfg = null;
             if (store.getDatasourceName() != null) {
                 LOGGER.debug("datasource:{}", store.getDatasourceName());
-                db = dsMap.get(store.getDatasourceName());
-                if (db == null) {
-                    MongoConfiguration cfg = datasources.get(store.getDatasourceName());
-                    if (cfg == null) {
-                        throw new IllegalArgumentException("No datasources for " + store.getDatasourceName());
-                    }
-                    db = cfg.getDB();
-                    dsMap.put(store.getDatasourceName(), db);
+                cfg = datasources.get(store.getDatasourceName());
+                if (cfg == null) {
+                    throw new IllegalArgumentException("No datasources for " + store.getDatasourceName());
                 }
             } else if (store.getDatabaseName() != null) {
                 LOGGER.debug("databaseName:{}", store.getDatabaseName());
-                db = dbMap.get(store.getDatabaseName());
-                if (db == null) {
-                    for (DataSourceConfiguration cfg : datasources.values()) {
-                        if (((MongoConfiguration) cfg).getDatabase().equals(store.getDatabaseName())) {
-                            db = ((MongoConfiguration) cfg).getDB();
-                            dbMap.put(store.getDatabaseName(), db);
+                cfg = dbMap.get(store.getDatabaseName());
+                if (cfg == null) {
+                    for (MongoConfiguration x : datasources.values()) {
+                        if (x.getDatabase().equals(store.getDatabaseName())) {
+                            cfg = x;
+                            dbMap.put(store.getDatabaseName(), cfg);
                             break;
                         }
                     }
                 }
             }
+            if (cfg != null) {
+                db = cfg.getDB();
+            }
         } catch (RuntimeException re) {
             LOGGER.error("Cannot get {}:{}", store, re);
             throw re;
@@ -84,4 +91,37 @@ public class MongoDBResolver implements DBResolver {
         LOGGER.debug("Returning {} for {}", db, store);
         return db;
     }
+
+    /**
+     * Closes the clients of all datasources known to this resolver. Since
+     * clients are shared, this closes them for all other resolvers using the
+     * same datasource configurations as well. A datasource used after this
+     * call gets a new client.
+     */
+    public void shutdown() {
+        LOGGER.debug("Shutting down clients");
+        for (MongoConfiguration cfg : datasources.values()) {
+            cfg.shutdown();
+        }
+    }
+
+    @Override
+    public DatasourceSettings getSettings(MongoDataStore store) {
+        MongoConfiguration cfg = null;
+        if (store.getDatasourceName() != null) {
+            cfg = datasources.get(store.getDatasourceName());
+        } else if (store.getDatabaseName() != null) {
+            for (MongoConfiguration x : datasources.values()) {
+                if (store.getDatabaseName().equals(x.getDatabase())) {
+                    cfg = x;
+                    break;
+                }
+            }
+        }
+        if (cfg == null) {
+            LOGGER.debug("No datasource configuration for {}, using defaults", store);
+            return new DatasourceSettings();
+        }
+        return cfg.getDatasourceSettings();
+    }
 }
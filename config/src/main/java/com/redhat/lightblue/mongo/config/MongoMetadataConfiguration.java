@@ -28,6 +28,7 @@ import com.redhat.lightblue.config.DataSourceConfiguration;
 import com.redhat.lightblue.config.DataSourcesConfiguration;
 import com.redhat.lightblue.config.LightblueFactory;
 import com.redhat.lightblue.metadata.Metadata;
+import com.redhat.lightblue.metadata.mongo.EntityMetadataCache;
 import com.redhat.lightblue.metadata.mongo.MongoDataStoreParser;
 import com.redhat.lightblue.metadata.mongo.MongoMetadata;
 import com.redhat.lightblue.metadata.parser.Extensions;
@@ -43,6 +44,16 @@ public class MongoMetadataConfiguration extends AbstractMetadataConfiguration {
 
     private String datasource;
     private String collection;
+    private long cacheTTLMS = EntityMetadataCache.DEFAULT_TTL_MS;
+    private int cacheSize = EntityMetadataCache.DEFAULT_MAX_SIZE;
+    private long cacheVersionPollMS = DEFAULT_CACHE_VERSION_POLL_MS;
+    private boolean collapseLookups = false;
+
+    /**
+     * Default interval for checking metadata modifications made by other
+     * nodes
+     */
+    public static final long DEFAULT_CACHE_VERSION_POLL_MS = 1000;
 
     @Override
     public Metadata createMetadata(DataSourcesConfiguration datasources,
@@ -81,6 +92,11 @@ public class MongoMetadataConfiguration extends AbstractMetadataConfiguration {
                 }
 
                 mongoMetadata.setRoleMap(getMappedRoles());
+                mongoMetadata.setCollapseLookups(collapseLookups);
+                if (cacheTTLMS > 0 && cacheSize > 0) {
+                    mongoMetadata.setEntityMetadataCache(new EntityMetadataCache(cacheTTLMS, cacheSize));
+                    mongoMetadata.setCacheVersionPollMS(cacheVersionPollMS);
+                }
 
                 return mongoMetadata;
             } catch (RuntimeException re) {
@@ -121,9 +137,80 @@ public class MongoMetadataConfiguration extends AbstractMetadataConfiguration {
         this.collection = collection;
     }
 
+    /**
+     * Time to live of cached entity metadata in milliseconds. If 0, entity
+     * metadata is not cached.
+     */
+    public long getCacheTTLMS() {
+        return cacheTTLMS;
+    }
+
+    /**
+     * Time to live of cached entity metadata in milliseconds. If 0, entity
+     * metadata is not cached.
+     */
+    public void setCacheTTLMS(long l) {
+        cacheTTLMS = l;
+    }
+
+    /**
+     * Maximum number of cached entity metadata. If 0, entity metadata is not
+     * cached.
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Maximum number of cached entity metadata. If 0, entity metadata is not
+     * cached.
+     */
+    public void setCacheSize(int n) {
+        cacheSize = n;
+    }
+
+    /**
+     * How often, in milliseconds, the metadata collection is checked for
+     * metadata modifications made by other nodes. If 0, cached metadata is
+     * only invalidated by the modifications made by this node, or when it
+     * expires.
+     */
+    public long getCacheVersionPollMS() {
+        return cacheVersionPollMS;
+    }
+
+    /**
+     * How often, in milliseconds, the metadata collection is checked for
+     * metadata modifications made by other nodes. If 0, cached metadata is
+     * only invalidated by the modifications made by this node, or when it
+     * expires.
+     */
+    public void setCacheVersionPollMS(long l) {
+        cacheVersionPollMS = l;
+    }
+
+    /**
+     * If true, entity info and schema lookups are collapsed with concurrent
+     * lookups into batched queries. Off by default.
+     */
+    public boolean isCollapseLookups() {
+        return collapseLookups;
+    }
+
+    /**
+     * If true, entity info and schema lookups are collapsed with concurrent
+     * lookups into batched queries. Off by default.
+     */
+    public void setCollapseLookups(boolean b) {
+        collapseLookups = b;
+    }
+
     @Override
     public String toString() {
-        return "dataSource:" + datasource + " collection:" + collection;
+        return "dataSource:" + datasource + " collection:" + collection
+                + " cacheTTLMS:" + cacheTTLMS + " cacheSize:" + cacheSize
+                + " cacheVersionPollMS:" + cacheVersionPollMS
+                + " collapseLookups:" + collapseLookups;
     }
 
     @Override
@@ -140,6 +227,22 @@ public class MongoMetadataConfiguration extends AbstractMetadataConfiguration {
             if (x != null) {
                 collection = x.asText();
             }
+            x = node.get("cacheTTLMS");
+            if (x != null) {
+                cacheTTLMS = x.asLong();
+            }
+            x = node.get("cacheSize");
+            if (x != null) {
+                cacheSize = x.asInt();
+            }
+            x = node.get("cacheVersionPollMS");
+            if (x != null) {
+                cacheVersionPollMS = x.asLong();
+            }
+            x = node.get("collapseLookups");
+            if (x != null) {
+                collapseLookups = x.asBoolean();
+            }
         }
     }
 }
@@ -30,7 +30,15 @@ import org.junit.Test;
 
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientOptions;
+import com.mongodb.ReadPreference;
 import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.redhat.lightblue.common.mongo.DatasourceSettings;
+import com.redhat.lightblue.mongo.hystrix.CommandSettings;
+import com.redhat.lightblue.mongo.hystrix.DatasourceCommandSettings;
+import com.netflix.hystrix.HystrixCommandProperties;
 
 public class MongoConfigurationTest {
 
@@ -52,6 +60,7 @@ public class MongoConfigurationTest {
 
     @After
     public void tearDown() throws Exception {
+        config.shutdown();
     }
 
     @Test
@@ -125,4 +134,116 @@ public class MongoConfigurationTest {
 
         Assert.assertEquals(config.getDB().toString(), client.getDB("database").toString());
     }
+
+    @Test
+    public void testUpdateBatchSettingsFromJson() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("database", "database");
+        node.put("updateBatchSize", 250);
+        node.put("updateBatchMaxAgeMS", 1000);
+        MongoConfiguration cfg = new MongoConfiguration();
+        cfg.initializeFromJson(node);
+
+        DatasourceSettings settings = cfg.getDatasourceSettings();
+        Assert.assertEquals(250, settings.getUpdateBatchSize());
+        Assert.assertEquals(1000, settings.getUpdateBatchMaxAgeMS());
+    }
+
+    @Test
+    public void testDefaultUpdateBatchSettings() {
+        DatasourceSettings settings = config.getDatasourceSettings();
+        Assert.assertEquals(DatasourceSettings.DEFAULT_UPDATE_BATCH_SIZE, settings.getUpdateBatchSize());
+        Assert.assertEquals(DatasourceSettings.DEFAULT_UPDATE_BATCH_MAX_AGE_MS, settings.getUpdateBatchMaxAgeMS());
+        Assert.assertFalse(settings.isSaveCollapseLookups());
+    }
+
+    @Test
+    public void testSaveCollapseLookupsFromJson() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("database", "database");
+        node.put("saveCollapseLookups", true);
+        MongoConfiguration cfg = new MongoConfiguration();
+        cfg.initializeFromJson(node);
+
+        Assert.assertTrue(cfg.getDatasourceSettings().isSaveCollapseLookups());
+    }
+
+    @Test
+    public void testSharedClient() throws UnknownHostException {
+        MongoClient client = config.getMongoClient();
+        Assert.assertSame(client, config.getMongoClient());
+        Assert.assertSame(client, config.getDB().getMongo());
+
+        config.shutdown();
+        MongoClient newClient = config.getMongoClient();
+        Assert.assertNotSame(client, newClient);
+        Assert.assertSame(newClient, config.getMongoClient());
+    }
+
+    @Test
+    public void testClientOptionsFromJson() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("database", "database");
+        node.put("connectionsPerHost", 50);
+        node.put("minConnectionsPerHost", 5);
+        node.put("threadsAllowedToBlockForConnectionMultiplier", 20);
+        node.put("maxWaitTime", 3000);
+        node.put("maxConnectionIdleTime", 60000);
+        node.put("connectTimeout", 1000);
+        node.put("socketTimeout", 30000);
+        node.put("heartbeatFrequency", 2000);
+        node.put("readPreference", "secondaryPreferred");
+        node.put("writeConcern", "majority");
+        MongoConfiguration cfg = new MongoConfiguration();
+        cfg.initializeFromJson(node);
+
+        MongoClientOptions options = cfg.getMongoClientOptions();
+        Assert.assertEquals(50, options.getConnectionsPerHost());
+        Assert.assertEquals(5, options.getMinConnectionsPerHost());
+        Assert.assertEquals(20, options.getThreadsAllowedToBlockForConnectionMultiplier());
+        Assert.assertEquals(3000, options.getMaxWaitTime());
+        Assert.assertEquals(60000, options.getMaxConnectionIdleTime());
+        Assert.assertEquals(1000, options.getConnectTimeout());
+        Assert.assertEquals(30000, options.getSocketTimeout());
+        Assert.assertEquals(2000, options.getHeartbeatFrequency());
+        Assert.assertEquals(ReadPreference.secondaryPreferred(), options.getReadPreference());
+        Assert.assertEquals(WriteConcern.MAJORITY, options.getWriteConcern());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidReadPreference() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("readPreference", "somewhere");
+        new MongoConfiguration().initializeFromJson(node);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWriteConcern() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("writeConcern", "sometimes");
+        new MongoConfiguration().initializeFromJson(node);
+    }
+
+    @Test
+    public void testHystrixSettingsFromJson() {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("database", "testdb");
+        ObjectNode hystrix = node.putObject("hystrix");
+        hystrix.put("poolSize", 20);
+        hystrix.put("timeoutMS", 3000);
+        ObjectNode find = hystrix.putObject("commands").putObject("FindCommand");
+        find.put("isolation", "semaphore");
+        find.put("maxConcurrentRequests", 50);
+        MongoConfiguration cfg = new MongoConfiguration();
+        cfg.initializeFromJson(node);
+
+        DatasourceCommandSettings settings = cfg.getHystrixSettings();
+        Assert.assertEquals("testdb", settings.getName());
+        CommandSettings s = settings.getCommandSettings("FindCommand");
+        Assert.assertEquals(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE, s.getIsolation());
+        Assert.assertEquals(Integer.valueOf(50), s.getMaxConcurrentRequests());
+        Assert.assertEquals(Integer.valueOf(20), s.getPoolSize());
+        Assert.assertEquals(Integer.valueOf(3000), s.getTimeoutMS());
+        Assert.assertNull(settings.getCommandSettings("UpdateCommand").getIsolation());
+    }
 }
@@ -28,7 +28,9 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
-import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
+import com.netflix.hystrix.exception.HystrixBadRequestException;
+import com.netflix.hystrix.exception.HystrixRuntimeException;
 import com.redhat.lightblue.interceptor.InterceptPoint;
 import com.redhat.lightblue.crud.CRUDOperationContext;
 import com.redhat.lightblue.crud.CRUDUpdateResponse;
@@ -46,8 +48,6 @@ import com.redhat.lightblue.util.Path;
 /**
  * Atomic updater that evaluates the query, and updates the documents one by one
  * using atomic updates
- *
- * This class is probably useless. It makes things complicated for update.
  */
 public class AtomicIterateUpdate implements DocUpdater {
 
@@ -96,7 +96,7 @@ public class AtomicIterateUpdate implements DocUpdater {
             try {
                 ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_UPDATE_RESULTSET, ctx);
                 // Find docs
-                cursor = new FindCommand(collection, query, null).execute();
+                cursor = new FindCommand(collection, query, null, ReadPreference.primary()).execute();
                 LOGGER.debug("Found {} documents", cursor.count());
                 ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE_RESULTSET, ctx);
                 // read-update
@@ -117,16 +117,32 @@ public class AtomicIterateUpdate implements DocUpdater {
                                 mongoUpdateExpr,
                                 true,
                                 false).execute();
+                        if (modifiedDoc == null) {
+                            // Removed since the result set was computed
+                            LOGGER.debug("Document {} no longer exists", docIndex);
+                            docIndex++;
+                            continue;
+                        }
+                        doc.setCRUDOperationPerformed(CRUDOperation.UPDATE);
                         if (projector != null) {
                             LOGGER.debug("Projecting document {}", docIndex);
                             doc.setOutputDocument(projector.project(translator.toJson(modifiedDoc), nodeFactory));
-                            doc.setCRUDOperationPerformed(CRUDOperation.UPDATE);
                         }
                         ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE_DOC, ctx, doc);
                         numUpdated++;
-                    } catch (MongoException e) {
-                        LOGGER.warn("Update exception for document {}: {}", docIndex, e);
-                        doc.addError(Error.get(MongoCrudConstants.ERR_UPDATE_ERROR, e.toString()));
+                    } catch (RuntimeException e) {
+                        // Hystrix wraps the mongo exception of a failed command
+                        Throwable cause = e;
+                        if ((e instanceof HystrixBadRequestException || e instanceof HystrixRuntimeException)
+                                && e.getCause() != null) {
+                            cause = e.getCause();
+                        }
+                        LOGGER.warn("Update exception for document {}: {}", docIndex, cause);
+                        if (cause instanceof Error) {
+                            doc.addError((Error) cause);
+                        } else {
+                            doc.addError(Error.get(MongoCrudConstants.ERR_UPDATE_ERROR, cause.toString()));
+                        }
                         numFailed++;
                     }
                     docIndex++;
@@ -25,12 +25,14 @@ import org.slf4j.LoggerFactory;
 
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
 import com.mongodb.DBCursor;
 
 import com.redhat.lightblue.interceptor.InterceptPoint;
 import com.redhat.lightblue.crud.CRUDOperationContext;
 import com.redhat.lightblue.crud.CRUDOperation;
 import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.mongo.hystrix.CursorOptions;
 import com.redhat.lightblue.mongo.hystrix.FindCommand;
 
 import com.redhat.lightblue.util.JsonDoc;
@@ -43,9 +45,49 @@ public class BasicDocFinder implements DocFinder {
     private static final Logger LOGGER = LoggerFactory.getLogger(BasicDocFinder.class);
 
     private final Translator translator;
+    private final CountMode countMode;
+    private ReadPreference readPreference;
+    private CursorOptions cursorOptions;
 
     public BasicDocFinder(Translator translator) {
+        this(translator, CountMode.exact);
+    }
+
+    public BasicDocFinder(Translator translator, CountMode countMode) {
         this.translator = translator;
+        this.countMode = countMode == null ? CountMode.exact : countMode;
+    }
+
+    /**
+     * The read preference of the find operations. If null, the read preference
+     * of the collection is used.
+     */
+    public ReadPreference getReadPreference() {
+        return readPreference;
+    }
+
+    /**
+     * The read preference of the find operations. If null, the read preference
+     * of the collection is used.
+     */
+    public void setReadPreference(ReadPreference readPreference) {
+        this.readPreference = readPreference;
+    }
+
+    /**
+     * Optional options of the cursor, such as the server side time limit of
+     * the query.
+     */
+    public CursorOptions getCursorOptions() {
+        return cursorOptions;
+    }
+
+    /**
+     * Optional options of the cursor, such as the server side time limit of
+     * the query.
+     */
+    public void setCursorOptions(CursorOptions cursorOptions) {
+        this.cursorOptions = cursorOptions;
     }
 
     @Override
@@ -57,13 +99,12 @@ public class BasicDocFinder implements DocFinder {
                      Long from,
                      Long to) {
         LOGGER.debug("Submitting query");
-        DBCursor cursor = new FindCommand(coll, mongoQuery, mongoProjection).execute();
+        DBCursor cursor = new FindCommand(coll, mongoQuery, mongoProjection, readPreference, cursorOptions).execute();
         LOGGER.debug("Query evaluated");
         if (mongoSort != null) {
             cursor = cursor.sort(mongoSort);
             LOGGER.debug("Result set sorted");
         }
-        long ret = cursor.size();
         LOGGER.debug("Applying limits: {} - {}", from, to);
         if (from != null) {
             cursor.skip(from.intValue());
@@ -74,6 +115,7 @@ public class BasicDocFinder implements DocFinder {
         LOGGER.debug("Retrieving results");
         List<DBObject> mongoResults = cursor.toArray();
         LOGGER.debug("Retrieved {} results", mongoResults.size());
+        long ret = getResultSetSize(countMode, cursor, mongoResults.size(), from, to);
         List<JsonDoc> jsonDocs = translator.toJson(mongoResults);
         ctx.addDocuments(jsonDocs);
         for (DocCtx doc : ctx.getDocuments()) {
@@ -83,4 +125,46 @@ public class BasicDocFinder implements DocFinder {
         LOGGER.debug("Translated DBObjects to json");
         return ret;
     }
+
+    /**
+     * Returns the total number of documents matching the query of the cursor,
+     * ignoring the skip and limit of the cursor.
+     *
+     * If the number of documents read shows that the end of the result set is
+     * reached, the total is computed from the number of documents read without
+     * going to the db. Otherwise, the count mode determines whether a count
+     * command is sent, the size of the collection is returned, or the total is
+     * not computed at all.
+     *
+     * @param countMode The count mode
+     * @param cursor The cursor, with skip and limit applied
+     * @param numRead Number of documents read from the cursor
+     * @param from Optional from index
+     * @param to Optional to index
+     */
+    static long getResultSetSize(CountMode countMode,
+                                 DBCursor cursor,
+                                 int numRead,
+                                 Long from,
+                                 Long to) {
+        long f = from == null ? 0 : from;
+        // If nothing is read, we can only tell the size if we didn't skip anything
+        if (numRead > 0 || f == 0) {
+            if (to == null || numRead < to - f + 1) {
+                LOGGER.debug("End of result set reached, size={}", f + numRead);
+                return f + numRead;
+            }
+        }
+        switch (countMode) {
+            case none:
+                LOGGER.debug("Result set size not computed");
+                return -1;
+            case estimate:
+                LOGGER.debug("Estimating result set size from the collection size");
+                return cursor.getCollection().getCount();
+            default:
+                LOGGER.debug("Counting result set size");
+                return cursor.count();
+        }
+    }
 }
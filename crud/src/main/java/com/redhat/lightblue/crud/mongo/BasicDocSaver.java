@@ -27,6 +27,7 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
 import com.redhat.lightblue.crud.CRUDOperationContext;
@@ -36,6 +37,7 @@ import com.redhat.lightblue.crud.CRUDOperation;
 import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
 import com.redhat.lightblue.interceptor.InterceptPoint;
 import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.mongo.hystrix.FindByIdCollapser;
 import com.redhat.lightblue.mongo.hystrix.FindOneCommand;
 import com.redhat.lightblue.mongo.hystrix.InsertCommand;
 import com.redhat.lightblue.mongo.hystrix.UpdateCommand;
@@ -52,6 +54,7 @@ public class BasicDocSaver implements DocSaver {
 
     private final FieldAccessRoleEvaluator roleEval;
     private final Translator translator;
+    private boolean collapseLookups = false;
 
     /**
      * Creates a doc saver with the given translator and role evaluator
@@ -62,6 +65,24 @@ public class BasicDocSaver implements DocSaver {
         this.roleEval = roleEval;
     }
 
+    /**
+     * Returns whether the lookups of the current versions of saved documents
+     * are collapsed with concurrent lookups on the same collection
+     */
+    public boolean isCollapseLookups() {
+        return collapseLookups;
+    }
+
+    /**
+     * Sets whether the lookups of the current versions of saved documents are
+     * collapsed with concurrent lookups on the same collection using
+     * FindByIdCollapser. A collapsed lookup waits up to the collapser batch
+     * delay, so this pays off only with many concurrent saves. Off by default.
+     */
+    public void setCollapseLookups(boolean collapseLookups) {
+        this.collapseLookups = collapseLookups;
+    }
+
     @Override
     public void saveDoc(CRUDOperationContext ctx,
             Op op,
@@ -83,7 +104,12 @@ public class BasicDocSaver implements DocSaver {
             // Updating
             LOGGER.debug("Updating doc {}" + id);
             BasicDBObject q = new BasicDBObject(MongoCRUDController.ID_STR, Translator.createIdFrom(id));
-            DBObject oldDBObject = new FindOneCommand(collection, q).execute();
+            DBObject oldDBObject;
+            if (collapseLookups) {
+                oldDBObject = new FindByIdCollapser(collection, Translator.createIdFrom(id), ReadPreference.primary()).execute();
+            } else {
+                oldDBObject = new FindOneCommand(collection, q, ReadPreference.primary()).execute();
+            }
             if (oldDBObject != null) {
                 if (md.getAccess().getUpdate().hasAccess(ctx.getCallerRoles())) {
                     JsonDoc oldDoc = translator.toJson(oldDBObject);
@@ -0,0 +1,395 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.netflix.hystrix.exception.HystrixBadRequestException;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CrudConstants;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
+import com.redhat.lightblue.interceptor.InterceptPoint;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.mongo.hystrix.BulkWriteCommand;
+import com.redhat.lightblue.mongo.hystrix.FindCommand;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Doc saver that writes documents to the db in batches using unordered bulk
+ * writes.
+ *
+ * Access checks and PRE_CRUD_INSERT_DOC interceptors for inserted documents run
+ * when the document is submitted. Saved documents with an _id are collected,
+ * and when the batch is written, the existing copies of all of them are
+ * retrieved with a single $in query. Then, the access checks and
+ * PRE_CRUD_UPDATE_DOC interceptors run, invisible fields are copied from the
+ * existing copies, and the documents are replaced in the same bulk write. Saved
+ * documents that are not in the db are inserted.
+ *
+ * A document whose _id is already in the batch starts a new batch, so an
+ * insert and a save of the same document, or two saves of it, are applied in
+ * order instead of failing with a duplicate key error.
+ *
+ * A batch is written when it is full, or when flush() is called. The POST
+ * interceptors run for the documents that are written successfully. Write
+ * errors are reported in the DocCtx of the failing document.
+ *
+ * The caller must call flush() after all documents are submitted.
+ */
+public class BulkDocSaver implements DocSaver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkDocSaver.class);
+
+    /**
+     * Default number of documents written to the db in one batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final int[] DUPLICATE_KEY_CODES = {11000, 11001, 12582};
+
+    private final FieldAccessRoleEvaluator roleEval;
+    private final Translator translator;
+    private final int batchSize;
+
+    private final List<PendingSave> pendingSaves = new ArrayList<>();
+    private final Set<Object> pendingSaveIds = new HashSet<>();
+    private final Set<Object> pendingIds = new HashSet<>();
+    private final List<PendingWrite> pendingWrites = new ArrayList<>();
+    private DBCollection pendingCollection;
+
+    private static final class PendingSave {
+        private final Op op;
+        private final boolean upsert;
+        private final EntityMetadata md;
+        private final Object id;
+        private final DBObject dbObject;
+        private final DocCtx doc;
+
+        public PendingSave(Op op, boolean upsert, EntityMetadata md, Object id, DBObject dbObject, DocCtx doc) {
+            this.op = op;
+            this.upsert = upsert;
+            this.md = md;
+            this.id = id;
+            this.dbObject = dbObject;
+            this.doc = doc;
+        }
+    }
+
+    private static final class PendingWrite {
+        private final String op;
+        private final DBObject query;
+        private final boolean upsert;
+        private final DBObject dbObject;
+        private final DocCtx doc;
+
+        /**
+         * If query is null, the document is inserted. Otherwise, the document
+         * matching the query is replaced.
+         */
+        public PendingWrite(String op, DBObject query, boolean upsert, DBObject dbObject, DocCtx doc) {
+            this.op = op;
+            this.query = query;
+            this.upsert = upsert;
+            this.dbObject = dbObject;
+            this.doc = doc;
+        }
+
+        public boolean isInsert() {
+            return query == null;
+        }
+    }
+
+    /**
+     * Creates a doc saver using the default batch size
+     */
+    public BulkDocSaver(Translator translator,
+                        FieldAccessRoleEvaluator roleEval) {
+        this(translator, roleEval, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a doc saver
+     *
+     * @param translator The translator
+     * @param roleEval The role evaluator
+     * @param batchSize Number of documents to write to the db in one batch
+     */
+    public BulkDocSaver(Translator translator,
+                        FieldAccessRoleEvaluator roleEval,
+                        int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize:" + batchSize);
+        }
+        this.roleEval = roleEval;
+        this.translator = translator;
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void saveDoc(CRUDOperationContext ctx,
+                        Op op,
+                        boolean upsert,
+                        DBCollection collection,
+                        EntityMetadata md,
+                        DBObject dbObject,
+                        DocCtx inputDoc) {
+        Object id = dbObject.get(MongoCRUDController.ID_STR);
+        Object key = id == null ? null : Translator.createIdFrom(id);
+        // A document already in the batch goes to the next batch, so the
+        // writes are applied in order
+        if ((pendingCollection != null && !pendingCollection.equals(collection))
+                || (key != null && pendingIds.contains(key))) {
+            flush(ctx);
+        }
+        if (op == DocSaver.Op.insert
+                || (id == null && upsert)) {
+            submitInsert(ctx, op, collection, md, dbObject, inputDoc);
+            if (key != null) {
+                pendingIds.add(key);
+            }
+        } else if (op == DocSaver.Op.save && id != null) {
+            LOGGER.debug("Submitting doc {} for update", id);
+            pendingCollection = collection;
+            pendingSaves.add(new PendingSave(op, upsert, md, key, dbObject, inputDoc));
+            pendingSaveIds.add(key);
+            pendingIds.add(key);
+        } else {
+            // Error, invalid request
+            LOGGER.warn("Invalid request, cannot update or insert");
+            inputDoc.addError(Error.get(op.toString(), MongoCrudConstants.ERR_SAVE_ERROR, "Invalid request"));
+        }
+        if (pendingSaves.size() + pendingWrites.size() >= batchSize) {
+            flush(ctx);
+        }
+    }
+
+    /**
+     * Writes all pending documents to the db
+     */
+    public void flush(CRUDOperationContext ctx) {
+        if (!pendingSaves.isEmpty()) {
+            resolveSaves(ctx);
+        }
+        if (!pendingWrites.isEmpty()) {
+            write(ctx);
+        }
+        pendingIds.clear();
+        pendingCollection = null;
+    }
+
+    /**
+     * Retrieves the existing copies of the saved documents, and converts the
+     * saves to replacements or insertions
+     */
+    private void resolveSaves(CRUDOperationContext ctx) {
+        LOGGER.debug("Retrieving {} docs for update", pendingSaves.size());
+        Map<Object, DBObject> existing = new HashMap<>();
+        try {
+            DBObject q = new BasicDBObject(MongoCRUDController.ID_STR,
+                    new BasicDBObject("$in", new ArrayList<>(pendingSaveIds)));
+            DBCursor cursor = new FindCommand(pendingCollection, q, null, ReadPreference.primary()).execute();
+            try {
+                while (cursor.hasNext()) {
+                    DBObject obj = cursor.next();
+                    existing.put(obj.get(MongoCRUDController.ID_STR), obj);
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot retrieve docs for update: {}", e);
+            for (PendingSave save : pendingSaves) {
+                save.doc.addError(MongoCRUDController.analyzeException(e, save.op.toString(),
+                        MongoCrudConstants.ERR_SAVE_ERROR, true));
+            }
+            pendingSaves.clear();
+            pendingSaveIds.clear();
+            return;
+        }
+        for (PendingSave save : pendingSaves) {
+            DBObject oldDBObject = existing.get(save.id);
+            if (oldDBObject != null) {
+                submitReplace(ctx, save, oldDBObject);
+            } else {
+                // Cannot update, doc does not exist, insert
+                submitInsert(ctx, save.op, pendingCollection, save.md, save.dbObject, save.doc);
+            }
+        }
+        pendingSaves.clear();
+        pendingSaveIds.clear();
+    }
+
+    private void submitReplace(CRUDOperationContext ctx, PendingSave save, DBObject oldDBObject) {
+        if (save.md.getAccess().getUpdate().hasAccess(ctx.getCallerRoles())) {
+            JsonDoc oldDoc = translator.toJson(oldDBObject);
+            save.doc.setOriginalDocument(oldDoc);
+            List<Path> paths = roleEval.getInaccessibleFields_Update(save.doc, oldDoc);
+            if (paths == null || paths.isEmpty()) {
+                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_UPDATE_DOC, ctx, save.doc);
+                translator.addInvisibleFields(oldDBObject, save.dbObject, save.md);
+                pendingWrites.add(new PendingWrite(save.op.toString(),
+                        new BasicDBObject(MongoCRUDController.ID_STR, save.id),
+                        save.upsert, save.dbObject, save.doc));
+            } else {
+                save.doc.addError(Error.get("update",
+                        CrudConstants.ERR_NO_FIELD_UPDATE_ACCESS, paths.toString()));
+            }
+        } else {
+            save.doc.addError(Error.get("update",
+                    CrudConstants.ERR_NO_ACCESS, "update:" + save.md.getName()));
+        }
+    }
+
+    private void submitInsert(CRUDOperationContext ctx,
+                              Op op,
+                              DBCollection collection,
+                              EntityMetadata md,
+                              DBObject dbObject,
+                              DocCtx inputDoc) {
+        LOGGER.debug("Submitting doc for insertion");
+        if (!md.getAccess().getInsert().hasAccess(ctx.getCallerRoles())) {
+            inputDoc.addError(Error.get("insert",
+                    MongoCrudConstants.ERR_NO_ACCESS,
+                    "insert:" + md.getName()));
+        } else {
+            List<Path> paths = roleEval.getInaccessibleFields_Insert(inputDoc);
+            LOGGER.debug("Inaccessible fields:{}", paths);
+            if (paths == null || paths.isEmpty()) {
+                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_INSERT_DOC, ctx, inputDoc);
+                // Assign the _id here, so it is available in the output document
+                // even if the batch is written later
+                if (dbObject.get(MongoCRUDController.ID_STR) == null) {
+                    dbObject.put(MongoCRUDController.ID_STR, new ObjectId());
+                }
+                pendingCollection = collection;
+                pendingWrites.add(new PendingWrite(op.toString(), null, false, dbObject, inputDoc));
+            } else {
+                for (Path path : paths) {
+                    inputDoc.addError(Error.get("insert", CrudConstants.ERR_NO_FIELD_INSERT_ACCESS, path.toString()));
+                }
+            }
+        }
+    }
+
+    private void write(CRUDOperationContext ctx) {
+        LOGGER.debug("Writing {} docs", pendingWrites.size());
+        BulkWriteOperation bulk = pendingCollection.initializeUnorderedBulkOperation();
+        for (PendingWrite w : pendingWrites) {
+            if (w.isInsert()) {
+                bulk.insert(w.dbObject);
+            } else {
+                BulkWriteRequestBuilder b = bulk.find(w.query);
+                if (w.upsert) {
+                    b.upsert().replaceOne(w.dbObject);
+                } else {
+                    b.replaceOne(w.dbObject);
+                }
+            }
+        }
+        try {
+            new BulkWriteCommand(pendingCollection, bulk, WriteConcern.SAFE).execute();
+        } catch (HystrixBadRequestException e) {
+            if (e.getCause() instanceof BulkWriteException) {
+                setErrors((BulkWriteException) e.getCause());
+            } else {
+                setErrors(e);
+            }
+        } catch (RuntimeException e) {
+            setErrors(e);
+        }
+        for (PendingWrite w : pendingWrites) {
+            if (!w.doc.hasErrors()) {
+                if (w.isInsert()) {
+                    w.doc.setCRUDOperationPerformed(CRUDOperation.INSERT);
+                    ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_INSERT_DOC, ctx, w.doc);
+                } else {
+                    w.doc.setCRUDOperationPerformed(CRUDOperation.UPDATE);
+                    ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE_DOC, ctx, w.doc);
+                }
+            }
+        }
+        pendingWrites.clear();
+    }
+
+    private void setErrors(BulkWriteException e) {
+        for (BulkWriteError error : e.getWriteErrors()) {
+            PendingWrite w = pendingWrites.get(error.getIndex());
+            if (isDuplicateKey(error.getCode())) {
+                LOGGER.error("Duplicate key: {}", error);
+                w.doc.addError(Error.get(w.op, MongoCrudConstants.ERR_DUPLICATE, error.getMessage()));
+            } else {
+                LOGGER.error("Write failed: {}", error);
+                w.doc.addError(Error.get(w.op, MongoCrudConstants.ERR_SAVE_ERROR, error.getMessage()));
+            }
+        }
+        if (e.getWriteConcernError() != null) {
+            LOGGER.error("Write concern error: {}", e.getWriteConcernError());
+            for (PendingWrite w : pendingWrites) {
+                if (!w.doc.hasErrors()) {
+                    w.doc.addError(Error.get(w.op, MongoCrudConstants.ERR_SAVE_ERROR,
+                            e.getWriteConcernError().getMessage()));
+                }
+            }
+        }
+    }
+
+    private void setErrors(Exception e) {
+        LOGGER.error("Bulk write failed: {}", e);
+        for (PendingWrite w : pendingWrites) {
+            w.doc.addError(MongoCRUDController.analyzeException(e, w.op,
+                    MongoCrudConstants.ERR_SAVE_ERROR, true));
+        }
+    }
+
+    private static boolean isDuplicateKey(int code) {
+        for (int x : DUPLICATE_KEY_CODES) {
+            if (x == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+import com.redhat.lightblue.util.Error;
+
+/**
+ * Continuation tokens for keyset pagination. A continuation token records
+ * the sort keys and the sort key values of the last document of a page. The
+ * next page is retrieved by adding a range predicate built from the token to
+ * the query, so the documents before the token are not scanned and skipped
+ * by the server.
+ *
+ * The sort keys always end with _id, so the sort order is total. Documents
+ * whose sort key is null or missing are handled the way MongoDB sorts them,
+ * but pagination assumes that the non-null values of a sort key are all of
+ * the same type.
+ */
+final class ContinuationToken {
+
+    private static final String ID = "_id";
+    private static final String KEYS = "k";
+    private static final String VALUES = "v";
+
+    private ContinuationToken() {
+    }
+
+    /**
+     * Returns the sort used for keyset pagination: the given sort, followed
+     * by _id if the sort does not already contain it
+     *
+     * @param sort Optional sort
+     */
+    static DBObject getSort(DBObject sort) {
+        BasicDBObject ret = new BasicDBObject();
+        if (sort != null) {
+            ret.putAll(sort);
+        }
+        if (!ret.containsField(ID)) {
+            ret.put(ID, 1);
+        }
+        return ret;
+    }
+
+    /**
+     * Creates a continuation token pointing after the given document
+     *
+     * @param sort The keyset sort, returned by getSort
+     * @param last The last document of the page
+     */
+    static String create(DBObject sort, DBObject last) {
+        BasicDBList keys = new BasicDBList();
+        BasicDBList values = new BasicDBList();
+        for (String key : sort.keySet()) {
+            keys.add(key + ":" + getDirection(sort, key));
+            values.add(getValue(last, key));
+        }
+        String json = JSON.serialize(new BasicDBObject(KEYS, keys).append(VALUES, values));
+        return DatatypeConverter.printBase64Binary(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the query that matches the documents after the continuation
+     * token in the given sort order. The token is client input, so its keys
+     * must be the keys of the sort, and its values must be scalar values.
+     * Otherwise, values like {$where:...} would be copied into the query.
+     *
+     * @param token The continuation token
+     * @param sort The keyset sort, returned by getSort
+     */
+    static DBObject getQuery(String token, DBObject sort) {
+        List<?> keys;
+        List<?> values;
+        try {
+            String json = new String(DatatypeConverter.parseBase64Binary(token), StandardCharsets.UTF_8);
+            DBObject obj = (DBObject) JSON.parse(json);
+            keys = (List<?>) obj.get(KEYS);
+            values = (List<?>) obj.get(VALUES);
+        } catch (RuntimeException e) {
+            throw Error.get(MongoCrudConstants.ERR_INVALID_CONTINUATION, token);
+        }
+        if (keys == null || values == null || keys.size() != sort.keySet().size() || values.size() != keys.size()) {
+            throw Error.get(MongoCrudConstants.ERR_INVALID_CONTINUATION, token);
+        }
+        int i = 0;
+        for (String key : sort.keySet()) {
+            if (!(key + ":" + getDirection(sort, key)).equals(keys.get(i))) {
+                // Token was created for a different sort
+                throw Error.get(MongoCrudConstants.ERR_INVALID_CONTINUATION, token);
+            }
+            if (!isScalar(values.get(i))) {
+                throw Error.get(MongoCrudConstants.ERR_INVALID_CONTINUATION, token);
+            }
+            i++;
+        }
+
+        // (k1 after v1) or (k1=v1 and k2 after v2) or ...
+        List<DBObject> or = new ArrayList<>();
+        List<DBObject> prefix = new ArrayList<>();
+        i = 0;
+        for (String key : sort.keySet()) {
+            Object value = values.get(i);
+            DBObject after = getAfter(key, value, getDirection(sort, key));
+            if (after != null) {
+                List<DBObject> clause = new ArrayList<>(prefix);
+                clause.add(after);
+                or.add(clause.size() == 1 ? clause.get(0) : new BasicDBObject("$and", clause));
+            }
+            prefix.add(new BasicDBObject(key, value));
+            i++;
+        }
+        if (or.isEmpty()) {
+            // Nothing comes after the token
+            return new BasicDBObject(ID, new BasicDBObject("$exists", false));
+        }
+        return or.size() == 1 ? or.get(0) : new BasicDBObject("$or", or);
+    }
+
+    /**
+     * Returns a query that matches both queries
+     *
+     * @param query Optional query
+     * @param range The range query
+     */
+    static DBObject merge(DBObject query, DBObject range) {
+        if (query == null || query.keySet().isEmpty()) {
+            return range;
+        }
+        List<DBObject> l = new ArrayList<>(2);
+        l.add(query);
+        l.add(range);
+        return new BasicDBObject("$and", l);
+    }
+
+    /**
+     * Returns the query matching the values of key sorted after the given
+     * value, or null if nothing is sorted after it. Null and missing values
+     * sort before all other values.
+     */
+    private static DBObject getAfter(String key, Object value, int direction) {
+        if (direction >= 0) {
+            if (value == null) {
+                return new BasicDBObject(key, new BasicDBObject("$ne", null));
+            } else {
+                return new BasicDBObject(key, new BasicDBObject("$gt", value));
+            }
+        } else {
+            if (value == null) {
+                return null;
+            } else {
+                List<DBObject> l = new ArrayList<>(2);
+                l.add(new BasicDBObject(key, new BasicDBObject("$lt", value)));
+                l.add(new BasicDBObject(key, null));
+                return new BasicDBObject("$or", l);
+            }
+        }
+    }
+
+    /**
+     * Returns if the value is a sort key value that can be used in a range
+     * query: null, a string, a number, a boolean, a date or an object id
+     */
+    private static boolean isScalar(Object value) {
+        return value == null
+                || value instanceof String
+                || value instanceof Number
+                || value instanceof Boolean
+                || value instanceof Date
+                || value instanceof ObjectId;
+    }
+
+    private static int getDirection(DBObject sort, String key) {
+        Object x = sort.get(key);
+        return x instanceof Number && ((Number) x).intValue() < 0 ? -1 : 1;
+    }
+
+    private static Object getValue(DBObject doc, String key) {
+        Object trc = doc;
+        for (String segment : key.split("\\.")) {
+            if (trc instanceof DBObject) {
+                trc = ((DBObject) trc).get(segment);
+            } else {
+                return null;
+            }
+        }
+        return trc;
+    }
+}
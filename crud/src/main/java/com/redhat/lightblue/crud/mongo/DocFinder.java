@@ -28,6 +28,24 @@ import com.redhat.lightblue.crud.CRUDOperationContext;
  */
 public interface DocFinder {
 
+    /**
+     * How the total number of documents matching the query is computed.
+     *
+     * <ul>
+     * <li>exact: The total is exact. If it cannot be derived from the
+     * documents read (e.g. the result set is paged and the last page was not
+     * reached), a count command is sent to the db.</li>
+     * <li>estimate: If the total cannot be derived from the documents read,
+     * the number of documents in the collection is returned instead of
+     * counting the matching documents. This is an upper bound.</li>
+     * <li>none: If the total cannot be derived from the documents read, it is
+     * not computed, and -1 is returned.</li>
+     * </ul>
+     */
+    public enum CountMode {
+        exact, estimate, none
+    }
+
     /**
      * Finds documents.
      *
@@ -46,7 +64,8 @@ public interface DocFinder {
      * returned.
      *
      * @return Total number of objects found with given query before applying
-     * from and to conditions
+     * from and to conditions, computed according to the count mode of the
+     * finder. If the count mode is not exact, this can be an estimate, or -1.
      */
     long find(CRUDOperationContext ctx,
               DBCollection coll,
@@ -18,6 +18,7 @@
  */
 package com.redhat.lightblue.crud.mongo;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.redhat.lightblue.crud.*;
@@ -25,16 +26,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
+import com.netflix.hystrix.exception.HystrixBadRequestException;
 import com.redhat.lightblue.interceptor.InterceptPoint;
 import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
 import com.redhat.lightblue.eval.Projector;
 import com.redhat.lightblue.eval.Updater;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.metadata.PredefinedFields;
+import com.redhat.lightblue.mongo.hystrix.BulkWriteCommand;
 import com.redhat.lightblue.mongo.hystrix.FindCommand;
 import com.redhat.lightblue.mongo.hystrix.SaveCommand;
 import com.redhat.lightblue.util.Error;
@@ -43,6 +52,14 @@ import com.redhat.lightblue.util.Path;
 /**
  * Non-atomic updater that evaluates the query, and updates the documents one by
  * one.
+ *
+ * If the batch size is greater than 1, the updated documents are written to
+ * the db in batches using unordered bulk writes. A batch is written when it is
+ * full, or when the batch is older than the maximum batch age. The age is
+ * checked per document, as each document is read from the cursor, so a batch
+ * waiting on a slow cursor is written when the next document arrives, or when
+ * the cursor is exhausted. The POST_CRUD_UPDATE_DOC interceptors run, and the
+ * output documents are projected when the batch is written.
  */
 public class IterateAndUpdate implements DocUpdater {
 
@@ -56,6 +73,20 @@ public class IterateAndUpdate implements DocUpdater {
     private final Projector projector;
     private final Projector errorProjector;
 
+    private int batchSize = 1;
+    private long batchMaxAgeMS = 0;
+
+    /**
+     * The updated documents waiting to be written, and the update counts
+     */
+    private static final class UpdateState {
+        private final List<DocCtx> docs = new ArrayList<>();
+        private final List<DBObject> objects = new ArrayList<>();
+        private long batchStart;
+        private int numFailed = 0;
+        private int numUpdated = 0;
+    }
+
     public IterateAndUpdate(JsonNodeFactory nodeFactory,
                             ConstraintValidator validator,
                             FieldAccessRoleEvaluator roleEval,
@@ -72,6 +103,37 @@ public class IterateAndUpdate implements DocUpdater {
         this.errorProjector = errorProjector;
     }
 
+    /**
+     * Returns the number of updated documents written to the db in one batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of updated documents written to the db in one batch. If
+     * 1 or less, documents are written one by one.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the maximum age of a batch in milliseconds, checked per document
+     */
+    public long getBatchMaxAgeMS() {
+        return batchMaxAgeMS;
+    }
+
+    /**
+     * Sets the maximum age of a batch in milliseconds. The age is checked when
+     * the next document is read from the cursor, not by a timer. If 0,
+     * batches are written only when they are full.
+     */
+    public void setBatchMaxAgeMS(long batchMaxAgeMS) {
+        this.batchMaxAgeMS = batchMaxAgeMS;
+    }
+
     @Override
     public void update(CRUDOperationContext ctx,
                        DBCollection collection,
@@ -82,16 +144,19 @@ public class IterateAndUpdate implements DocUpdater {
         LOGGER.debug("Computing the result set for {}", query);
         DBCursor cursor = null;
         int docIndex = 0;
-        int numFailed = 0;
-        int numUpdated = 0;
+        UpdateState state = new UpdateState();
         try {
             ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_UPDATE_RESULTSET, ctx);
-            cursor = new FindCommand(collection, query, null).execute();
+            cursor = new FindCommand(collection, query, null, ReadPreference.primary()).execute();
             LOGGER.debug("Found {} documents", cursor.count());
             ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE_RESULTSET, ctx);
             // read-update-write
             while (cursor.hasNext()) {
                 DBObject document = cursor.next();
+                if (!state.docs.isEmpty() && batchMaxAgeMS > 0
+                        && System.currentTimeMillis() - state.batchStart >= batchMaxAgeMS) {
+                    flush(ctx, collection, state);
+                }
                 boolean hasErrors = false;
                 LOGGER.debug("Retrieved doc {}", docIndex);
                 DocCtx doc = ctx.addDocument(translator.toJson(document));
@@ -128,6 +193,18 @@ public class IterateAndUpdate implements DocUpdater {
                             ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_UPDATE_DOC, ctx, doc);
                             DBObject updatedObject = translator.toBson(doc.getOutputDocument());
                             translator.addInvisibleFields(document, updatedObject, md);
+                            if (batchSize > 1) {
+                                if (state.docs.isEmpty()) {
+                                    state.batchStart = System.currentTimeMillis();
+                                }
+                                state.docs.add(doc);
+                                state.objects.add(updatedObject);
+                                if (state.docs.size() >= batchSize) {
+                                    flush(ctx, collection, state);
+                                }
+                                docIndex++;
+                                continue;
+                            }
                             WriteResult result = new SaveCommand(collection, updatedObject).execute();
                             doc.setCRUDOperationPerformed(CRUDOperation.UPDATE);
                             LOGGER.debug("Number of rows affected : ", result.getN());
@@ -142,26 +219,105 @@ public class IterateAndUpdate implements DocUpdater {
                 } else {
                     LOGGER.debug("Document {} was not modified", docIndex);
                 }
-                if (hasErrors) {
-                    LOGGER.debug("Document {} has errors", docIndex);
-                    numFailed++;
-                    doc.setOutputDocument(errorProjector.project(doc.getOutputDocument(), nodeFactory));
-                } else {
-                    numUpdated++;
-                    if (projector != null) {
-                        LOGGER.debug("Projecting document {}", docIndex);
-                        doc.setOutputDocument(projector.project(doc.getOutputDocument(), nodeFactory));
-                    }
-                }
+                docDone(doc, hasErrors, state);
                 docIndex++;
             }
+            flush(ctx, collection, state);
+        } catch (RuntimeException e) {
+            // The pending batch is not written, report its documents as failed
+            LOGGER.warn("Update stopped with {} pending docs: {}", state.docs.size(), e);
+            discard(state, e.toString());
+            throw e;
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
+            response.setNumUpdated(state.numUpdated);
+            response.setNumFailed(state.numFailed);
+        }
+    }
+
+    /**
+     * Counts the document as updated or failed, and sets its output document
+     */
+    private void docDone(DocCtx doc, boolean hasErrors, UpdateState state) {
+        if (hasErrors) {
+            LOGGER.debug("Document has errors");
+            state.numFailed++;
+            doc.setOutputDocument(errorProjector.project(doc.getOutputDocument(), nodeFactory));
+        } else {
+            state.numUpdated++;
+            if (projector != null) {
+                LOGGER.debug("Projecting document");
+                doc.setOutputDocument(projector.project(doc.getOutputDocument(), nodeFactory));
+            }
+        }
+    }
+
+    /**
+     * Writes the pending documents to the db as replacements by _id
+     */
+    private void flush(CRUDOperationContext ctx, DBCollection collection, UpdateState state) {
+        if (state.docs.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("Writing {} updated docs", state.docs.size());
+        BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+        for (DBObject obj : state.objects) {
+            bulk.find(new BasicDBObject(MongoCRUDController.ID_STR, obj.get(MongoCRUDController.ID_STR))).
+                    upsert().replaceOne(obj);
+        }
+        try {
+            new BulkWriteCommand(collection, bulk, WriteConcern.SAFE).execute();
+        } catch (HystrixBadRequestException e) {
+            if (e.getCause() instanceof BulkWriteException) {
+                BulkWriteException bwe = (BulkWriteException) e.getCause();
+                for (BulkWriteError error : bwe.getWriteErrors()) {
+                    LOGGER.warn("Update error for document {}: {}", error.getIndex(), error);
+                    state.docs.get(error.getIndex()).addError(Error.get(MongoCrudConstants.ERR_UPDATE_ERROR, error.getMessage()));
+                }
+                if (bwe.getWriteConcernError() != null) {
+                    setErrors(state, bwe.getWriteConcernError().getMessage());
+                }
+            } else {
+                LOGGER.warn("Bulk update exception: {}", e);
+                setErrors(state, e.toString());
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Bulk update exception: {}", e);
+            setErrors(state, e.toString());
+        }
+        for (DocCtx doc : state.docs) {
+            boolean hasErrors = doc.hasErrors();
+            if (!hasErrors) {
+                doc.setCRUDOperationPerformed(CRUDOperation.UPDATE);
+                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE_DOC, ctx, doc);
+                doc.startModifications();
+            }
+            docDone(doc, hasErrors, state);
+        }
+        state.docs.clear();
+        state.objects.clear();
+    }
+
+    /**
+     * Marks the pending documents as failed without writing them
+     */
+    private void discard(UpdateState state, String msg) {
+        setErrors(state, msg);
+        for (DocCtx doc : state.docs) {
+            docDone(doc, true, state);
+        }
+        state.docs.clear();
+        state.objects.clear();
+    }
+
+    private void setErrors(UpdateState state, String msg) {
+        for (DocCtx doc : state.docs) {
+            if (!doc.hasErrors()) {
+                doc.addError(Error.get(MongoCrudConstants.ERR_UPDATE_ERROR, msg));
+            }
         }
-        response.setNumUpdated(numUpdated);
-        response.setNumFailed(numFailed);
     }
 
 }
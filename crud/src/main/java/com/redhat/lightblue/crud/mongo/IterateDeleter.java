@@ -18,6 +18,11 @@
  */
 package com.redhat.lightblue.crud.mongo;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,8 +30,10 @@ import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.DBCursor;
 import com.mongodb.BasicDBObject;
+import com.mongodb.ReadPreference;
 import com.mongodb.WriteResult;
 import com.mongodb.WriteConcern;
+import com.netflix.hystrix.strategy.properties.HystrixPropertiesFactory;
 
 import com.redhat.lightblue.interceptor.InterceptPoint;
 import com.redhat.lightblue.crud.CRUDDeleteResponse;
@@ -37,18 +44,48 @@ import com.redhat.lightblue.mongo.hystrix.FindCommand;
 import com.redhat.lightblue.mongo.hystrix.RemoveCommand;
 
 /**
- * Iterates the result set and deleted documents one by one
+ * Iterates the result set and deleted documents one by one. By default, each
+ * delete completes before the next document is read. If maxPending is
+ * greater than 1, the deletes are queued, so up to maxPending deletes run
+ * while the next documents are read from the cursor. The post-delete
+ * interceptors are called in result set order as the deletes complete.
  */
 public class IterateDeleter implements DocDeleter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(IterateDeleter.class);
 
+    /**
+     * Default number of deletes running at the same time
+     */
+    public static final int DEFAULT_MAX_PENDING = 1;
+
     private final Translator translator;
+    private int maxPending = DEFAULT_MAX_PENDING;
 
     public IterateDeleter(Translator translator) {
         this.translator = translator;
     }
 
+    /**
+     * Returns the number of deletes running at the same time
+     */
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Sets the number of deletes running at the same time. If 1, documents
+     * are deleted one at a time. The queued deletes run on the Hystrix
+     * thread pool of the remove command, so at most coreSize-1 deletes are
+     * queued, leaving room for the other requests sharing the pool. Deletes
+     * rejected by a busy pool still fail the operation after some documents
+     * are removed, so pipelining should only be enabled for datasources with
+     * a dedicated remove pool.
+     */
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending < 1 ? 1 : maxPending;
+    }
+
     @Override
     public void delete(CRUDOperationContext ctx,
                        DBCollection collection,
@@ -60,23 +97,42 @@ public class IterateDeleter implements DocDeleter {
         int numDeleted = 0;
         try {
             // Find docs
-            cursor = new FindCommand(collection, mongoQuery, null).execute();
+            cursor = new FindCommand(collection, mongoQuery, null, ReadPreference.primary()).execute();
             LOGGER.debug("Found {} documents", cursor.count());
-            // read-delet
-            while (cursor.hasNext()) {
-                DBObject document = cursor.next();
-                LOGGER.debug("Retrieved doc {}", docIndex);
-                Object id = document.get(MongoCRUDController.ID_STR);
-                DocCtx doc = ctx.addDocument(translator.toJson(document));
-                doc.setOriginalDocument(doc);
-                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_DELETE_DOC, ctx, doc);
-                WriteResult result = new RemoveCommand(collection, new BasicDBObject("_id", id), WriteConcern.SAFE).execute();
-                if (result.getN() == 1) {
-                    numDeleted++;
-                    doc.setCRUDOperationPerformed(CRUDOperation.DELETE);
+            // read-delete
+            Deque<PendingDelete> pending = new ArrayDeque<>();
+            int limit = 0;
+            try {
+                while (cursor.hasNext()) {
+                    DBObject document = cursor.next();
+                    LOGGER.debug("Retrieved doc {}", docIndex);
+                    Object id = document.get(MongoCRUDController.ID_STR);
+                    DocCtx doc = ctx.addDocument(translator.toJson(document));
+                    doc.setOriginalDocument(doc);
+                    ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_DELETE_DOC, ctx, doc);
+                    RemoveCommand remove = new RemoveCommand(collection, new BasicDBObject("_id", id), WriteConcern.SAFE);
+                    if (limit == 0) {
+                        limit = maxPending <= 1 ? 1 : Math.min(maxPending, getPoolLimit(remove));
+                        LOGGER.debug("Running up to {} deletes at the same time", limit);
+                    }
+                    if (limit <= 1) {
+                        numDeleted += complete(ctx, doc, remove.execute());
+                    } else {
+                        pending.addLast(new PendingDelete(doc, remove.queue()));
+                        if (pending.size() >= limit) {
+                            numDeleted += complete(ctx, pending.removeFirst());
+                        }
+                    }
+                    docIndex++;
+                }
+                while (!pending.isEmpty()) {
+                    numDeleted += complete(ctx, pending.removeFirst());
+                }
+            } finally {
+                // Don't leave deletes running if something failed
+                for (PendingDelete p : pending) {
+                    p.result.cancel(false);
                 }
-                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_DELETE_DOC, ctx, doc);
-                docIndex++;
             }
         } finally {
             if (cursor != null) {
@@ -85,4 +141,53 @@ public class IterateDeleter implements DocDeleter {
         }
         response.setNumDeleted(numDeleted);
     }
+
+    /**
+     * Returns the number of deletes that can be queued to the thread pool of
+     * the command, leaving one thread for other requests
+     */
+    private static int getPoolLimit(RemoveCommand command) {
+        int coreSize = HystrixPropertiesFactory.getThreadPoolProperties(command.getThreadPoolKey(), null).coreSize().get();
+        return Math.max(1, coreSize - 1);
+    }
+
+    /**
+     * Waits for a queued delete, and calls the post-delete interceptors.
+     * Returns the number of deleted documents.
+     */
+    private int complete(CRUDOperationContext ctx, PendingDelete p) {
+        WriteResult result;
+        try {
+            result = p.result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        return complete(ctx, p.doc, result);
+    }
+
+    private int complete(CRUDOperationContext ctx, DocCtx doc, WriteResult result) {
+        int n = 0;
+        if (result.getN() == 1) {
+            n = 1;
+            doc.setCRUDOperationPerformed(CRUDOperation.DELETE);
+        }
+        ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_DELETE_DOC, ctx, doc);
+        return n;
+    }
+
+    private static final class PendingDelete {
+        private final DocCtx doc;
+        private final Future<WriteResult> result;
+
+        public PendingDelete(DocCtx doc, Future<WriteResult> result) {
+            this.doc = doc;
+            this.result = result;
+        }
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics registry keeping the statistics of each operation of each entity
+ * in an OperationStats MBean, registered with the platform MBean server as
+ *
+ * <pre>
+ *   com.redhat.lightblue.mongo:type=CRUDMetrics,entity=&lt;entity&gt;,operation=&lt;operation&gt;
+ * </pre>
+ *
+ * The MBeans are registered when the first metric of the operation is
+ * recorded.
+ */
+public class JmxMetricsRegistry implements MetricsRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmxMetricsRegistry.class);
+
+    /**
+     * Domain of the registered MBeans
+     */
+    public static final String DOMAIN = "com.redhat.lightblue.mongo";
+
+    /**
+     * If this system property is true, MongoCRUDFactory sets the shared
+     * registry to the controllers it creates
+     */
+    public static final String ENABLED_PROPERTY = "lightblue.mongo.metrics.jmx";
+
+    /**
+     * If this system property is true, the shared registry counts the bson
+     * bytes of the found documents
+     *
+     * @see MetricsRegistry#isCountBytes()
+     */
+    public static final String COUNT_BYTES_PROPERTY = "lightblue.mongo.metrics.countBytes";
+
+    private static final JmxMetricsRegistry SHARED = new JmxMetricsRegistry(ManagementFactory.getPlatformMBeanServer());
+
+    static {
+        SHARED.setCountBytes(Boolean.getBoolean(COUNT_BYTES_PROPERTY));
+    }
+
+    private final MBeanServer server;
+    private final ConcurrentMap<String, OperationStats> stats = new ConcurrentHashMap<>();
+    private volatile boolean countBytes;
+
+    /**
+     * @param server The MBean server. If null, the statistics are kept, but
+     * not registered.
+     */
+    public JmxMetricsRegistry(MBeanServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Returns the registry shared by all controllers, registering its MBeans
+     * with the platform MBean server
+     */
+    public static JmxMetricsRegistry getSharedInstance() {
+        return SHARED;
+    }
+
+    @Override
+    public boolean isCountBytes() {
+        return countBytes;
+    }
+
+    /**
+     * Sets whether the bson bytes of the found documents are counted. This
+     * is off by default, as it encodes every found document once more.
+     */
+    public void setCountBytes(boolean b) {
+        countBytes = b;
+    }
+
+    @Override
+    public void recordTime(String entity, String operation, String phase, long nanos) {
+        getStats(entity, operation).recordTime(phase, nanos);
+    }
+
+    @Override
+    public void count(String entity, String operation, String counter, long n) {
+        getStats(entity, operation).count(counter, n);
+    }
+
+    /**
+     * Returns the statistics of an operation, creating and registering them
+     * if they don't exist
+     */
+    public OperationStats getStats(String entity, String operation) {
+        String key = entity + ':' + operation;
+        OperationStats s = stats.get(key);
+        if (s == null) {
+            OperationStats x = stats.putIfAbsent(key, s = new OperationStats());
+            if (x != null) {
+                s = x;
+            } else if (server != null) {
+                register(entity, operation, s);
+            }
+        }
+        return s;
+    }
+
+    private void register(String entity, String operation, OperationStats s) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=CRUDMetrics,entity=" + ObjectName.quote(String.valueOf(entity))
+                    + ",operation=" + operation);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(s, name);
+        } catch (JMException e) {
+            LOGGER.warn("Cannot register metrics for {}:{}: {}", entity, operation, e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+/**
+ * Receives the latencies and counters measured by the CRUD operations. The
+ * implementations must be thread-safe.
+ *
+ * @see OperationMetrics
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Records the time spent in a phase of an operation
+     *
+     * @param entity The entity name
+     * @param operation The operation, one of insert, save, find, update,
+     * delete
+     * @param phase The phase
+     * @param nanos Time spent in the phase in nanoseconds
+     */
+    void recordTime(String entity, String operation, String phase, long nanos);
+
+    /**
+     * Adds to a counter of an operation
+     *
+     * @param entity The entity name
+     * @param operation The operation
+     * @param counter The counter
+     * @param n The value to add
+     */
+    void count(String entity, String operation, String counter, long n);
+
+    /**
+     * Returns whether the bson size of the found documents is counted. This
+     * encodes every found document to bson once more, which is about as
+     * expensive as reading it, so it should only be enabled while
+     * investigating document sizes.
+     */
+    boolean isCountBytes();
+}
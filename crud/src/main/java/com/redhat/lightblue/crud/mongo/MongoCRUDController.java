@@ -23,6 +23,8 @@ import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.mongodb.*;
 import com.redhat.lightblue.common.mongo.DBResolver;
+import com.redhat.lightblue.common.mongo.DatasourceSettings;
+import com.redhat.lightblue.common.mongo.DatasourceSettingsResolver;
 import com.redhat.lightblue.common.mongo.MongoDataStore;
 import com.redhat.lightblue.crud.*;
 import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
@@ -33,6 +35,7 @@ import com.redhat.lightblue.metadata.*;
 import com.redhat.lightblue.metadata.constraints.IdentityConstraint;
 import com.redhat.lightblue.metadata.mongo.MongoMetadataConstants;
 import com.redhat.lightblue.metadata.types.StringType;
+import com.redhat.lightblue.mongo.hystrix.CursorOptions;
 import com.redhat.lightblue.query.*;
 import com.redhat.lightblue.util.Error;
 import com.redhat.lightblue.util.JsonDoc;
@@ -72,6 +75,43 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
      */
     public static final String PROP_FINDER = "MongoCRUDController:finder";
 
+    /**
+     * Name of the property for the operation context that overrides how the
+     * total number of matching documents is computed for a find operation. The
+     * value can be a DocFinder.CountMode, or its name.
+     */
+    public static final String PROP_FIND_COUNT_MODE = "MongoCRUDController:findCountMode";
+
+    /**
+     * Name of the property for the operation context that enables keyset
+     * pagination for a find operation. The value is the continuation token
+     * returned by the previous page, or an empty string for the first page.
+     * With keyset pagination, the from index is ignored, and the result set
+     * size is the number of documents after the continuation token.
+     */
+    public static final String PROP_FIND_CONTINUATION = "MongoCRUDController:findContinuation";
+
+    /**
+     * Name of the property for the operation context that keeps the
+     * continuation token of the next page after a find operation using keyset
+     * pagination. Not set if the last page is read.
+     */
+    public static final String PROP_FIND_NEXT_CONTINUATION = "MongoCRUDController:findNextContinuation";
+
+    /**
+     * Name of the property for the operation context that overrides the number
+     * of documents returned by the server in one batch for a find operation
+     */
+    public static final String PROP_FIND_BATCH_SIZE = "MongoCRUDController:findBatchSize";
+
+    /**
+     * Name of the property for the operation context that overrides the
+     * maximum time in milliseconds the server spends executing the query of a
+     * find operation. 0 means there is no time limit, and -1 means the Hystrix
+     * execution timeout of the find command is used.
+     */
+    public static final String PROP_FIND_MAX_TIME_MS = "MongoCRUDController:findMaxTimeMS";
+
     public static final String OP_INSERT = "insert";
     public static final String OP_SAVE = "save";
     public static final String OP_FIND = "find";
@@ -84,10 +124,100 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
 
     private final DBResolver dbResolver;
 
+    private DocFinder.CountMode findCountMode = DocFinder.CountMode.exact;
+
+    private int writeBatchSize = BulkDocSaver.DEFAULT_BATCH_SIZE;
+
+    private MetricsRegistry metricsRegistry;
+
+    private SlowOperationRecorder slowOperationRecorder;
+
     public MongoCRUDController(DBResolver dbResolver) {
         this.dbResolver = dbResolver;
     }
 
+    /**
+     * Returns how the total number of matching documents is computed for find
+     * operations, unless overridden by the operation context
+     */
+    public DocFinder.CountMode getFindCountMode() {
+        return findCountMode;
+    }
+
+    /**
+     * Sets how the total number of matching documents is computed for find
+     * operations, unless overridden by the operation context
+     */
+    public void setFindCountMode(DocFinder.CountMode mode) {
+        findCountMode = mode == null ? DocFinder.CountMode.exact : mode;
+    }
+
+    /**
+     * Returns the number of inserted or saved documents written to the db in
+     * one batch
+     */
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    /**
+     * Sets the number of inserted or saved documents written to the db in one
+     * batch. If the batch size is 1 or less, every document is written with
+     * separate calls to the db.
+     */
+    public void setWriteBatchSize(int size) {
+        writeBatchSize = size;
+    }
+
+    /**
+     * @deprecated Use {@link #getWriteBatchSize()}
+     */
+    @Deprecated
+    public int getInsertBatchSize() {
+        return getWriteBatchSize();
+    }
+
+    /**
+     * @deprecated Use {@link #setWriteBatchSize(int)}
+     */
+    @Deprecated
+    public void setInsertBatchSize(int size) {
+        setWriteBatchSize(size);
+    }
+
+    /**
+     * Returns the registry receiving the per-phase latencies and counters of
+     * the operations, or null if metrics are disabled
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * Sets the registry receiving the per-phase latencies and counters of the
+     * operations. If null, metrics are disabled.
+     */
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        metricsRegistry = registry;
+    }
+
+    /**
+     * Returns the recorder of the slow find, update and delete operations, or
+     * null if slow operations are not recorded
+     */
+    public SlowOperationRecorder getSlowOperationRecorder() {
+        return slowOperationRecorder;
+    }
+
+    /**
+     * Sets the recorder of the slow find, update and delete operations. The
+     * operations of a datasource are recorded only if the datasource has a
+     * slow operation threshold.
+     */
+    public void setSlowOperationRecorder(SlowOperationRecorder recorder) {
+        slowOperationRecorder = recorder;
+    }
+
     /**
      * Insertion operation for mongo
      */
@@ -131,12 +261,16 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
         LOGGER.debug("saveOrInsert() start");
         Error.push(operation);
         Translator translator = new Translator(ctx, ctx.getFactory().getNodeFactory());
+        OperationMetrics metrics = OperationMetrics.get(metricsRegistry, ctx.getEntityName(), operation);
+        long start = metrics.start();
         try {
             FieldAccessRoleEvaluator roleEval = new FieldAccessRoleEvaluator(ctx.getEntityMetadata(ctx.getEntityName()),
                     ctx.getCallerRoles());
             LOGGER.debug("saveOrInsert: Translating docs");
             EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
+            long t = metrics.start();
             DBObject[] dbObjects = translator.toBson(documents);
+            metrics.end(OperationMetrics.PHASE_TO_BSON, t);
             // dbObjects[i] is the translation of documents.get(i)
             if (dbObjects != null) {
                 LOGGER.debug("saveOrInsert: {} docs translated to bson", dbObjects.length);
@@ -153,8 +287,17 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
                 } else {
                     projector = null;
                 }
-                DocSaver saver = new BasicDocSaver(translator, roleEval);
+                DocSaver saver;
+                if (writeBatchSize > 1) {
+                    saver = new BulkDocSaver(translator, roleEval, writeBatchSize);
+                } else {
+                    BasicDocSaver basicSaver = new BasicDocSaver(translator, roleEval);
+                    DatasourceSettings settings = getSettings(store);
+                    basicSaver.setCollapseLookups(settings.isSaveCollapseLookups());
+                    saver = basicSaver;
+                }
                 ctx.setProperty(PROP_SAVER, saver);
+                t = metrics.start();
                 for (int docIndex = 0; docIndex < dbObjects.length; docIndex++) {
                     DBObject dbObject = dbObjects[docIndex];
                     DocCtx inputDoc = documents.get(docIndex);
@@ -165,6 +308,15 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
                         LOGGER.error("saveOrInsert failed: {}", e);
                         inputDoc.addError(analyzeException(e, operation, MongoCrudConstants.ERR_SAVE_ERROR, true));
                     }
+                }
+                if (saver instanceof BulkDocSaver) {
+                    ((BulkDocSaver) saver).flush(ctx);
+                }
+                metrics.end(OperationMetrics.PHASE_WRITE, t);
+                t = metrics.start();
+                for (int docIndex = 0; docIndex < dbObjects.length; docIndex++) {
+                    DBObject dbObject = dbObjects[docIndex];
+                    DocCtx inputDoc = documents.get(docIndex);
                     if (projector != null) {
                         JsonDoc jsonDoc = translator.toJson(dbObject);
                         LOGGER.debug("Translated doc: {}", jsonDoc);
@@ -177,7 +329,11 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
                         ret++;
                     }
                 }
+                metrics.end(OperationMetrics.PHASE_PROJECT, t);
+                t = metrics.start();
                 ctx.getHookManager().queueHooks(ctx);
+                metrics.end(OperationMetrics.PHASE_HOOKS, t);
+                metrics.count(OperationMetrics.COUNT_WRITTEN, ret);
             }
         } catch (Error e) {
             ctx.addError(e);
@@ -185,6 +341,7 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
             ctx.addError(analyzeException(e, CrudConstants.ERR_CRUD));
         } finally {
             Error.pop();
+            metrics.end(OperationMetrics.PHASE_TOTAL, start);
         }
         LOGGER.debug("saveOrInsert() end: {} docs requested, {} saved", documents.size(), ret);
         return ret;
@@ -199,6 +356,9 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
         Error.push(OP_UPDATE);
         CRUDUpdateResponse response = new CRUDUpdateResponse();
         Translator translator = new Translator(ctx, ctx.getFactory().getNodeFactory());
+        OperationMetrics metrics = OperationMetrics.get(metricsRegistry, ctx.getEntityName(), OP_UPDATE);
+        long start = metrics.start();
+        SlowOperationRecorder.Capture capture = null;
         try {
             if (query == null) {
                 throw Error.get("update",MongoCrudConstants.ERR_NULL_QUERY,"");
@@ -207,8 +367,17 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
             EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
             if (md.getAccess().getUpdate().hasAccess(ctx.getCallerRoles())) {
                 ConstraintValidator validator = ctx.getFactory().getConstraintValidator(md);
+                DatasourceSettings settings = getSettings((MongoDataStore) md.getDataStore());
+                translator.setExprComparisons(settings.isExprComparisons());
+                capture = startCapture(md, OP_UPDATE, settings, start);
+                if (capture != null) {
+                    metrics = capture.getMetrics();
+                    start = capture.getStart();
+                }
                 LOGGER.debug("Translating query {}", query);
+                long t = metrics.start();
                 DBObject mongoQuery = translator.translate(md, query);
+                long translateNanos = metrics.elapsed(t);
                 LOGGER.debug("Translated query {}", mongoQuery);
                 FieldAccessRoleEvaluator roleEval = new FieldAccessRoleEvaluator(md, ctx.getCallerRoles());
 
@@ -222,6 +391,9 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
                 }
                 DB db = dbResolver.get((MongoDataStore) md.getDataStore());
                 DBCollection coll = db.getCollection(((MongoDataStore) md.getDataStore()).getCollectionName());
+                if (capture != null) {
+                    capture.setQuery(coll, mongoQuery, null, null, ReadPreference.primary());
+                }
                 Projector errorProjector;
                 if (projector == null) {
                     errorProjector = Projector.getInstance(ID_PROJECTION, md);
@@ -230,13 +402,34 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
                 }
 
                 // If there are any constraints for updated fields, or if we're updating arrays, we have to use iterate-update
-                Updater updater = Updater.getInstance(ctx.getFactory().getNodeFactory(), md, update);
-
-                DocUpdater docUpdater = new IterateAndUpdate(ctx.getFactory().getNodeFactory(), validator, roleEval, translator, updater,
-                        projector, errorProjector);
+                t = metrics.start();
+                DBObject mongoUpdateExpr = translateAtomicUpdate(translator, md, update);
+                metrics.record(OperationMetrics.PHASE_TRANSLATE, translateNanos + metrics.elapsed(t));
+                DocUpdater docUpdater;
+                if (mongoUpdateExpr != null) {
+                    Set<Path> updatedFields = getUpdatedFields(update);
+                    if (projector == null && settings.isServerSideUpdate() && !hasHooks(md, CRUDOperation.UPDATE)) {
+                        docUpdater = new ServerSideUpdater(roleEval, mongoUpdateExpr, updatedFields);
+                    } else {
+                        docUpdater = new AtomicIterateUpdate(ctx.getFactory().getNodeFactory(), roleEval, translator,
+                                mongoUpdateExpr, projector, updatedFields);
+                    }
+                } else {
+                    Updater updater = Updater.getInstance(ctx.getFactory().getNodeFactory(), md, update);
+                    IterateAndUpdate iterateUpdater = new IterateAndUpdate(ctx.getFactory().getNodeFactory(), validator, roleEval, translator, updater,
+                            projector, errorProjector);
+                    iterateUpdater.setBatchSize(settings.getUpdateBatchSize());
+                    iterateUpdater.setBatchMaxAgeMS(settings.getUpdateBatchMaxAgeMS());
+                    docUpdater = iterateUpdater;
+                }
                 ctx.setProperty(PROP_UPDATER, docUpdater);
+                t = metrics.start();
                 docUpdater.update(ctx, coll, md, response, mongoQuery);
+                metrics.end(OperationMetrics.PHASE_WRITE, t);
+                metrics.count(OperationMetrics.COUNT_WRITTEN, response.getNumUpdated());
+                t = metrics.start();
                 ctx.getHookManager().queueHooks(ctx);
+                metrics.end(OperationMetrics.PHASE_HOOKS, t);
             } else {
                 ctx.addError(Error.get(MongoCrudConstants.ERR_NO_ACCESS, "update:" + ctx.getEntityName()));
             }
@@ -246,6 +439,10 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
             ctx.addError(analyzeException(e, CrudConstants.ERR_CRUD));
         } finally {
             Error.pop();
+            metrics.end(OperationMetrics.PHASE_TOTAL, start);
+        }
+        if (capture != null) {
+            slowOperationRecorder.complete(capture);
         }
         ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE, ctx);
         LOGGER.debug("update end: updated: {}, failed: {}", response.getNumUpdated(), response.getNumFailed());
@@ -259,6 +456,9 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
         Error.push(OP_DELETE);
         CRUDDeleteResponse response = new CRUDDeleteResponse();
         Translator translator = new Translator(ctx, ctx.getFactory().getNodeFactory());
+        OperationMetrics metrics = OperationMetrics.get(metricsRegistry, ctx.getEntityName(), OP_DELETE);
+        long start = metrics.start();
+        SlowOperationRecorder.Capture capture = null;
         try {
             if (query == null) {
                 throw Error.get("delete",MongoCrudConstants.ERR_NULL_QUERY,"");
@@ -266,15 +466,37 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
             ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_DELETE, ctx);
             EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
             if (md.getAccess().getDelete().hasAccess(ctx.getCallerRoles())) {
+                DatasourceSettings settings = getSettings((MongoDataStore) md.getDataStore());
+                translator.setExprComparisons(settings.isExprComparisons());
+                capture = startCapture(md, OP_DELETE, settings, start);
+                if (capture != null) {
+                    metrics = capture.getMetrics();
+                    start = capture.getStart();
+                }
                 LOGGER.debug("Translating query {}", query);
+                long t = metrics.start();
                 DBObject mongoQuery = translator.translate(md, query);
+                metrics.end(OperationMetrics.PHASE_TRANSLATE, t);
                 LOGGER.debug("Translated query {}", mongoQuery);
                 DB db = dbResolver.get((MongoDataStore) md.getDataStore());
                 DBCollection coll = db.getCollection(((MongoDataStore) md.getDataStore()).getCollectionName());
-                DocDeleter deleter = new IterateDeleter(translator);
+                if (capture != null) {
+                    capture.setQuery(coll, mongoQuery, null, null, ReadPreference.primary());
+                }
+                DocDeleter deleter;
+                if (settings.isServerSideDelete() && !hasHooks(md, CRUDOperation.DELETE)) {
+                    deleter = new ServerSideDeleter(settings.getDeleteBatchSize());
+                } else {
+                    deleter = new IterateDeleter(translator);
+                }
                 ctx.setProperty(PROP_DELETER, deleter);
+                t = metrics.start();
                 deleter.delete(ctx, coll, mongoQuery, response);
+                metrics.end(OperationMetrics.PHASE_WRITE, t);
+                metrics.count(OperationMetrics.COUNT_WRITTEN, response.getNumDeleted());
+                t = metrics.start();
                 ctx.getHookManager().queueHooks(ctx);
+                metrics.end(OperationMetrics.PHASE_HOOKS, t);
             } else {
                 ctx.addError(Error.get(MongoCrudConstants.ERR_NO_ACCESS, "delete:" + ctx.getEntityName()));
             }
@@ -284,6 +506,10 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
             ctx.addError(analyzeException(e, CrudConstants.ERR_CRUD));
         } finally {
             Error.pop();
+            metrics.end(OperationMetrics.PHASE_TOTAL, start);
+        }
+        if (capture != null) {
+            slowOperationRecorder.complete(capture);
         }
         ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_DELETE, ctx);
         LOGGER.debug("delete end: deleted: {}}", response.getNumDeleted());
@@ -304,6 +530,9 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
         Error.push(OP_FIND);
         CRUDFindResponse response = new CRUDFindResponse();
         Translator translator = new Translator(ctx, ctx.getFactory().getNodeFactory());
+        OperationMetrics metrics = OperationMetrics.get(metricsRegistry, ctx.getEntityName(), OP_FIND);
+        long start = metrics.start();
+        SlowOperationRecorder.Capture capture = null;
         try {
             if (query == null) {
                 throw Error.get("find",MongoCrudConstants.ERR_NULL_QUERY,"");
@@ -315,7 +544,16 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
             EntityMetadata md = ctx.getEntityMetadata(ctx.getEntityName());
             if (md.getAccess().getFind().hasAccess(ctx.getCallerRoles())) {
                 FieldAccessRoleEvaluator roleEval = new FieldAccessRoleEvaluator(md, ctx.getCallerRoles());
+                MongoDataStore store = (MongoDataStore) md.getDataStore();
+                DatasourceSettings settings = getSettings(store);
+                translator.setExprComparisons(settings.isExprComparisons());
+                capture = startCapture(md, OP_FIND, settings, start);
+                if (capture != null) {
+                    metrics = capture.getMetrics();
+                    start = capture.getStart();
+                }
                 LOGGER.debug("Translating query {}", query);
+                long t = metrics.start();
                 DBObject mongoQuery = translator.translate(md, query);
                 LOGGER.debug("Translated query {}", mongoQuery);
                 DBObject mongoSort;
@@ -328,18 +566,39 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
                 }
                 DBObject mongoProjection = translator.translateProjection(md, getProjectionFields(projection, md), query, sort);
                 LOGGER.debug("Translated projection {}", mongoProjection);
+                metrics.end(OperationMetrics.PHASE_TRANSLATE, t);
                 DB db = dbResolver.get((MongoDataStore) md.getDataStore());
                 DBCollection coll = db.getCollection(((MongoDataStore) md.getDataStore()).getCollectionName());
+                ReadPreference readPreference = getFindReadPreference(store, settings);
+                if (capture != null) {
+                    capture.setQuery(coll, mongoQuery, mongoSort, mongoProjection, readPreference);
+                }
                 LOGGER.debug("Retrieve db collection:" + coll);
-                DocFinder finder = new BasicDocFinder(translator);
+                // Results are projected by the finder as they are streamed from the cursor
+                Projection findProjection = Projection.add(projection, roleEval.getExcludedFields(FieldAccessRoleEvaluator.Operation.find));
+                Projector projector = Projector.getInstance(findProjection, md);
+                CursorOptions cursorOptions = getFindCursorOptions(ctx, settings);
+                StreamingDocFinder finder = new StreamingDocFinder(translator, projector,
+                        cursorOptions.getBatchSize() > 0 ? cursorOptions.getBatchSize() : StreamingDocFinder.DEFAULT_BATCH_SIZE,
+                        getFindCountMode(ctx));
+                finder.setReadPreference(readPreference);
+                finder.setCursorOptions(cursorOptions);
+                finder.setMetrics(metrics);
+                if (settings.getFindParallelThreshold() > 0) {
+                    finder.setParallelProcessor(new ParallelDocProcessor(settings.getFindParallelThreshold()), findProjection, md);
+                }
+                Object continuation = ctx.getProperty(PROP_FIND_CONTINUATION);
+                if (continuation != null) {
+                    finder.setContinuation(continuation.toString());
+                }
                 ctx.setProperty(PROP_FINDER, finder);
                 response.setSize(finder.find(ctx, coll, mongoQuery, mongoProjection, mongoSort, from, to));
-                // Project results
-                Projector projector = Projector.getInstance(Projection.add(projection, roleEval.getExcludedFields(FieldAccessRoleEvaluator.Operation.find)), md);
-                for (DocCtx document : ctx.getDocuments()) {
-                    document.setOutputDocument(projector.project(document, ctx.getFactory().getNodeFactory()));
+                if (finder.getNextContinuation() != null) {
+                    ctx.setProperty(PROP_FIND_NEXT_CONTINUATION, finder.getNextContinuation());
                 }
+                t = metrics.start();
                 ctx.getHookManager().queueHooks(ctx);
+                metrics.end(OperationMetrics.PHASE_HOOKS, t);
             } else {
                 ctx.addError(Error.get(MongoCrudConstants.ERR_NO_ACCESS, "find:" + ctx.getEntityName()));
             }
@@ -349,12 +608,41 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
             ctx.addError(analyzeException(e, CrudConstants.ERR_CRUD));
         } finally {
             Error.pop();
+            metrics.end(OperationMetrics.PHASE_TOTAL, start);
+        }
+        if (capture != null) {
+            slowOperationRecorder.complete(capture);
         }
         ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_FIND, ctx);
         LOGGER.debug("find end: query: {} results: {}", response.getSize());
         return response;
     }
 
+    /**
+     * Returns the settings of the datasource of the store. If the resolver
+     * does not know about datasource settings, returns the defaults.
+     */
+    private DatasourceSettings getSettings(MongoDataStore store) {
+        DatasourceSettings settings = null;
+        if (dbResolver instanceof DatasourceSettingsResolver) {
+            settings = ((DatasourceSettingsResolver) dbResolver).getSettings(store);
+        }
+        return settings == null ? new DatasourceSettings() : settings;
+    }
+
+    /**
+     * Starts capturing an operation for the slow operation recorder. Returns
+     * null if there is no recorder, or the datasource does not record slow
+     * operations.
+     */
+    private SlowOperationRecorder.Capture startCapture(EntityMetadata md,
+                                                       String operation,
+                                                       DatasourceSettings settings,
+                                                       long start) {
+        return slowOperationRecorder == null ? null
+                : slowOperationRecorder.start(metricsRegistry, md, operation, settings, start);
+    }
+
     @Override
     public void updatePredefinedFields(CRUDOperationContext ctx, JsonDoc doc) {
         JsonNode idNode = doc.get(Translator.ID_PATH);
@@ -373,6 +661,10 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
     @Override
     public void afterUpdateEntityInfo(Metadata md, EntityInfo ei, boolean newEntity) {
         createUpdateEntityInfoIndexes(ei);
+        if (newEntity) {
+            // A removed entity may be created again with the same versions
+            TranslationPlan.invalidate(ei.getName());
+        }
     }
 
     @Override
@@ -383,6 +675,7 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
 
     @Override
     public void afterCreateNewSchema(Metadata md, EntityMetadata emd) {
+        TranslationPlan.invalidate(emd.getName());
     }
 
     @Override
@@ -632,6 +925,24 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
         return false;
     }
 
+    /**
+     * Returns the count mode for the find operation, using the operation context
+     * property if there is one
+     */
+    private DocFinder.CountMode getFindCountMode(CRUDOperationContext ctx) {
+        Object value = ctx.getProperty(PROP_FIND_COUNT_MODE);
+        if (value instanceof DocFinder.CountMode) {
+            return (DocFinder.CountMode) value;
+        } else if (value != null) {
+            try {
+                return DocFinder.CountMode.valueOf(value.toString());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Invalid {}: {}, using {}", PROP_FIND_COUNT_MODE, value, findCountMode);
+            }
+        }
+        return findCountMode;
+    }
+
     /**
      * Returns a projection containing the requested projection, all identity
      * fields, and the objectType field
@@ -655,11 +966,163 @@ public class MongoCRUDController implements CRUDController, MetadataListener {
         return new ProjectionList(projectFields);
     }
 
-    private Error analyzeException(Exception e, final String otherwise) {
+    /**
+     * Returns the read preference for the find operations on an entity. The
+     * read preference of the entity datastore overrides the read preference of
+     * the datasource. If neither is set, returns null, and the read preference
+     * of the client is used.
+     */
+    static ReadPreference getFindReadPreference(MongoDataStore store, DatasourceSettings settings) {
+        String name = store.getReadPreference();
+        if (name == null && settings != null) {
+            name = settings.getFindReadPreference();
+        }
+        return name == null ? null : ReadPreference.valueOf(name);
+    }
+
+    /**
+     * Returns the cursor options for the find operations. The batch size and
+     * the server side time limit given in the operation context override the
+     * settings of the datasource.
+     */
+    static CursorOptions getFindCursorOptions(CRUDOperationContext ctx, DatasourceSettings settings) {
+        CursorOptions options = new CursorOptions();
+        if (settings != null) {
+            options.setBatchSize(settings.getFindBatchSize());
+            options.setMaxTimeMS(settings.getFindMaxTimeMS());
+            options.setNoCursorTimeout(settings.isFindNoCursorTimeout());
+            options.setPartial(settings.isFindPartial());
+            options.setExhaust(settings.isFindExhaust());
+        }
+        Long value = getLongProperty(ctx, PROP_FIND_BATCH_SIZE);
+        if (value != null) {
+            options.setBatchSize(value.intValue());
+        }
+        value = getLongProperty(ctx, PROP_FIND_MAX_TIME_MS);
+        if (value != null) {
+            options.setMaxTimeMS(value);
+        }
+        return options;
+    }
+
+    private static Long getLongProperty(CRUDOperationContext ctx, String name) {
+        Object value = ctx.getProperty(name);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value != null) {
+            try {
+                return Long.valueOf(value.toString());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid {}: {}", name, value);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if there are hooks for the entity that are called for
+     * documents updated or deleted by the operation
+     */
+    private static boolean hasHooks(EntityMetadata md, CRUDOperation op) {
+        Hooks hooks = md.getEntityInfo().getHooks();
+        if (hooks != null && hooks.getHooks() != null) {
+            for (Hook hook : hooks.getHooks()) {
+                if ((op == CRUDOperation.UPDATE && hook.isUpdate())
+                        || (op == CRUDOperation.DELETE && hook.isDelete())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Translates the update expression to a native update expression if the
+     * update can be performed atomically. That is, the update expression can be
+     * translated, the updated fields are not array size fields, neither the
+     * updated fields nor any of their descendants are arrays or fields with
+     * constraints, and the entity has no entity constraints. Returns null
+     * otherwise.
+     */
+    private static DBObject translateAtomicUpdate(Translator translator, EntityMetadata md, UpdateExpression update) {
+        DBObject mongoUpdateExpr;
+        try {
+            mongoUpdateExpr = translator.translate(md, update);
+        } catch (CannotTranslateException e) {
+            LOGGER.debug("Cannot translate update expression {}: {}", update, e.getMessage());
+            return null;
+        }
+        List<EntityConstraint> entityConstraints = md.getEntitySchema().getConstraints();
+        if (entityConstraints != null && !entityConstraints.isEmpty()) {
+            LOGGER.debug("Entity has constraints, cannot update atomically");
+            return null;
+        }
+        for (Path field : getUpdatedFields(update)) {
+            if (field.tail(0).endsWith("#")) {
+                LOGGER.debug("{} is an array size field, cannot update atomically", field);
+                return null;
+            }
+            if (hasArraysOrConstraints(md.resolve(field))) {
+                LOGGER.debug("{} or one of its descendants is an array or has constraints, cannot update atomically", field);
+                return null;
+            }
+        }
+        LOGGER.debug("Translated update expression {}", mongoUpdateExpr);
+        return mongoUpdateExpr;
+    }
+
+    /**
+     * Returns true if the field, or any of its descendants, is an array or has
+     * constraints. Setting or unsetting an object field changes all its
+     * descendants, so their constraints have to be validated too.
+     */
+    private static boolean hasArraysOrConstraints(FieldTreeNode node) {
+        if (node instanceof ArrayField) {
+            return true;
+        }
+        if (node instanceof Field) {
+            List<FieldConstraint> constraints = ((Field) node).getConstraints();
+            if (constraints != null && !constraints.isEmpty()) {
+                return true;
+            }
+        }
+        for (Iterator<? extends FieldTreeNode> itr = node.getChildren(); itr.hasNext();) {
+            if (hasArraysOrConstraints(itr.next())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the fields modified by a $set, $add, or $unset update expression,
+     * or a list of them
+     */
+    private static Set<Path> getUpdatedFields(UpdateExpression update) {
+        Set<Path> fields = new HashSet<>();
+        addUpdatedFields(update, fields);
+        return fields;
+    }
+
+    private static void addUpdatedFields(UpdateExpression update, Set<Path> fields) {
+        if (update instanceof UpdateExpressionList) {
+            for (PartialUpdateExpression x : ((UpdateExpressionList) update).getList()) {
+                addUpdatedFields(x, fields);
+            }
+        } else if (update instanceof SetExpression) {
+            for (FieldAndRValue frv : ((SetExpression) update).getFields()) {
+                fields.add(frv.getField());
+            }
+        } else if (update instanceof UnsetExpression) {
+            fields.addAll(((UnsetExpression) update).getFields());
+        }
+    }
+
+    static Error analyzeException(Exception e, final String otherwise) {
         return analyzeException(e, otherwise, null, false);
     }
 
-    private Error analyzeException(Exception e, final String otherwise, final String msg, boolean specialHandling) {
+    static Error analyzeException(Exception e, final String otherwise, final String msg, boolean specialHandling) {
         if(e instanceof Error)
             return (Error)e;
 
@@ -0,0 +1,172 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.subjects.ReplaySubject;
+
+import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDInsertionResponse;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDSaveResponse;
+import com.redhat.lightblue.crud.CRUDUpdateResponse;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.query.UpdateExpression;
+
+/**
+ * Runs the operations of a MongoCRUDController on an executor supplied by
+ * the caller, and returns their responses as Observables. Each operation is
+ * started immediately, and the returned Observable emits the response and
+ * completes, replaying it to all subscribers the same way
+ * HystrixCommand.observe() does. Use observable.toBlocking().toFuture() to
+ * get a Future instead.
+ *
+ * This class only adapts the synchronous controller to Observables. The
+ * mongo commands of an operation are not composed through
+ * HystrixCommand.observe() or toObservable(), and the steps of an operation
+ * don't overlap, except for the deletes IterateDeleter pipelines when
+ * pipelining is enabled. The operations are not non-blocking: each one holds
+ * an executor thread while it waits for the mongo calls, so the executor
+ * should be sized for the expected number of concurrent operations. The
+ * executor is owned by the caller, and is not shut down by this class.
+ *
+ * The operations of one context must not run at the same time, as the
+ * operation context is not thread safe. Errors are reported in the operation
+ * context as with the synchronous controller. If the operation throws, the
+ * Observable fails with the exception or error thrown. If the executor
+ * rejects an operation, the Observable fails with
+ * RejectedExecutionException.
+ */
+public class ObservableMongoCRUDController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ObservableMongoCRUDController.class);
+
+    private final MongoCRUDController controller;
+    private final Executor executor;
+
+    /**
+     * Creates a controller running the operations of the given controller on
+     * the given executor
+     */
+    public ObservableMongoCRUDController(MongoCRUDController controller, Executor executor) {
+        this.controller = controller;
+        this.executor = executor;
+    }
+
+    public MongoCRUDController getController() {
+        return controller;
+    }
+
+    public Observable<CRUDInsertionResponse> insert(final CRUDOperationContext ctx,
+                                                    final Projection projection) {
+        return submit(new Callable<CRUDInsertionResponse>() {
+            @Override
+            public CRUDInsertionResponse call() {
+                return controller.insert(ctx, projection);
+            }
+        });
+    }
+
+    public Observable<CRUDSaveResponse> save(final CRUDOperationContext ctx,
+                                             final boolean upsert,
+                                             final Projection projection) {
+        return submit(new Callable<CRUDSaveResponse>() {
+            @Override
+            public CRUDSaveResponse call() {
+                return controller.save(ctx, upsert, projection);
+            }
+        });
+    }
+
+    public Observable<CRUDUpdateResponse> update(final CRUDOperationContext ctx,
+                                                 final QueryExpression query,
+                                                 final UpdateExpression update,
+                                                 final Projection projection) {
+        return submit(new Callable<CRUDUpdateResponse>() {
+            @Override
+            public CRUDUpdateResponse call() {
+                return controller.update(ctx, query, update, projection);
+            }
+        });
+    }
+
+    public Observable<CRUDDeleteResponse> delete(final CRUDOperationContext ctx,
+                                                 final QueryExpression query) {
+        return submit(new Callable<CRUDDeleteResponse>() {
+            @Override
+            public CRUDDeleteResponse call() {
+                return controller.delete(ctx, query);
+            }
+        });
+    }
+
+    public Observable<CRUDFindResponse> find(final CRUDOperationContext ctx,
+                                             final QueryExpression query,
+                                             final Projection projection,
+                                             final Sort sort,
+                                             final Long from,
+                                             final Long to) {
+        return submit(new Callable<CRUDFindResponse>() {
+            @Override
+            public CRUDFindResponse call() {
+                return controller.find(ctx, query, projection, sort, from, to);
+            }
+        });
+    }
+
+    /**
+     * Starts the operation on the executor, and returns an Observable
+     * replaying its result to all subscribers
+     */
+    private <T> Observable<T> submit(final Callable<T> operation) {
+        final ReplaySubject<T> subject = ReplaySubject.create();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    T result;
+                    try {
+                        result = operation.call();
+                    } catch (Throwable t) {
+                        // Errors have to terminate the subject too, or the subscribers wait forever
+                        LOGGER.debug("Operation failed: {}", t);
+                        subject.onError(t);
+                        return;
+                    }
+                    subject.onNext(result);
+                    subject.onCompleted();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Operation rejected: {}", e);
+            subject.onError(e);
+        }
+        return subject.asObservable();
+    }
+}
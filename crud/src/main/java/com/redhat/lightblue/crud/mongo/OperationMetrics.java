@@ -0,0 +1,172 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+/**
+ * Measures the phases of a single CRUD operation and reports them to a
+ * metrics registry. If there is no registry, the DISABLED instance is used,
+ * which does not read the clock, and all its methods return immediately.
+ *
+ * Phases measured per document are accumulated by the caller and recorded
+ * once per operation:
+ *
+ * <pre>
+ *   long t = metrics.start();
+ *   ...
+ *   total += metrics.elapsed(t);
+ *   ...
+ *   metrics.record(OperationMetrics.PHASE_TO_JSON, total);
+ * </pre>
+ */
+public final class OperationMetrics {
+
+    /**
+     * Total time of the operation
+     */
+    public static final String PHASE_TOTAL = "total";
+    /**
+     * Translation of queries, sorts, projections and update expressions
+     */
+    public static final String PHASE_TRANSLATE = "translate";
+    /**
+     * Execution of the find command, which is mostly the Hystrix thread
+     * handoff, as the cursor is lazy
+     */
+    public static final String PHASE_HYSTRIX = "hystrix";
+    /**
+     * Reading documents from the cursor, including the db round trips
+     */
+    public static final String PHASE_FETCH = "fetch";
+    /**
+     * Translation of documents to json
+     */
+    public static final String PHASE_TO_JSON = "toJson";
+    /**
+     * Translation of documents to bson
+     */
+    public static final String PHASE_TO_BSON = "toBson";
+    /**
+     * Per-document interceptors
+     */
+    public static final String PHASE_INTERCEPTORS = "interceptors";
+    /**
+     * Projection of the result documents
+     */
+    public static final String PHASE_PROJECT = "project";
+    /**
+     * Writes to the db, including the reads done by the writers
+     */
+    public static final String PHASE_WRITE = "write";
+    /**
+     * Queueing the hooks
+     */
+    public static final String PHASE_HOOKS = "hooks";
+
+    /**
+     * Number of documents read from the db
+     */
+    public static final String COUNT_READ = "documentsRead";
+    /**
+     * Number of documents written to the db
+     */
+    public static final String COUNT_WRITTEN = "documentsWritten";
+    /**
+     * Number of bson bytes of the documents translated to json. Only counted
+     * if the registry counts bytes.
+     *
+     * @see MetricsRegistry#isCountBytes()
+     */
+    public static final String COUNT_BYTES = "bytesTranslated";
+
+    /**
+     * Metrics that are not recorded
+     */
+    public static final OperationMetrics DISABLED = new OperationMetrics(null, null, null);
+
+    private final MetricsRegistry registry;
+    private final String entity;
+    private final String operation;
+    private final boolean countBytes;
+
+    private OperationMetrics(MetricsRegistry registry, String entity, String operation) {
+        this.registry = registry;
+        this.entity = entity;
+        this.operation = operation;
+        this.countBytes = registry != null && registry.isCountBytes();
+    }
+
+    /**
+     * Returns the metrics of an operation, or DISABLED if registry is null
+     */
+    public static OperationMetrics get(MetricsRegistry registry, String entity, String operation) {
+        return registry == null ? DISABLED : new OperationMetrics(registry, entity, operation);
+    }
+
+    public boolean isEnabled() {
+        return registry != null;
+    }
+
+    /**
+     * Returns whether the bson size of the found documents is counted
+     */
+    public boolean isCountBytes() {
+        return countBytes;
+    }
+
+    /**
+     * Returns the start time of a phase, or 0 if disabled
+     */
+    public long start() {
+        return registry == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Returns the nanoseconds elapsed since start, or 0 if disabled
+     */
+    public long elapsed(long start) {
+        return registry == null ? 0 : System.nanoTime() - start;
+    }
+
+    /**
+     * Records the time elapsed since start for the phase
+     */
+    public void end(String phase, long start) {
+        if (registry != null) {
+            registry.recordTime(entity, operation, phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the time spent in a phase
+     */
+    public void record(String phase, long nanos) {
+        if (registry != null) {
+            registry.recordTime(entity, operation, phase, nanos);
+        }
+    }
+
+    /**
+     * Adds to a counter
+     */
+    public void count(String counter, long n) {
+        if (registry != null) {
+            registry.count(entity, operation, counter, n);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Latency histograms and counters of one operation of one entity, exposed as
+ * a dynamic MBean. For each phase there are the attributes
+ * &lt;phase&gt;.count, &lt;phase&gt;.meanMillis, &lt;phase&gt;.p50Millis,
+ * &lt;phase&gt;.p99Millis and &lt;phase&gt;.maxMillis, and each counter is an
+ * attribute of its own. Attributes appear as phases and counters are
+ * recorded.
+ */
+public class OperationStats implements DynamicMBean {
+
+    private static final String COUNT = ".count";
+    private static final String MEAN = ".meanMillis";
+    private static final String P50 = ".p50Millis";
+    private static final String P99 = ".p99Millis";
+    private static final String MAX = ".maxMillis";
+    private static final String[] SUFFIXES = {COUNT, MEAN, P50, P99, MAX};
+
+    private final ConcurrentMap<String, Histogram> phases = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Records the time spent in a phase
+     */
+    public void recordTime(String phase, long nanos) {
+        Histogram h = phases.get(phase);
+        if (h == null) {
+            Histogram x = phases.putIfAbsent(phase, h = new Histogram());
+            if (x != null) {
+                h = x;
+            }
+        }
+        h.record(nanos);
+    }
+
+    /**
+     * Adds to a counter
+     */
+    public void count(String counter, long n) {
+        AtomicLong c = counters.get(counter);
+        if (c == null) {
+            AtomicLong x = counters.putIfAbsent(counter, c = new AtomicLong());
+            if (x != null) {
+                c = x;
+            }
+        }
+        c.addAndGet(n);
+    }
+
+    /**
+     * Returns the histogram of a phase, or null if the phase is not recorded
+     */
+    public Histogram getPhase(String phase) {
+        return phases.get(phase);
+    }
+
+    /**
+     * Returns the value of a counter
+     */
+    public long getCounter(String counter) {
+        AtomicLong c = counters.get(counter);
+        return c == null ? 0 : c.get();
+    }
+
+    /**
+     * Clears all histograms and counters
+     */
+    public void reset() {
+        phases.clear();
+        counters.clear();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        AtomicLong c = counters.get(attribute);
+        if (c != null) {
+            return c.get();
+        }
+        int dot = attribute.lastIndexOf('.');
+        if (dot > 0) {
+            Histogram h = phases.get(attribute.substring(0, dot));
+            if (h != null) {
+                String suffix = attribute.substring(dot);
+                switch (suffix) {
+                    case COUNT:
+                        return h.getCount();
+                    case MEAN:
+                        return h.getMeanMillis();
+                    case P50:
+                        return h.getPercentileMillis(50);
+                    case P99:
+                        return h.getPercentileMillis(99);
+                    case MAX:
+                        return h.getMaxMillis();
+                    default:
+                        break;
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Skip unknown attributes
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if ("reset".equals(actionName)) {
+            reset();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attrs = new ArrayList<>();
+        for (Map.Entry<String, Histogram> entry : phases.entrySet()) {
+            for (String suffix : SUFFIXES) {
+                attrs.add(new MBeanAttributeInfo(entry.getKey() + suffix,
+                        suffix.equals(COUNT) ? "long" : "double",
+                        entry.getKey() + suffix, true, false, false));
+            }
+        }
+        for (String counter : counters.keySet()) {
+            attrs.add(new MBeanAttributeInfo(counter, "long", counter, true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(),
+                "Latencies and counters of a CRUD operation",
+                attrs.toArray(new MBeanAttributeInfo[attrs.size()]),
+                null,
+                new MBeanOperationInfo[]{new MBeanOperationInfo("reset", "Clears the statistics",
+                    new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION)},
+                null);
+    }
+
+    /**
+     * A latency histogram with logarithmic buckets. Each power of two is
+     * divided into 8 buckets, so percentiles are accurate to 12.5%.
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            buckets.incrementAndGet(index(nanos));
+            count.incrementAndGet();
+            total.addAndGet(nanos);
+            long m;
+            while ((m = max.get()) < nanos && !max.compareAndSet(m, nanos)) {
+                // retry
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getMeanMillis() {
+            long n = count.get();
+            return n == 0 ? 0 : total.get() / (double) n / 1000000.0;
+        }
+
+        public double getMaxMillis() {
+            return max.get() / 1000000.0;
+        }
+
+        /**
+         * Returns the upper bound of the bucket containing the given
+         * percentile, in milliseconds
+         */
+        public double getPercentileMillis(double percentile) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * n);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max.get()) / 1000000.0;
+                }
+            }
+            return getMaxMillis();
+        }
+
+        static int index(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) nanos;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+            int sub = index % SUB_BUCKETS;
+            return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.mongodb.DBObject;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * Translates and projects found documents using a fork-join pool. The
+ * documents are split into ranges, and each range is processed by a separate
+ * task. The results are written to the position of the input document, so
+ * the order of the documents is preserved.
+ *
+ * Projectors keep state during projection, so every task builds its own
+ * projector from the projection.
+ */
+public class ParallelDocProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelDocProcessor.class);
+
+    /**
+     * Default minimum number of documents processed in parallel. Smaller sets
+     * of documents are processed sequentially.
+     */
+    public static final int DEFAULT_THRESHOLD = 512;
+
+    /**
+     * Minimum number of documents processed by a single task
+     */
+    private static final int MIN_TASK_SIZE = 32;
+
+    private static volatile ForkJoinPool sharedPool;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    /**
+     * Creates a processor using the shared pool
+     *
+     * @param threshold Minimum number of documents processed in parallel
+     */
+    public ParallelDocProcessor(int threshold) {
+        this(getSharedPool(), threshold);
+    }
+
+    /**
+     * Creates a processor
+     *
+     * @param pool The pool running the tasks
+     * @param threshold Minimum number of documents processed in parallel
+     */
+    public ParallelDocProcessor(ForkJoinPool pool, int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold:" + threshold);
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the pool shared by all processors. The pool has one thread for
+     * each available processor.
+     */
+    public static ForkJoinPool getSharedPool() {
+        if (sharedPool == null) {
+            synchronized (ParallelDocProcessor.class) {
+                if (sharedPool == null) {
+                    sharedPool = new ForkJoinPool();
+                }
+            }
+        }
+        return sharedPool;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns true if a list of documents of the given size is processed in
+     * parallel
+     */
+    public boolean isParallel(int size) {
+        return size >= threshold && pool.getParallelism() > 1;
+    }
+
+    /**
+     * Translates the documents to json. The returned array has the
+     * translation of the i'th document at index i.
+     */
+    public JsonDoc[] toJson(Translator translator, List<DBObject> docs) {
+        JsonDoc[] result = new JsonDoc[docs.size()];
+        if (isParallel(docs.size())) {
+            LOGGER.debug("Translating {} documents in parallel", docs.size());
+            pool.invoke(new TranslateTask(translator, docs, result, 0, docs.size(), getTaskSize(docs.size())));
+        } else {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = translator.toJson(docs.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the output document of each document to its projection
+     */
+    public void project(List<DocCtx> docs, Projection projection, EntityMetadata md, JsonNodeFactory factory) {
+        if (isParallel(docs.size())) {
+            LOGGER.debug("Projecting {} documents in parallel", docs.size());
+            pool.invoke(new ProjectTask(docs, projection, md, factory, 0, docs.size(), getTaskSize(docs.size())));
+        } else {
+            Projector projector = Projector.getInstance(projection, md);
+            for (DocCtx doc : docs) {
+                doc.setOutputDocument(projector.project(doc, factory));
+            }
+        }
+    }
+
+    private int getTaskSize(int size) {
+        return Math.max(MIN_TASK_SIZE, size / (pool.getParallelism() * 4));
+    }
+
+    private static final class TranslateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1l;
+
+        private final Translator translator;
+        private final List<DBObject> docs;
+        private final JsonDoc[] result;
+        private final int from;
+        private final int to;
+        private final int taskSize;
+
+        TranslateTask(Translator translator, List<DBObject> docs, JsonDoc[] result, int from, int to, int taskSize) {
+            this.translator = translator;
+            this.docs = docs;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+            this.taskSize = taskSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= taskSize) {
+                for (int i = from; i < to; i++) {
+                    result[i] = translator.toJson(docs.get(i));
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TranslateTask(translator, docs, result, from, mid, taskSize),
+                        new TranslateTask(translator, docs, result, mid, to, taskSize));
+            }
+        }
+    }
+
+    private static final class ProjectTask extends RecursiveAction {
+        private static final long serialVersionUID = 1l;
+
+        private final List<DocCtx> docs;
+        private final Projection projection;
+        private final EntityMetadata md;
+        private final JsonNodeFactory factory;
+        private final int from;
+        private final int to;
+        private final int taskSize;
+
+        ProjectTask(List<DocCtx> docs, Projection projection, EntityMetadata md, JsonNodeFactory factory,
+                    int from, int to, int taskSize) {
+            this.docs = docs;
+            this.projection = projection;
+            this.md = md;
+            this.factory = factory;
+            this.from = from;
+            this.to = to;
+            this.taskSize = taskSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= taskSize) {
+                Projector projector = Projector.getInstance(projection, md);
+                for (int i = from; i < to; i++) {
+                    DocCtx doc = docs.get(i);
+                    doc.setOutputDocument(projector.project(doc, factory));
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ProjectTask(docs, projection, md, factory, from, mid, taskSize),
+                        new ProjectTask(docs, projection, md, factory, mid, to, taskSize));
+            }
+        }
+    }
+}
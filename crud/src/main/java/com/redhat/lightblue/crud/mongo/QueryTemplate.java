@@ -0,0 +1,295 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.query.ArrayContainsExpression;
+import com.redhat.lightblue.query.ArrayMatchExpression;
+import com.redhat.lightblue.query.FieldComparisonExpression;
+import com.redhat.lightblue.query.NaryFieldRelationalExpression;
+import com.redhat.lightblue.query.NaryLogicalExpression;
+import com.redhat.lightblue.query.NaryValueRelationalExpression;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.RegexMatchExpression;
+import com.redhat.lightblue.query.UnaryLogicalExpression;
+import com.redhat.lightblue.query.Value;
+import com.redhat.lightblue.query.ValueComparisonExpression;
+
+/**
+ * A translated query, or projection, in which the literal values of the
+ * query are replaced with parameters. Queries that differ only in their
+ * literal values have the same shape, and share the same template, so the
+ * metadata is resolved and the query is translated only once for each shape.
+ * For every request, binding the literal values of the request to the
+ * template gives the translated query.
+ *
+ * Templates are cached by entity name, version and shape. Similar to
+ * {@link TranslationPlan}, a cached template is only reused with the
+ * metadata instance it was translated with. At most {@link #MAX_TEMPLATES}
+ * templates are kept, and the least recently used template is removed when
+ * the cache is full.
+ */
+final class QueryTemplate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryTemplate.class);
+
+    /**
+     * Maximum number of cached templates
+     */
+    static final int MAX_TEMPLATES = 10000;
+
+    private static final Map<String, QueryTemplate> TEMPLATES = new LinkedHashMap<String, QueryTemplate>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, QueryTemplate> eldest) {
+            return size() > MAX_TEMPLATES;
+        }
+    };
+
+    private final EntityMetadata md;
+    private final Object template;
+
+    /**
+     * A literal value in a template
+     */
+    static final class Param {
+        private final int index;
+        private final Type type;
+        private final boolean id;
+        private final boolean list;
+
+        /**
+         * @param index Index of the literal value in the list of literal
+         * values of the query
+         * @param type Type of the value
+         * @param id If true, the value is converted to an id
+         * @param list If true, the literal value is a list of values
+         */
+        Param(int index, Type type, boolean id, boolean list) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.list = list;
+        }
+
+        @SuppressWarnings("unchecked")
+        Object bind(List<Object> literals) {
+            Object value = literals.get(index);
+            if (list) {
+                return Translator.translateValueList(type, (List<Value>) value);
+            } else {
+                return Translator.translateValue(type, value, id);
+            }
+        }
+    }
+
+    private QueryTemplate(EntityMetadata md, Object template) {
+        this.md = md;
+        this.template = template;
+    }
+
+    /**
+     * Returns the cached template for the given metadata instance and shape,
+     * or null if there isn't one
+     */
+    static QueryTemplate get(EntityMetadata md, String shape) {
+        QueryTemplate t;
+        synchronized (TEMPLATES) {
+            t = TEMPLATES.get(getKey(md, shape));
+        }
+        return t == null || t.md != md ? null : t;
+    }
+
+    /**
+     * Caches a template
+     */
+    static QueryTemplate put(EntityMetadata md, String shape, DBObject template) {
+        String key = getKey(md, shape);
+        LOGGER.debug("Caching query template for {}", key);
+        QueryTemplate t = new QueryTemplate(md, template);
+        synchronized (TEMPLATES) {
+            TEMPLATES.put(key, t);
+        }
+        return t;
+    }
+
+    /**
+     * Removes all cached templates
+     */
+    static void invalidateAll() {
+        synchronized (TEMPLATES) {
+            TEMPLATES.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached templates
+     */
+    static int size() {
+        synchronized (TEMPLATES) {
+            return TEMPLATES.size();
+        }
+    }
+
+    /**
+     * Returns a new translated query with the given literal values
+     */
+    DBObject bind(List<Object> literals) {
+        return (DBObject) bind(template, literals);
+    }
+
+    private static Object bind(Object value, List<Object> literals) {
+        if (value instanceof Param) {
+            return ((Param) value).bind(literals);
+        } else if (value instanceof BasicDBObject) {
+            BasicDBObject src = (BasicDBObject) value;
+            BasicDBObject ret = new BasicDBObject();
+            for (Map.Entry<String, Object> entry : src.entrySet()) {
+                ret.put(entry.getKey(), bind(entry.getValue(), literals));
+            }
+            return ret;
+        } else if (value instanceof List) {
+            List<?> src = (List<?>) value;
+            List<Object> ret = new ArrayList<>(src.size());
+            for (Object x : src) {
+                ret.add(bind(x, literals));
+            }
+            return ret;
+        } else {
+            return value;
+        }
+    }
+
+    /**
+     * Returns the shape of the query, and adds the literal values of the
+     * query to the given list, in the order parameters are created during
+     * translation.
+     */
+    static String getShape(QueryExpression query, List<Object> literals) {
+        StringBuilder bld = new StringBuilder(128);
+        appendShape(bld, query, literals);
+        return bld.toString();
+    }
+
+    /**
+     * The query expressions are visited in the same order as the translator
+     * visits them.
+     */
+    private static void appendShape(StringBuilder bld, QueryExpression query, List<Object> literals) {
+        if (query instanceof ArrayContainsExpression) {
+            ArrayContainsExpression x = (ArrayContainsExpression) query;
+            bld.append("ac(");
+            append(bld, x.getArray().toString());
+            bld.append(x.getOp());
+            switch (x.getOp()) {
+                case _all:
+                    bld.append(",?L");
+                    literals.add(x.getValues());
+                    break;
+                default:
+                    for (Value v : x.getValues()) {
+                        bld.append(",?");
+                        literals.add(v == null ? null : v.getValue());
+                    }
+                    break;
+            }
+            bld.append(')');
+        } else if (query instanceof ArrayMatchExpression) {
+            ArrayMatchExpression x = (ArrayMatchExpression) query;
+            bld.append("am(");
+            append(bld, x.getArray().toString());
+            appendShape(bld, x.getElemMatch(), literals);
+            bld.append(')');
+        } else if (query instanceof FieldComparisonExpression) {
+            FieldComparisonExpression x = (FieldComparisonExpression) query;
+            bld.append("fc(");
+            append(bld, x.getField().toString());
+            bld.append(x.getOp());
+            append(bld, x.getRfield().toString());
+            bld.append(')');
+        } else if (query instanceof NaryLogicalExpression) {
+            NaryLogicalExpression x = (NaryLogicalExpression) query;
+            bld.append("nl(").append(x.getOp());
+            for (QueryExpression q : x.getQueries()) {
+                bld.append(',');
+                appendShape(bld, q, literals);
+            }
+            bld.append(')');
+        } else if (query instanceof NaryValueRelationalExpression) {
+            NaryValueRelationalExpression x = (NaryValueRelationalExpression) query;
+            bld.append("nv(");
+            append(bld, x.getField().toString());
+            bld.append(x.getOp()).append(",?L)");
+            literals.add(x.getValues());
+        } else if (query instanceof NaryFieldRelationalExpression) {
+            NaryFieldRelationalExpression x = (NaryFieldRelationalExpression) query;
+            bld.append("nf(");
+            append(bld, x.getField().toString());
+            bld.append(x.getOp());
+            append(bld, x.getRfield().toString());
+            bld.append(')');
+        } else if (query instanceof RegexMatchExpression) {
+            RegexMatchExpression x = (RegexMatchExpression) query;
+            bld.append("rx(");
+            append(bld, x.getField().toString());
+            bld.append('?');
+            literals.add(x.getRegex());
+            bld.append(x.isCaseInsensitive() ? 'i' : '-').
+                    append(x.isMultiline() ? 'm' : '-').
+                    append(x.isExtended() ? 'x' : '-').
+                    append(x.isDotAll() ? 's' : '-').
+                    append(')');
+        } else if (query instanceof UnaryLogicalExpression) {
+            UnaryLogicalExpression x = (UnaryLogicalExpression) query;
+            bld.append("ul(").append(x.getOp()).append(',');
+            appendShape(bld, x.getQuery(), literals);
+            bld.append(')');
+        } else {
+            ValueComparisonExpression x = (ValueComparisonExpression) query;
+            bld.append("vc(");
+            append(bld, x.getField().toString());
+            bld.append(x.getOp()).append(",?)");
+            literals.add(x.getRvalue().getValue());
+        }
+    }
+
+    /**
+     * Appends a length prefixed string, so field names cannot be confused
+     * with the structure of the shape
+     */
+    private static void append(StringBuilder bld, String s) {
+        bld.append(s.length()).append(':').append(s).append(',');
+    }
+
+    private static String getKey(EntityMetadata md, String shape) {
+        return md.getName() + ":" + (md.getVersion() == null ? null : md.getVersion().getValue()) + ":" + shape;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+
+import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.mongo.hystrix.FindCommand;
+import com.redhat.lightblue.mongo.hystrix.RemoveCommand;
+
+/**
+ * Deletes the documents in the db without retrieving them. This deleter does
+ * not add the deleted documents to the operation context, so it can only be
+ * used if there are no per-document delete interceptors or delete hooks for
+ * the entity.
+ *
+ * If the batch size is 0 or less, the result set is deleted with a single
+ * remove call. Otherwise, the _ids of the next batch of documents in the
+ * result set are retrieved in _id order, and that batch is removed, until the
+ * result set is exhausted.
+ */
+public class ServerSideDeleter implements DocDeleter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerSideDeleter.class);
+
+    private static final DBObject ID_ONLY = new BasicDBObject(MongoCRUDController.ID_STR, 1);
+
+    private final int batchSize;
+
+    public ServerSideDeleter(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void delete(CRUDOperationContext ctx,
+                       DBCollection collection,
+                       DBObject mongoQuery,
+                       CRUDDeleteResponse response) {
+        int numDeleted;
+        if (batchSize <= 0) {
+            LOGGER.debug("Removing {}", mongoQuery);
+            WriteResult result = new RemoveCommand(collection, mongoQuery, WriteConcern.SAFE).execute();
+            numDeleted = result.getN();
+        } else {
+            numDeleted = deleteInBatches(collection, mongoQuery);
+        }
+        LOGGER.debug("Removed {} documents", numDeleted);
+        response.setNumDeleted(numDeleted);
+    }
+
+    private int deleteInBatches(DBCollection collection, DBObject mongoQuery) {
+        int numDeleted = 0;
+        List<Object> ids = new ArrayList<>(batchSize);
+        do {
+            ids.clear();
+            DBCursor cursor = new FindCommand(collection, mongoQuery, ID_ONLY, ReadPreference.primary()).execute();
+            try {
+                cursor.sort(ID_ONLY).limit(batchSize);
+                while (cursor.hasNext()) {
+                    ids.add(cursor.next().get(MongoCRUDController.ID_STR));
+                }
+            } finally {
+                cursor.close();
+            }
+            if (!ids.isEmpty()) {
+                LOGGER.debug("Removing a batch of {} documents", ids.size());
+                // Keep the query, so documents modified after they are read
+                // are not removed if they no longer match
+                List<DBObject> conjuncts = new ArrayList<>(2);
+                conjuncts.add(new BasicDBObject(MongoCRUDController.ID_STR, new BasicDBObject("$in", ids)));
+                if (mongoQuery != null) {
+                    conjuncts.add(mongoQuery);
+                }
+                WriteResult result = new RemoveCommand(collection,
+                        new BasicDBObject("$and", conjuncts),
+                        WriteConcern.SAFE).execute();
+                if (result.getN() == 0) {
+                    // Someone else is deleting the same documents, or they
+                    // cannot be removed. Don't loop forever.
+                    break;
+                }
+                numDeleted += result.getN();
+            }
+        } while (ids.size() == batchSize);
+        return numDeleted;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.CRUDUpdateResponse;
+import com.redhat.lightblue.crud.CrudConstants;
+import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
+import com.redhat.lightblue.interceptor.InterceptPoint;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.mongo.hystrix.UpdateCommand;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * Updates all the documents in the result set with a single multi-document
+ * update call using a translated update expression. The documents are not
+ * retrieved, and not added to the operation context, so this updater can only
+ * be used if the updated documents are not projected, and there are no
+ * per-document update interceptors or update hooks for the entity.
+ */
+public class ServerSideUpdater implements DocUpdater {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerSideUpdater.class);
+
+    private final FieldAccessRoleEvaluator roleEval;
+    private final DBObject mongoUpdateExpr;
+    private final Set<Path> updatedFields;
+
+    public ServerSideUpdater(FieldAccessRoleEvaluator roleEval,
+                             DBObject mongoUpdateExpr,
+                             Set<Path> updatedFields) {
+        this.roleEval = roleEval;
+        this.mongoUpdateExpr = mongoUpdateExpr;
+        this.updatedFields = updatedFields;
+    }
+
+    @Override
+    public void update(CRUDOperationContext ctx,
+                       DBCollection collection,
+                       EntityMetadata md,
+                       CRUDUpdateResponse response,
+                       DBObject query) {
+        LOGGER.debug("serverSideUpdate: start");
+        Set<Path> inaccessibleFields = roleEval.getInaccessibleFields(FieldAccessRoleEvaluator.Operation.update);
+        for (Path x : inaccessibleFields) {
+            if (updatedFields.contains(x)) {
+                ctx.addError(Error.get("update", CrudConstants.ERR_NO_FIELD_UPDATE_ACCESS, x.toString()));
+            }
+        }
+        int numUpdated = 0;
+        if (!ctx.hasErrors()) {
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.PRE_CRUD_UPDATE_RESULTSET, ctx);
+            LOGGER.debug("Updating {} with {}", query, mongoUpdateExpr);
+            WriteResult result = new UpdateCommand(collection, query, mongoUpdateExpr, false, true, WriteConcern.SAFE).execute();
+            numUpdated = result.getN();
+            LOGGER.debug("Updated {} documents", numUpdated);
+            ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_UPDATE_RESULTSET, ctx);
+        }
+        response.setNumUpdated(numUpdated);
+        response.setNumFailed(0);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * A find, update or delete operation that took longer than the slow
+ * operation threshold of its datasource. The translated query, sort and
+ * projection are kept as json strings, so the record can be written to a
+ * collection as is. The explain output is set asynchronously, after the
+ * operation is recorded.
+ */
+public final class SlowOperation {
+
+    private final Date timestamp;
+    private final String entity;
+    private final String version;
+    private final String operation;
+    private final String collection;
+    private final long durationMS;
+    private final String query;
+    private final String sort;
+    private final String projection;
+    private final Map<String, Double> phases;
+    private final Map<String, Long> counters;
+    private volatile String explain;
+
+    public SlowOperation(Date timestamp,
+                         String entity,
+                         String version,
+                         String operation,
+                         String collection,
+                         long durationMS,
+                         String query,
+                         String sort,
+                         String projection,
+                         Map<String, Double> phases,
+                         Map<String, Long> counters) {
+        this.timestamp = timestamp;
+        this.entity = entity;
+        this.version = version;
+        this.operation = operation;
+        this.collection = collection;
+        this.durationMS = durationMS;
+        this.query = query;
+        this.sort = sort;
+        this.projection = projection;
+        this.phases = Collections.unmodifiableMap(new LinkedHashMap<>(phases));
+        this.counters = Collections.unmodifiableMap(new LinkedHashMap<>(counters));
+    }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Full name of the collection the operation ran on
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    public long getDurationMS() {
+        return durationMS;
+    }
+
+    /**
+     * The translated mongo query
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * The translated mongo sort, or null
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * The translated mongo projection, or null
+     */
+    public String getProjection() {
+        return projection;
+    }
+
+    /**
+     * Time spent in each phase of the operation, in milliseconds
+     */
+    public Map<String, Double> getPhases() {
+        return phases;
+    }
+
+    /**
+     * The number of documents read and written by the operation
+     */
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /**
+     * The explain output of the query, or null if the query is not explained
+     * (yet)
+     */
+    public String getExplain() {
+        return explain;
+    }
+
+    public void setExplain(String explain) {
+        this.explain = explain;
+    }
+
+    /**
+     * Returns the record as a document
+     */
+    public DBObject toDBObject() {
+        BasicDBObject obj = new BasicDBObject();
+        obj.append("timestamp", timestamp).
+                append("entity", entity).
+                append("version", version).
+                append("operation", operation).
+                append("collection", collection).
+                append("durationMS", durationMS).
+                append("query", query);
+        if (sort != null) {
+            obj.append("sort", sort);
+        }
+        if (projection != null) {
+            obj.append("projection", projection);
+        }
+        obj.append("phases", new BasicDBObject(phases)).
+                append("counters", new BasicDBObject(counters));
+        if (explain != null) {
+            obj.append("explain", explain);
+        }
+        return obj;
+    }
+
+    @Override
+    public String toString() {
+        return toDBObject().toString();
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.mongodb.util.JSON;
+import com.redhat.lightblue.common.mongo.DatasourceSettings;
+import com.redhat.lightblue.metadata.EntityMetadata;
+
+/**
+ * Records find, update and delete operations that take longer than the slow
+ * operation threshold of their datasource. The most recent slow operations
+ * are kept in a ring buffer, which can be read over JMX if the recorder is
+ * registered as an MBean.
+ *
+ * If the datasource asks for it, the query of a slow operation is explained
+ * to capture its index usage, and the record is written to a capped
+ * collection in the database of the datasource. Both are done by a single
+ * background thread, so they don't delay the operation. If the background
+ * thread falls behind, new explains and writes are dropped.
+ *
+ * An operation is captured as follows:
+ * <pre>
+ *   Capture capture = recorder.start(registry, md, operation, settings, start);
+ *   OperationMetrics metrics = capture.getMetrics();
+ *   ...
+ *   capture.setQuery(coll, query, sort, projection, readPreference);
+ *   ...
+ *   metrics.end(OperationMetrics.PHASE_TOTAL, start);
+ *   recorder.complete(capture);
+ * </pre>
+ */
+public class SlowOperationRecorder implements SlowOperationRecorderMBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowOperationRecorder.class);
+
+    /**
+     * Default number of slow operations kept in memory
+     */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    /**
+     * Name the shared recorder is registered with
+     */
+    public static final String OBJECT_NAME = JmxMetricsRegistry.DOMAIN + ":type=SlowOperations";
+
+    private static final int MAX_PENDING_TASKS = 100;
+
+    private static SlowOperationRecorder shared;
+
+    private final SlowOperation[] buffer;
+    private int next;
+    private long recordedCount;
+    private final ExecutorService executor;
+    private final Set<String> cappedCollections = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Creates a recorder keeping the given number of slow operations in
+     * memory
+     */
+    public SlowOperationRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+        buffer = new SlowOperation[capacity];
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING_TASKS),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "lightblue-mongo-slowops");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    public SlowOperationRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Returns the recorder shared by all controllers, registered with the
+     * platform MBean server
+     */
+    public static synchronized SlowOperationRecorder getSharedInstance() {
+        if (shared == null) {
+            shared = new SlowOperationRecorder();
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(shared, name);
+            } catch (JMException e) {
+                LOGGER.warn("Cannot register slow operation recorder: {}", e);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Starts capturing an operation. Returns null if the datasource does not
+     * record slow operations.
+     *
+     * @param registry The registry the metrics of the operation are forwarded
+     * to, can be null
+     * @param md The entity metadata
+     * @param operation The operation
+     * @param settings The datasource settings
+     * @param start Start time of the operation as returned by
+     * System.nanoTime(), or 0 to start now
+     */
+    public Capture start(MetricsRegistry registry,
+                         EntityMetadata md,
+                         String operation,
+                         DatasourceSettings settings,
+                         long start) {
+        if (settings == null || settings.getSlowOperationThresholdMS() <= 0) {
+            return null;
+        }
+        return new Capture(registry, md, operation, settings, start == 0 ? System.nanoTime() : start);
+    }
+
+    /**
+     * Completes capturing an operation, and records it if it is slower than
+     * the threshold. Operations that failed before their query was translated
+     * are not recorded.
+     */
+    public void complete(Capture capture) {
+        long durationMS = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - capture.start);
+        if (capture.query == null || durationMS < capture.settings.getSlowOperationThresholdMS()) {
+            return;
+        }
+        Map<String, Double> phases = new LinkedHashMap<>();
+        Map<String, Long> counters;
+        synchronized (capture) {
+            for (Map.Entry<String, Long> entry : capture.phases.entrySet()) {
+                phases.put(entry.getKey(), entry.getValue() / 1000000.0);
+            }
+            counters = new LinkedHashMap<>(capture.counters);
+        }
+        final SlowOperation op = new SlowOperation(new Date(),
+                capture.md.getName(),
+                capture.md.getVersion() == null ? null : capture.md.getVersion().getValue(),
+                capture.operation,
+                capture.coll == null ? null : capture.coll.getFullName(),
+                durationMS,
+                JSON.serialize(capture.query),
+                capture.sort == null ? null : JSON.serialize(capture.sort),
+                capture.projection == null ? null : JSON.serialize(capture.projection),
+                phases,
+                counters);
+        LOGGER.debug("Slow operation: {}", op);
+        add(op);
+        final boolean explain = capture.settings.isSlowOperationExplain() && capture.coll != null;
+        final DBCollection logCollection = capture.coll == null || capture.settings.getSlowOperationCollection() == null
+                ? null : capture.coll.getDB().getCollection(capture.settings.getSlowOperationCollection());
+        if (explain || logCollection != null) {
+            final Capture c = capture;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (explain) {
+                        explain(op, c);
+                    }
+                    if (logCollection != null) {
+                        write(op, logCollection, c.settings.getSlowOperationCollectionSize());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the slow operations in memory, most recent first
+     */
+    public synchronized List<SlowOperation> getOperations() {
+        List<SlowOperation> list = new ArrayList<>(buffer.length);
+        for (int i = 1; i <= buffer.length; i++) {
+            SlowOperation op = buffer[(next - i + buffer.length) % buffer.length];
+            if (op == null) {
+                break;
+            }
+            list.add(op);
+        }
+        return list;
+    }
+
+    @Override
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    @Override
+    public synchronized long getRecordedCount() {
+        return recordedCount;
+    }
+
+    @Override
+    public String[] getSlowOperations() {
+        List<SlowOperation> list = getOperations();
+        String[] ret = new String[list.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = list.get(i).toString();
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = null;
+        }
+        next = 0;
+        recordedCount = 0;
+    }
+
+    /**
+     * Stops the background thread
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private synchronized void add(SlowOperation op) {
+        buffer[next] = op;
+        next = (next + 1) % buffer.length;
+        recordedCount++;
+    }
+
+    /**
+     * Explains the query of the operation. Update and delete queries are
+     * explained as finds, which select the same index. The explain runs with
+     * the read preference of the operation, so it is planned on the same
+     * member the operation ran on.
+     */
+    private void explain(SlowOperation op, Capture c) {
+        try {
+            DBCursor cursor = c.coll.find(c.query, c.projection);
+            if (c.sort != null) {
+                cursor = cursor.sort(c.sort);
+            }
+            if (c.readPreference != null) {
+                cursor.setReadPreference(c.readPreference);
+            }
+            op.setExplain(JSON.serialize(cursor.explain()));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cannot explain slow operation {}: {}", op, e);
+        }
+    }
+
+    private void write(SlowOperation op, DBCollection logCollection, long size) {
+        try {
+            String name = logCollection.getFullName();
+            if (!cappedCollections.contains(name)) {
+                DB db = logCollection.getDB();
+                if (!db.collectionExists(logCollection.getName())) {
+                    LOGGER.debug("Creating capped collection {} size={}", name, size);
+                    db.createCollection(logCollection.getName(),
+                            new BasicDBObject("capped", true).append("size", size));
+                }
+                cappedCollections.add(name);
+            }
+            logCollection.insert(op.toDBObject());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cannot write slow operation {}: {}", op, e);
+        }
+    }
+
+    /**
+     * The measurements of an operation being captured. The phase times and
+     * the numbers of documents read and written reported by the operation are
+     * kept. Other counters, such as translated bytes, are not recorded for
+     * slow operations. All measurements are forwarded to the metrics registry
+     * of the controller if there is one.
+     */
+    public static final class Capture implements MetricsRegistry {
+        private final MetricsRegistry registry;
+        private final EntityMetadata md;
+        private final String operation;
+        private final DatasourceSettings settings;
+        private final long start;
+        private final OperationMetrics metrics;
+        private final Map<String, Long> phases = new LinkedHashMap<>();
+        private final Map<String, Long> counters = new LinkedHashMap<>();
+        private DBCollection coll;
+        private DBObject query;
+        private DBObject sort;
+        private DBObject projection;
+        private ReadPreference readPreference;
+
+        private Capture(MetricsRegistry registry,
+                        EntityMetadata md,
+                        String operation,
+                        DatasourceSettings settings,
+                        long start) {
+            this.registry = registry;
+            this.md = md;
+            this.operation = operation;
+            this.settings = settings;
+            this.start = start;
+            this.metrics = OperationMetrics.get(this, md.getName(), operation);
+        }
+
+        /**
+         * The metrics the operation should report to
+         */
+        public OperationMetrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * Start time of the operation as returned by System.nanoTime()
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Sets the collection, the translated query, and the read preference
+         * of the operation. If the read preference is null, the default read
+         * preference of the collection is used.
+         */
+        public void setQuery(DBCollection coll,
+                             DBObject query,
+                             DBObject sort,
+                             DBObject projection,
+                             ReadPreference readPreference) {
+            this.coll = coll;
+            this.query = query;
+            this.sort = sort;
+            this.projection = projection;
+            this.readPreference = readPreference;
+        }
+
+        /**
+         * Bytes are counted only for the registry of the controller, as
+         * slow operations don't record them
+         */
+        @Override
+        public boolean isCountBytes() {
+            return registry != null && registry.isCountBytes();
+        }
+
+        @Override
+        public synchronized void recordTime(String entity, String operation, String phase, long nanos) {
+            Long l = phases.get(phase);
+            phases.put(phase, l == null ? nanos : l + nanos);
+            if (registry != null) {
+                registry.recordTime(entity, operation, phase, nanos);
+            }
+        }
+
+        @Override
+        public void count(String entity, String operation, String counter, long n) {
+            if (OperationMetrics.COUNT_READ.equals(counter) || OperationMetrics.COUNT_WRITTEN.equals(counter)) {
+                synchronized (this) {
+                    Long l = counters.get(counter);
+                    counters.put(counter, l == null ? n : l + n);
+                }
+            }
+            if (registry != null) {
+                registry.count(entity, operation, counter, n);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+/**
+ * Management interface of the slow operation recorder
+ */
+public interface SlowOperationRecorderMBean {
+
+    /**
+     * Number of slow operations kept in memory
+     */
+    int getCapacity();
+
+    /**
+     * Number of slow operations recorded since the recorder is created or
+     * cleared
+     */
+    long getRecordedCount();
+
+    /**
+     * The slow operations in memory as json documents, most recent first
+     */
+    String[] getSlowOperations();
+
+    /**
+     * Removes the slow operations in memory
+     */
+    void clear();
+}
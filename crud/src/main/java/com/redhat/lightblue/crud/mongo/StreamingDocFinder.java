@@ -0,0 +1,389 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.BSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.interceptor.InterceptPoint;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.mongo.hystrix.CursorOptions;
+import com.redhat.lightblue.mongo.hystrix.FindCommand;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.util.JsonDoc;
+
+/**
+ * Doc search operation that streams the result set from the cursor. Documents
+ * are retrieved from the db in batches, and each document is translated,
+ * passed to the interceptors, and projected as soon as it is read, so the raw
+ * DBObjects of the whole result set are never held in memory at the same time.
+ */
+public class StreamingDocFinder implements DocFinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingDocFinder.class);
+
+    /**
+     * Default number of documents retrieved from the db in one batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private static final int PHASE_FETCH = 0;
+    private static final int PHASE_TO_JSON = 1;
+    private static final int PHASE_INTERCEPTORS = 2;
+    private static final int PHASE_PROJECT = 3;
+
+    private final Translator translator;
+    private final Projector projector;
+    private final int batchSize;
+    private final CountMode countMode;
+    private ReadPreference readPreference;
+    private CursorOptions cursorOptions;
+    private String continuation;
+    private String nextContinuation;
+    private ParallelDocProcessor parallelProcessor;
+    private Projection parallelProjection;
+    private EntityMetadata parallelMd;
+    private OperationMetrics metrics = OperationMetrics.DISABLED;
+    private long fetchNanos;
+    private long toJsonNanos;
+    private long interceptorNanos;
+    private long projectNanos;
+    private long numBytes;
+
+    /**
+     * Creates a doc finder using the default batch size
+     *
+     * @param translator The translator
+     * @param projector Optional projector. If given, the output document of
+     * each found document is set to the projection of that document.
+     */
+    public StreamingDocFinder(Translator translator, Projector projector) {
+        this(translator, projector, DEFAULT_BATCH_SIZE, CountMode.exact);
+    }
+
+    /**
+     * Creates a doc finder
+     *
+     * @param translator The translator
+     * @param projector Optional projector. If given, the output document of
+     * each found document is set to the projection of that document.
+     * @param batchSize Number of documents to retrieve from the db in one
+     * batch
+     * @param countMode How the total number of matching documents is computed
+     */
+    public StreamingDocFinder(Translator translator, Projector projector, int batchSize, CountMode countMode) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize:" + batchSize);
+        }
+        this.translator = translator;
+        this.projector = projector;
+        this.batchSize = batchSize;
+        this.countMode = countMode == null ? CountMode.exact : countMode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    /**
+     * The read preference of the find operations. If null, the read preference
+     * of the collection is used.
+     */
+    public ReadPreference getReadPreference() {
+        return readPreference;
+    }
+
+    /**
+     * The read preference of the find operations. If null, the read preference
+     * of the collection is used.
+     */
+    public void setReadPreference(ReadPreference readPreference) {
+        this.readPreference = readPreference;
+    }
+
+    /**
+     * Optional options of the cursor, such as the server side time limit of
+     * the query. The batch size of the
+     * finder overrides the batch size of the cursor options.
+     */
+    public CursorOptions getCursorOptions() {
+        return cursorOptions;
+    }
+
+    /**
+     * Optional options of the cursor, such as the server side time limit of
+     * the query. The batch size of the
+     * finder overrides the batch size of the cursor options.
+     */
+    public void setCursorOptions(CursorOptions cursorOptions) {
+        this.cursorOptions = cursorOptions;
+    }
+
+    /**
+     * The continuation token of keyset pagination. If null, the result set is
+     * paginated using skip and limit. If non-null, the documents are sorted by
+     * the requested sort followed by _id, the from index is ignored, and the
+     * documents after the continuation token are returned. An empty
+     * continuation token returns the first page.
+     */
+    public String getContinuation() {
+        return continuation;
+    }
+
+    /**
+     * The continuation token of keyset pagination. If null, the result set is
+     * paginated using skip and limit. If non-null, the documents are sorted by
+     * the requested sort followed by _id, the from index is ignored, and the
+     * documents after the continuation token are returned. An empty
+     * continuation token returns the first page.
+     */
+    public void setContinuation(String continuation) {
+        this.continuation = continuation;
+    }
+
+    /**
+     * The continuation token of the next page after a find using keyset
+     * pagination. Null if the last page is read, or if keyset pagination is
+     * not used.
+     */
+    public String getNextContinuation() {
+        return nextContinuation;
+    }
+
+    /**
+     * The processor translating and projecting large result sets in
+     * parallel. If null, the documents are processed sequentially.
+     */
+    public ParallelDocProcessor getParallelProcessor() {
+        return parallelProcessor;
+    }
+
+    /**
+     * Sets the processor translating and projecting large result sets in
+     * parallel. The documents are read from the cursor in chunks of at least
+     * the threshold of the processor, and the chunks are translated and
+     * projected in parallel. The interceptors are called for each document
+     * in result order, after translation and before projection.
+     *
+     * @param processor The processor. If null, the documents are processed
+     * sequentially.
+     * @param projection The projection used by the projector of the finder,
+     * or null if documents are not projected
+     * @param md The entity metadata
+     */
+    public void setParallelProcessor(ParallelDocProcessor processor, Projection projection, EntityMetadata md) {
+        this.parallelProcessor = processor;
+        this.parallelProjection = projection;
+        this.parallelMd = md;
+    }
+
+    /**
+     * The metrics of the find operation. The finder records the time spent
+     * executing the find command, fetching, translating, intercepting and
+     * projecting documents, and counts the documents read, and their bson
+     * bytes if the registry counts bytes.
+     */
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The metrics of the find operation. If null, metrics are not recorded.
+     */
+    public void setMetrics(OperationMetrics metrics) {
+        this.metrics = metrics == null ? OperationMetrics.DISABLED : metrics;
+    }
+
+    @Override
+    public long find(CRUDOperationContext ctx,
+                     DBCollection coll,
+                     DBObject mongoQuery,
+                     DBObject mongoProjection,
+                     DBObject mongoSort,
+                     Long from,
+                     Long to) {
+        nextContinuation = null;
+        boolean keyset = continuation != null;
+        if (keyset) {
+            mongoSort = ContinuationToken.getSort(mongoSort);
+            if (continuation.length() > 0) {
+                mongoQuery = ContinuationToken.merge(mongoQuery, ContinuationToken.getQuery(continuation, mongoSort));
+            }
+            // The page starts after the continuation token, not at the from index
+            if (to != null) {
+                to = to - (from == null ? 0 : from);
+            }
+            from = null;
+            LOGGER.debug("Keyset pagination, query={} sort={}", mongoQuery, mongoSort);
+        }
+        LOGGER.debug("Submitting query");
+        long t = metrics.start();
+        DBCursor cursor = new FindCommand(coll, mongoQuery, mongoProjection, readPreference, cursorOptions).execute();
+        metrics.end(OperationMetrics.PHASE_HYSTRIX, t);
+        LOGGER.debug("Query evaluated");
+        fetchNanos = toJsonNanos = interceptorNanos = projectNanos = numBytes = 0;
+        try {
+            if (mongoSort != null) {
+                cursor = cursor.sort(mongoSort);
+                LOGGER.debug("Result set sorted");
+            }
+            LOGGER.debug("Applying limits: {} - {}", from, to);
+            if (from != null) {
+                cursor.skip(from.intValue());
+            }
+            if (to != null) {
+                cursor.limit(to.intValue() - (from == null ? 0 : from.intValue()) + 1);
+            }
+            cursor.batchSize(batchSize);
+            LOGGER.debug("Streaming results, batch size {}", batchSize);
+            JsonNodeFactory nodeFactory = ctx.getFactory().getNodeFactory();
+            int n = 0;
+            DBObject last = null;
+            if (parallelProcessor == null) {
+                t = metrics.start();
+                while (cursor.hasNext()) {
+                    last = cursor.next();
+                    t = lap(t, PHASE_FETCH);
+                    countBytes(last);
+                    DocCtx doc = ctx.addDocument(translator.toJson(last));
+                    doc.setCRUDOperationPerformed(CRUDOperation.FIND);
+                    t = lap(t, PHASE_TO_JSON);
+                    ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_FIND_DOC, ctx, doc);
+                    t = lap(t, PHASE_INTERCEPTORS);
+                    if (projector != null) {
+                        doc.setOutputDocument(projector.project(doc, nodeFactory));
+                        t = lap(t, PHASE_PROJECT);
+                    }
+                    n++;
+                }
+                lap(t, PHASE_FETCH);
+            } else {
+                int chunkSize = Math.max(batchSize, parallelProcessor.getThreshold());
+                List<DBObject> chunk = new ArrayList<>(chunkSize);
+                t = metrics.start();
+                while (cursor.hasNext()) {
+                    last = cursor.next();
+                    fetchNanos += metrics.elapsed(t);
+                    countBytes(last);
+                    chunk.add(last);
+                    n++;
+                    if (chunk.size() >= chunkSize) {
+                        processChunk(ctx, chunk, nodeFactory);
+                        chunk.clear();
+                    }
+                    t = metrics.start();
+                }
+                fetchNanos += metrics.elapsed(t);
+                processChunk(ctx, chunk, nodeFactory);
+            }
+            LOGGER.debug("Retrieved and translated {} results", n);
+            if (metrics.isEnabled()) {
+                metrics.record(OperationMetrics.PHASE_FETCH, fetchNanos);
+                metrics.record(OperationMetrics.PHASE_TO_JSON, toJsonNanos);
+                metrics.record(OperationMetrics.PHASE_INTERCEPTORS, interceptorNanos);
+                if (projector != null || parallelProjection != null) {
+                    metrics.record(OperationMetrics.PHASE_PROJECT, projectNanos);
+                }
+                metrics.count(OperationMetrics.COUNT_READ, n);
+                if (metrics.isCountBytes()) {
+                    metrics.count(OperationMetrics.COUNT_BYTES, numBytes);
+                }
+            }
+            if (keyset && to != null && last != null && n == to + 1) {
+                nextContinuation = ContinuationToken.create(mongoSort, last);
+            }
+            return BasicDocFinder.getResultSetSize(countMode, cursor, n, from, to);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void processChunk(CRUDOperationContext ctx, List<DBObject> chunk, JsonNodeFactory nodeFactory) {
+        if (!chunk.isEmpty()) {
+            long t = metrics.start();
+            JsonDoc[] jsonDocs = parallelProcessor.toJson(translator, chunk);
+            toJsonNanos += metrics.elapsed(t);
+            t = metrics.start();
+            List<DocCtx> docs = new ArrayList<>(jsonDocs.length);
+            for (JsonDoc jsonDoc : jsonDocs) {
+                DocCtx doc = ctx.addDocument(jsonDoc);
+                doc.setCRUDOperationPerformed(CRUDOperation.FIND);
+                ctx.getFactory().getInterceptors().callInterceptors(InterceptPoint.POST_CRUD_FIND_DOC, ctx, doc);
+                docs.add(doc);
+            }
+            interceptorNanos += metrics.elapsed(t);
+            if (parallelProjection != null) {
+                t = metrics.start();
+                parallelProcessor.project(docs, parallelProjection, parallelMd, nodeFactory);
+                projectNanos += metrics.elapsed(t);
+            }
+        }
+    }
+
+    /**
+     * Adds the time elapsed since t to the given phase, and returns the
+     * current time. Returns 0 without reading the clock if metrics are
+     * disabled.
+     */
+    private long lap(long t, int phase) {
+        if (!metrics.isEnabled()) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        switch (phase) {
+            case PHASE_FETCH:
+                fetchNanos += now - t;
+                break;
+            case PHASE_TO_JSON:
+                toJsonNanos += now - t;
+                break;
+            case PHASE_INTERCEPTORS:
+                interceptorNanos += now - t;
+                break;
+            default:
+                projectNanos += now - t;
+                break;
+        }
+        return now;
+    }
+
+    private void countBytes(DBObject obj) {
+        if (metrics.isCountBytes()) {
+            numBytes += BSON.encode(obj).length;
+        }
+    }
+}
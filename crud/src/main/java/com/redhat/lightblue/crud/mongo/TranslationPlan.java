@@ -0,0 +1,457 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.redhat.lightblue.metadata.ArrayElement;
+import com.redhat.lightblue.metadata.ArrayField;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.FieldTreeNode;
+import com.redhat.lightblue.metadata.ObjectArrayElement;
+import com.redhat.lightblue.metadata.ObjectField;
+import com.redhat.lightblue.metadata.ReferenceField;
+import com.redhat.lightblue.metadata.SimpleArrayElement;
+import com.redhat.lightblue.metadata.SimpleField;
+import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.MutablePath;
+import com.redhat.lightblue.util.Path;
+
+/**
+ * A BSON/JSON conversion plan compiled from entity metadata. The metadata field
+ * tree is walked once, and each field is resolved into a converter that knows
+ * the field type and how to convert the field value in both directions. Plans
+ * are immutable, and can be shared between threads.
+ *
+ * Plans are cached by entity name and version, so a plan is reused even if
+ * the metadata is parsed again for every request. The fields of an entity
+ * version don't change, so a plan compiled from one metadata instance is
+ * valid for all instances of the same version. When an entity is created
+ * again, its cached plans are removed by the controller. At most
+ * {@link #MAX_PLANS} plans are kept, and the least recently used plan is
+ * removed when the cache is full.
+ *
+ * Reference fields are not stored in the db. They are skipped in both
+ * directions, same as metadata driven translation does when converting
+ * documents read from the db.
+ */
+public final class TranslationPlan {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TranslationPlan.class);
+
+    /**
+     * Maximum number of cached plans
+     */
+    static final int MAX_PLANS = 1000;
+
+    private static final Map<String, TranslationPlan> PLANS = new LinkedHashMap<String, TranslationPlan>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TranslationPlan> eldest) {
+            return size() > MAX_PLANS;
+        }
+    };
+
+    private final EntityMetadata md;
+    private final ObjectConverter root;
+
+    private TranslationPlan(EntityMetadata md) {
+        this.md = md;
+        this.root = new ObjectConverter(null, md.getFieldTreeRoot().getChildren(), true);
+    }
+
+    /**
+     * Returns the conversion plan for the given entity metadata, compiling one
+     * if there is no cached plan for the entity version
+     */
+    public static TranslationPlan get(EntityMetadata md) {
+        String key = getKey(md);
+        TranslationPlan plan;
+        synchronized (PLANS) {
+            plan = PLANS.get(key);
+        }
+        if (plan == null) {
+            // Compile outside the lock. If another thread compiled a plan in
+            // the meantime, use that one
+            LOGGER.debug("Compiling translation plan for {}", key);
+            TranslationPlan newPlan = new TranslationPlan(md);
+            synchronized (PLANS) {
+                plan = PLANS.get(key);
+                if (plan == null) {
+                    plan = newPlan;
+                    PLANS.put(key, plan);
+                }
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Removes all cached plans for the given entity
+     */
+    public static void invalidate(String entityName) {
+        String prefix = entityName + ":";
+        synchronized (PLANS) {
+            for (Iterator<String> itr = PLANS.keySet().iterator(); itr.hasNext();) {
+                if (itr.next().startsWith(prefix)) {
+                    itr.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached plans
+     */
+    public static void invalidateAll() {
+        synchronized (PLANS) {
+            PLANS.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached plans
+     */
+    static int size() {
+        synchronized (PLANS) {
+            return PLANS.size();
+        }
+    }
+
+    private static String getKey(EntityMetadata md) {
+        return md.getName() + ":" + (md.getVersion() == null ? null : md.getVersion().getValue());
+    }
+
+    /**
+     * Returns the metadata this plan is compiled from
+     */
+    public EntityMetadata getEntityMetadata() {
+        return md;
+    }
+
+    /**
+     * Translates a DBObject to a JSON document. Returns null if the entity has
+     * no fields.
+     */
+    public JsonDoc toJson(DBObject object, JsonNodeFactory factory) {
+        if (root.fields.isEmpty()) {
+            return null;
+        }
+        return new JsonDoc(root.objectToJson(object, factory));
+    }
+
+    /**
+     * Translates a JSON document to a DBObject. Returns null if the document is
+     * empty.
+     */
+    public BasicDBObject toBson(JsonDoc doc) {
+        JsonNode node = doc.getRoot();
+        if (node instanceof ObjectNode && node.size() > 0) {
+            return root.objectToBson((ObjectNode) node, new MutablePath(), md);
+        }
+        return null;
+    }
+
+    private static Converter compile(FieldTreeNode field, boolean atRoot) {
+        if (field instanceof SimpleField) {
+            return new SimpleConverter(field.getName(), field.getType(),
+                    atRoot && field.getName().equals(Translator.ID_PATH.head(0)));
+        } else if (field instanceof ObjectField) {
+            return new ObjectConverter(field.getName(), field.getChildren(), false);
+        } else if (field instanceof ArrayField) {
+            return new ArrayConverter(field.getName(), ((ArrayField) field).getElement());
+        } else if (field instanceof ReferenceField) {
+            return new ReferenceConverter(field.getName());
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Throws the error metadata driven translation would throw for an unknown
+     * field
+     */
+    private static Error invalidField(MutablePath path, EntityMetadata md) {
+        Path p = path.immutableCopy();
+        md.resolve(p);
+        return Error.get(Translator.ERR_INVALID_FIELD, p.toString());
+    }
+
+    private abstract static class Converter {
+        protected final String name;
+
+        Converter(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Sets the JSON translation of a non-null value in the given object
+         */
+        abstract void toJson(ObjectNode dest, Object value, JsonNodeFactory factory);
+
+        /**
+         * Adds the BSON translation of a JSON node to the given object
+         */
+        abstract void toBson(BasicDBObject dest, JsonNode node, MutablePath path, EntityMetadata md);
+    }
+
+    private static final class SimpleConverter extends Converter {
+        private final Type type;
+        private final boolean id;
+
+        SimpleConverter(String name, Type type, boolean id) {
+            super(name);
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        void toJson(ObjectNode dest, Object value, JsonNodeFactory factory) {
+            JsonNode valueNode = type.toJson(factory, value);
+            if (valueNode != null) {
+                dest.set(name, valueNode);
+            }
+        }
+
+        @Override
+        void toBson(BasicDBObject dest, JsonNode node, MutablePath path, EntityMetadata md) {
+            Object value = toValue(type, node);
+            if (value != null) {
+                if (id) {
+                    value = Translator.createIdFrom(value);
+                }
+                // Store big values as string. Mongo does not support big values
+                if (value instanceof BigDecimal || value instanceof BigInteger) {
+                    value = value.toString();
+                }
+            }
+            dest.append(name, value);
+        }
+    }
+
+    private static final class ObjectConverter extends Converter {
+        private final List<Converter> fields;
+        private final Map<String, Converter> fieldMap;
+
+        ObjectConverter(String name, Iterator<? extends FieldTreeNode> children, boolean atRoot) {
+            super(name);
+            List<Converter> list = new ArrayList<>();
+            Map<String, Converter> map = new HashMap<>();
+            while (children.hasNext()) {
+                Converter c = compile(children.next(), atRoot);
+                if (c != null) {
+                    list.add(c);
+                    map.put(c.name, c);
+                }
+            }
+            this.fields = Collections.unmodifiableList(list);
+            this.fieldMap = Collections.unmodifiableMap(map);
+        }
+
+        ObjectNode objectToJson(DBObject object, JsonNodeFactory factory) {
+            ObjectNode node = factory.objectNode();
+            for (Converter field : fields) {
+                Object value = object.get(field.name);
+                if (value != null) {
+                    field.toJson(node, value, factory);
+                } else {
+                    node.set(field.name, factory.nullNode());
+                }
+            }
+            return node;
+        }
+
+        BasicDBObject objectToBson(ObjectNode object, MutablePath path, EntityMetadata md) {
+            BasicDBObject ret = new BasicDBObject();
+            for (Iterator<Map.Entry<String, JsonNode>> itr = object.fields(); itr.hasNext();) {
+                Map.Entry<String, JsonNode> entry = itr.next();
+                path.push(entry.getKey());
+                Converter field = fieldMap.get(entry.getKey());
+                if (field == null) {
+                    throw invalidField(path, md);
+                }
+                field.toBson(ret, entry.getValue(), path, md);
+                path.pop();
+            }
+            return ret;
+        }
+
+        @Override
+        void toJson(ObjectNode dest, Object value, JsonNodeFactory factory) {
+            if (value instanceof DBObject) {
+                if (!fields.isEmpty()) {
+                    dest.set(name, objectToJson((DBObject) value, factory));
+                }
+            } else {
+                LOGGER.error("Expected DBObject, found {} for {}", value.getClass(), name);
+            }
+        }
+
+        @Override
+        void toBson(BasicDBObject dest, JsonNode node, MutablePath path, EntityMetadata md) {
+            if (node instanceof ObjectNode) {
+                if (node.size() > 0) {
+                    dest.append(name, objectToBson((ObjectNode) node, path, md));
+                }
+            } else if (node instanceof NullNode) {
+                dest.append(name, null);
+            } else {
+                throw Error.get(Translator.ERR_INVALID_FIELD, path.toString());
+            }
+        }
+    }
+
+    private static final class ArrayConverter extends Converter {
+        private final Type simpleElementType;
+        private final ObjectConverter objectElement;
+
+        ArrayConverter(String name, ArrayElement element) {
+            super(name);
+            if (element instanceof SimpleArrayElement) {
+                simpleElementType = element.getType();
+                objectElement = null;
+            } else if (element instanceof ObjectArrayElement) {
+                simpleElementType = null;
+                objectElement = new ObjectConverter(null, element.getChildren(), false);
+            } else {
+                simpleElementType = null;
+                objectElement = null;
+            }
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        void toJson(ObjectNode dest, Object value, JsonNodeFactory factory) {
+            if (value instanceof List) {
+                ArrayNode valueNode = factory.arrayNode();
+                dest.set(name, valueNode);
+                if (simpleElementType != null) {
+                    for (Object item : (List) value) {
+                        valueNode.add(item == null ? null : simpleElementType.toJson(factory, item));
+                    }
+                } else if (objectElement != null) {
+                    for (Object item : (List) value) {
+                        valueNode.add(elementToJson(item, factory));
+                    }
+                }
+            }
+        }
+
+        private JsonNode elementToJson(Object item, JsonNodeFactory factory) {
+            if (item != null) {
+                if (item instanceof DBObject) {
+                    if (!objectElement.fields.isEmpty()) {
+                        return objectElement.objectToJson((DBObject) item, factory);
+                    }
+                } else {
+                    LOGGER.error("Expected DBObject, got {}", item.getClass().getName());
+                }
+            }
+            return null;
+        }
+
+        @Override
+        void toBson(BasicDBObject dest, JsonNode node, MutablePath path, EntityMetadata md) {
+            if (node instanceof ArrayNode) {
+                if (node.size() > 0) {
+                    dest.append(name, arrayToBson((ArrayNode) node, path, md));
+                } else {
+                    // empty array! add an empty list.
+                    dest.append(name, new ArrayList());
+                }
+            } else if (node instanceof NullNode) {
+                dest.append(name, null);
+            } else {
+                throw Error.get(Translator.ERR_INVALID_FIELD, path.toString());
+            }
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private List arrayToBson(ArrayNode node, MutablePath path, EntityMetadata md) {
+            List l = new ArrayList(node.size());
+            int index = 0;
+            for (Iterator<JsonNode> itr = node.elements(); itr.hasNext(); index++) {
+                JsonNode item = itr.next();
+                if (simpleElementType != null) {
+                    l.add(toValue(simpleElementType, item));
+                } else if (item == null || !item.isContainerNode() || item.size() == 0) {
+                    // Nulls, values and empty containers in an object array
+                    // are stored as null, same as metadata driven translation
+                    l.add(null);
+                } else {
+                    path.push(index);
+                    if (item instanceof ObjectNode && objectElement != null) {
+                        l.add(objectElement.objectToBson((ObjectNode) item, path, md));
+                    } else {
+                        throw invalidField(path, md);
+                    }
+                    path.pop();
+                }
+            }
+            return l;
+        }
+    }
+
+    private static final class ReferenceConverter extends Converter {
+
+        ReferenceConverter(String name) {
+            super(name);
+        }
+
+        @Override
+        void toJson(ObjectNode dest, Object value, JsonNodeFactory factory) {
+            LOGGER.debug("Skipping reference field {}", name);
+        }
+
+        @Override
+        void toBson(BasicDBObject dest, JsonNode node, MutablePath path, EntityMetadata md) {
+            // References are resolved when documents are retrieved, they are not stored
+            LOGGER.debug("Skipping reference field {}", path);
+        }
+    }
+
+    private static Object toValue(Type t, JsonNode node) {
+        if (node == null || node instanceof NullNode) {
+            return null;
+        } else {
+            return t.fromJson(node);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package com.redhat.lightblue.crud.mongo;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +51,7 @@ import com.redhat.lightblue.metadata.ReferenceField;
 import com.redhat.lightblue.metadata.SimpleArrayElement;
 import com.redhat.lightblue.metadata.SimpleField;
 import com.redhat.lightblue.metadata.Type;
+import com.redhat.lightblue.metadata.types.StringType;
 import com.redhat.lightblue.query.ArrayContainsExpression;
 import com.redhat.lightblue.query.ArrayMatchExpression;
 import com.redhat.lightblue.query.ArrayUpdateExpression;
@@ -86,7 +88,13 @@ import com.redhat.lightblue.util.Util;
 
 /**
  * Translations between BSON and JSON. This class is thread-safe, and can be
- * shared between threads
+ * shared between threads.
+ *
+ * By default, document translations use a {@link TranslationPlan} compiled from
+ * the entity metadata, so the metadata is not resolved field by field for every
+ * document. Similarly, queries and projections are translated once for each
+ * query shape into a {@link QueryTemplate}, and only the literal values of the
+ * query are bound for every request.
  */
 public class Translator {
 
@@ -104,6 +112,13 @@ public class Translator {
 
     private final MetadataResolver mdResolver;
     private final JsonNodeFactory factory;
+    private final boolean compiled;
+    /**
+     * If non-null, this translator creates query templates, and the literal
+     * values of the query are translated into parameters added to this list
+     */
+    private final List<QueryTemplate.Param> params;
+    private boolean exprComparisons = false;
 
     private static final Map<BinaryComparisonOperator, String> BINARY_COMPARISON_OPERATOR_JS_MAP;
     private static final Map<BinaryComparisonOperator, String> BINARY_COMPARISON_OPERATOR_MAP;
@@ -147,8 +162,45 @@ public class Translator {
      */
     public Translator(MetadataResolver mdResolver,
                       JsonNodeFactory factory) {
+        this(mdResolver, factory, true);
+    }
+
+    /**
+     * Constructs a translator using the given metadata resolver and factory
+     *
+     * @param compiled If true, documents are translated using compiled
+     * translation plans, and queries and projections are translated using
+     * cached templates. Otherwise, the metadata is walked for every document
+     * and every query.
+     */
+    public Translator(MetadataResolver mdResolver,
+                      JsonNodeFactory factory,
+                      boolean compiled) {
+        this(mdResolver, factory, compiled, null);
+    }
+
+    private Translator(MetadataResolver mdResolver,
+                       JsonNodeFactory factory,
+                       boolean compiled,
+                       List<QueryTemplate.Param> params) {
         this.mdResolver = mdResolver;
         this.factory = factory;
+        this.compiled = compiled;
+        this.params = params;
+    }
+
+    /**
+     * If true, field to field comparisons are translated to $expr queries
+     * when possible, and to $where JavaScript otherwise. $expr requires
+     * MongoDB 3.6 or later. This should be set before the translator is
+     * shared between threads.
+     */
+    public void setExprComparisons(boolean b) {
+        exprComparisons = b;
+    }
+
+    public boolean isExprComparisons() {
+        return exprComparisons;
     }
 
     /**
@@ -319,6 +371,17 @@ public class Translator {
         Error.push("translateQuery");
         FieldTreeNode mdRoot = md.getFieldTreeRoot();
         try {
+            if (compiled && params == null) {
+                List<Object> literals = new ArrayList<>();
+                String shape = (exprComparisons ? "qx:" : "q:") + QueryTemplate.getShape(query, literals);
+                QueryTemplate template = QueryTemplate.get(md, shape);
+                if (template == null) {
+                    Translator t = new Translator(mdResolver, factory, compiled, new ArrayList<QueryTemplate.Param>());
+                    t.exprComparisons = exprComparisons;
+                    template = QueryTemplate.put(md, shape, t.translate(mdRoot, query));
+                }
+                return template.bind(literals);
+            }
             return translate(mdRoot, query);
         } catch (Error e) {
             // rethrow lightblue error
@@ -405,6 +468,24 @@ public class Translator {
                                         Projection p,
                                         QueryExpression q,
                                         Sort s) {
+        if (compiled) {
+            // The required fields depend only on the fields used by
+            // the query, not on its values
+            String shape = "p:" + p + ":" + (q == null ? null : QueryTemplate.getShape(q, new ArrayList<Object>()))
+                    + ":" + s;
+            QueryTemplate template = QueryTemplate.get(md, shape);
+            if (template == null) {
+                template = QueryTemplate.put(md, shape, buildProjection(md, p, q, s));
+            }
+            return template.bind(Collections.<Object>emptyList());
+        }
+        return buildProjection(md, p, q, s);
+    }
+
+    private DBObject buildProjection(EntityMetadata md,
+                                     Projection p,
+                                     QueryExpression q,
+                                     Sort s) {
         Set<Path> fields=getRequiredFields(md,p,q,s);
         BasicDBObject ret=new BasicDBObject();
         for(Path f:fields) {
@@ -580,10 +661,47 @@ public class Translator {
         return node;
     }
 
+    /**
+     * Returns the translated literal value, or a parameter if this translator
+     * creates query templates
+     */
+    private Object literal(Type t, Object value, boolean id) {
+        if (params != null) {
+            QueryTemplate.Param p = new QueryTemplate.Param(params.size(), t, id, false);
+            params.add(p);
+            return p;
+        }
+        return translateValue(t, value, id);
+    }
+
+    /**
+     * Returns the translated literal value list, or a parameter if this
+     * translator creates query templates
+     */
+    private Object literalList(Type t, List<Value> values) {
+        if (params != null) {
+            QueryTemplate.Param p = new QueryTemplate.Param(params.size(), t, false, true);
+            params.add(p);
+            return p;
+        }
+        return translateValueList(t, values);
+    }
+
+    /**
+     * Converts a value to the proper type
+     */
+    static Object translateValue(Type t, Object value, boolean id) {
+        Object ret = value == null ? null : t.cast(value);
+        if (id) {
+            ret = createIdFrom(ret);
+        }
+        return ret;
+    }
+
     /**
      * Converts a value list to a list of values with the proper type
      */
-    private List<Object> translateValueList(Type t, List<Value> values) {
+    static List<Object> translateValueList(Type t, List<Value> values) {
         if (values == null || values.isEmpty()) {
             throw new IllegalArgumentException(MongoCrudConstants.ERR_EMPTY_VALUE_LIST);
         }
@@ -610,10 +728,7 @@ public class Translator {
                 throw Error.get(ERR_INVALID_COMPARISON, expr.toString());
             }
         }
-        Object valueObject = t.cast(expr.getRvalue().getValue());
-        if (expr.getField().equals(ID_PATH)) {
-            valueObject = createIdFrom(valueObject);
-        }
+        Object valueObject = literal(t, expr.getRvalue().getValue(), expr.getField().equals(ID_PATH));
         if (expr.getOp() == BinaryComparisonOperator._eq) {
             return new BasicDBObject(translatePath(expr.getField()), valueObject);
         } else {
@@ -624,7 +739,7 @@ public class Translator {
 
     private DBObject translateRegexMatchExpression(RegexMatchExpression expr) {
         StringBuilder options = new StringBuilder();
-        BasicDBObject regex = new BasicDBObject("$regex", expr.getRegex());
+        BasicDBObject regex = new BasicDBObject("$regex", literal(StringType.TYPE, expr.getRegex(), false));
         if (expr.isCaseInsensitive()) {
             options.append('i');
         }
@@ -647,7 +762,7 @@ public class Translator {
     private DBObject translateNaryValueRelationalExpression(FieldTreeNode context, NaryValueRelationalExpression expr) {
         Type t = resolve(context, expr.getField()).getType();
         if (t.supportsEq()) {
-            List<Object> values = translateValueList(t, expr.getValues());
+            Object values = literalList(t, expr.getValues());
             return new BasicDBObject(translatePath(expr.getField()),
                     new BasicDBObject(NARY_RELATIONAL_OPERATOR_MAP.get(expr.getOp()),
                             values));
@@ -659,9 +774,26 @@ public class Translator {
     private DBObject translateNaryFieldRelationalExpression(FieldTreeNode context, NaryFieldRelationalExpression expr) {
         Type t = resolve(context, expr.getField()).getType();
         if (t.supportsEq()) {
-            // Call resolve, which will verify the field exists.  Don't need the response.
-            resolve(context,expr.getRfield());
+            FieldTreeNode rnode = resolve(context,expr.getRfield());
             boolean in=expr.getOp()==NaryRelationalOperator._in;
+            if (exprComparisons && canUseExpr(context, expr.getField()) && canUseExpr(context, expr.getRfield())
+                    && rnode instanceof ArrayField) {
+                // { $expr: { $in: [ { $ifNull: [ "$field", null ] }, { $ifNull: [ "$rfield", [] ] } ] } }
+                // A missing field is null, as in the JavaScript translation
+                List<Object> arr = new ArrayList<>(2);
+                arr.add("$" + translatePath(expr.getRfield()));
+                arr.add(new ArrayList<>());
+                List<Object> args = new ArrayList<>(2);
+                args.add(exprNullIfMissing(expr.getField()));
+                args.add(new BasicDBObject("$ifNull", arr));
+                DBObject x = new BasicDBObject("$in", args);
+                if (!in) {
+                    List<Object> l = new ArrayList<>(1);
+                    l.add(x);
+                    x = new BasicDBObject("$not", l);
+                }
+                return new BasicDBObject("$expr", x);
+            }
             return new BasicDBObject("$where",
                                      String.format("function() for(var nfr=0;nfr<this.%s.length;nfr++) {if ( %s == %s[nfr] ) return %s;} return %s;}",
                                                    translateJsPath(expr.getRfield()),
@@ -772,13 +904,96 @@ public class Translator {
         }
     }
 
+    /**
+     * Returns if a field can be referred to in an $expr query. The field must
+     * be a field of the document, not of an array element being matched, and
+     * its path must not go through arrays, because aggregation field paths
+     * do not support array indexes, and they traverse arrays differently from
+     * the JavaScript translation.
+     */
+    private boolean canUseExpr(FieldTreeNode context, Path field) {
+        if (context instanceof ArrayElement) {
+            return false;
+        }
+        int n = field.numSegments();
+        for (int i = 0; i < n; i++) {
+            if (field.isIndex(i) || Path.ANY.equals(field.head(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Translates a field comparison to an aggregation expression that treats
+     * null and missing fields like the JavaScript translation does. Aggregation
+     * expressions compare values in BSON type order, where null and missing
+     * values are less than all other values, whereas in JavaScript, an
+     * ordering comparison with a missing value is false.
+     *
+     * <pre>
+     *   $eq, $ne: { $op: [ { $ifNull: [ "$lfield", null ] }, { $ifNull: [ "$rfield", null ] } ] }
+     *   others:   { $and: [ { $gt: [ "$lfield", null ] }, { $gt: [ "$rfield", null ] }, { $op: [ "$lfield", "$rfield" ] } ] }
+     * </pre>
+     *
+     * For equality, a missing field is equal to null, as in JavaScript. For
+     * ordering comparisons, both fields must have a non-null value.
+     */
+    private DBObject translateExprComparison(Path lField, Path rField, BinaryComparisonOperator op) {
+        String mongoOp = BINARY_COMPARISON_OPERATOR_MAP.get(op);
+        if (op == BinaryComparisonOperator._eq || op == BinaryComparisonOperator._neq) {
+            List<Object> args = new ArrayList<>(2);
+            args.add(exprNullIfMissing(lField));
+            args.add(exprNullIfMissing(rField));
+            return new BasicDBObject(mongoOp, args);
+        } else {
+            List<Object> args = new ArrayList<>(2);
+            args.add("$" + translatePath(lField));
+            args.add("$" + translatePath(rField));
+            List<Object> and = new ArrayList<>(3);
+            and.add(exprNotNull(lField));
+            and.add(exprNotNull(rField));
+            and.add(new BasicDBObject(mongoOp, args));
+            return new BasicDBObject("$and", and);
+        }
+    }
+
+    /**
+     * Returns { $ifNull: [ "$field", null ] }, the value of the field, or null
+     * if it is missing
+     */
+    private DBObject exprNullIfMissing(Path field) {
+        List<Object> args = new ArrayList<>(2);
+        args.add("$" + translatePath(field));
+        args.add(null);
+        return new BasicDBObject("$ifNull", args);
+    }
+
+    /**
+     * Returns { $gt: [ "$field", null ] }, which is true if the field has a
+     * non-null value. Null and missing values are the least values in BSON
+     * type order.
+     */
+    private DBObject exprNotNull(Path field) {
+        List<Object> args = new ArrayList<>(2);
+        args.add("$" + translatePath(field));
+        args.add(null);
+        return new BasicDBObject("$gt", args);
+    }
+
     private DBObject translateFieldComparison(FieldTreeNode context,FieldComparisonExpression expr) {
         StringBuilder str = new StringBuilder(256);
         // We have to deal with array references here
         Path rField = expr.getRfield();
-        boolean rIsArray=context.resolve(rField) instanceof ArrayField;
+        FieldTreeNode rNode = context.resolve(rField);
+        boolean rIsArray=rNode instanceof ArrayField;
         Path lField = expr.getField();
-        boolean lIsArray=context.resolve(lField) instanceof ArrayField;
+        FieldTreeNode lNode = context.resolve(lField);
+        boolean lIsArray=lNode instanceof ArrayField;
+        if (exprComparisons && rNode != null && lNode != null && !rIsArray && !lIsArray
+                && canUseExpr(context, lField) && canUseExpr(context, rField)) {
+            return new BasicDBObject("$expr", translateExprComparison(lField, rField, expr.getOp()));
+        }
         int rn = rField.nAnys();
         int ln = lField.nAnys();
         str.append("function() {");
@@ -871,7 +1086,7 @@ public class Translator {
     private DBObject translateArrayContainsAll(Type t, Path array, List<Value> values) {
         return new BasicDBObject(translatePath(array),
                 new BasicDBObject("$all",
-                        translateValueList(t, values)));
+                        literalList(t, values)));
     }
 
     /**
@@ -882,8 +1097,7 @@ public class Translator {
     private DBObject translateArrayContainsAny(Type t, Path array, List<Value> values) {
         List<BasicDBObject> l = new ArrayList<>(values.size());
         for (Value x : values) {
-            l.add(new BasicDBObject(translatePath(array), x == null ? null
-                    : x.getValue() == null ? null : t.cast(x.getValue())));
+            l.add(new BasicDBObject(translatePath(array), literal(t, x == null ? null : x.getValue(), false)));
         }
         return new BasicDBObject("$or", l);
     }
@@ -898,6 +1112,9 @@ public class Translator {
     }
 
     private JsonDoc toJson(DBObject object, EntityMetadata md) {
+        if (compiled) {
+            return TranslationPlan.get(md).toJson(object, factory);
+        }
         // Translation is metadata driven. We don't know how to
         // translate something that's not defined in metadata.
         FieldCursor cursor = md.getFieldCursor();
@@ -1002,6 +1219,9 @@ public class Translator {
 
     private BasicDBObject toBson(JsonDoc doc, EntityMetadata md) {
         LOGGER.debug("Entity: {}", md.getName());
+        if (compiled) {
+            return TranslationPlan.get(md).toBson(doc);
+        }
         BasicDBObject ret = null;
         JsonNodeCursor cursor = doc.cursor();
         if (cursor.firstChild()) {
@@ -0,0 +1,168 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.eval.FieldAccessRoleEvaluator;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+public class BulkDocSaverTest extends AbstractMongoCrudTest {
+
+    private TestCRUDOperationContext ctx;
+    private Translator translator;
+    private EntityMetadata md;
+    private BulkDocSaver saver;
+
+    @Before
+    public void setup() throws Exception {
+        super.setup();
+
+        ctx = new TestCRUDOperationContext(CRUDOperation.INSERT);
+        md = getMd("./testMetadata.json");
+        ctx.add(md);
+        translator = new Translator(ctx, nodeFactory);
+        saver = new BulkDocSaver(translator, new FieldAccessRoleEvaluator(md, ctx.getCallerRoles()), 2);
+    }
+
+    private DocCtx submit(String id, DBObject[] out) throws Exception {
+        return submit(DocSaver.Op.insert, false, id, "f1", out);
+    }
+
+    private DocCtx submit(DocSaver.Op op, boolean upsert, String id, String field1, DBObject[] out) throws Exception {
+        JsonDoc doc = new JsonDoc(json(loadResource("./testdata1.json")));
+        if (id != null) {
+            doc.modify(new Path("_id"), nodeFactory.textNode(id), true);
+        }
+        doc.modify(new Path("field1"), nodeFactory.textNode(field1), true);
+        DocCtx docCtx = ctx.addDocument(doc);
+        DBObject dbObject = translator.toBson(docCtx);
+        out[0] = dbObject;
+        saver.saveDoc(ctx, op, upsert, coll, md, dbObject, docCtx);
+        return docCtx;
+    }
+
+    @Test
+    public void insertInBatches() throws Exception {
+        DBObject[] out = new DBObject[1];
+        for (int i = 0; i < 5; i++) {
+            submit("bulk" + i, out);
+        }
+        // Two full batches are written, the last doc is pending
+        Assert.assertEquals(4, coll.find().count());
+        saver.flush(ctx);
+        Assert.assertEquals(5, coll.find().count());
+        for (DocCtx doc : ctx.getDocuments()) {
+            Assert.assertFalse(doc.hasErrors());
+            Assert.assertEquals(CRUDOperation.INSERT, doc.getCRUDOperationPerformed());
+        }
+    }
+
+    @Test
+    public void idAssignedBeforeWrite() throws Exception {
+        DBObject[] out = new DBObject[1];
+        submit(null, out);
+        Object id = out[0].get("_id");
+        Assert.assertNotNull(id);
+        saver.flush(ctx);
+        Assert.assertEquals(1, coll.find(new BasicDBObject("_id", id)).count());
+    }
+
+    @Test
+    public void duplicateKeyMappedToDoc() throws Exception {
+        coll.insert(new BasicDBObject("_id", "dup").append("objectType", "test"));
+        DBObject[] out = new DBObject[1];
+        DocCtx first = submit("bulkA", out);
+        DocCtx dup = submit("dup", out);
+        DocCtx last = submit("bulkB", out);
+        saver.flush(ctx);
+
+        Assert.assertEquals(3, coll.find().count());
+        Assert.assertFalse(first.hasErrors());
+        Assert.assertFalse(last.hasErrors());
+        Assert.assertTrue(dup.hasErrors());
+        Assert.assertEquals(MongoCrudConstants.ERR_DUPLICATE, dup.getErrors().get(0).getErrorCode());
+        Assert.assertEquals(CRUDOperation.INSERT, last.getCRUDOperationPerformed());
+    }
+
+    @Test
+    public void saveExistingAndNewDocs() throws Exception {
+        coll.insert(new BasicDBObject("_id", "save1").append("objectType", "test").append("field1", "old"));
+        coll.insert(new BasicDBObject("_id", "save2").append("objectType", "test").append("field1", "old"));
+        saver = new BulkDocSaver(translator, new FieldAccessRoleEvaluator(md, ctx.getCallerRoles()), 10);
+        DBObject[] out = new DBObject[1];
+        DocCtx save1 = submit(DocSaver.Op.save, false, "save1", "new1", out);
+        DocCtx save2 = submit(DocSaver.Op.save, false, "save2", "new2", out);
+        DocCtx save3 = submit(DocSaver.Op.save, true, "save3", "new3", out);
+        // Nothing is written until the batch is full
+        Assert.assertEquals(2, coll.find(new BasicDBObject("field1", "old")).count());
+        saver.flush(ctx);
+
+        Assert.assertEquals(3, coll.find().count());
+        Assert.assertEquals("new1", coll.findOne(new BasicDBObject("_id", "save1")).get("field1"));
+        Assert.assertEquals("new2", coll.findOne(new BasicDBObject("_id", "save2")).get("field1"));
+        Assert.assertEquals("new3", coll.findOne(new BasicDBObject("_id", "save3")).get("field1"));
+        Assert.assertEquals(CRUDOperation.UPDATE, save1.getCRUDOperationPerformed());
+        Assert.assertEquals(CRUDOperation.UPDATE, save2.getCRUDOperationPerformed());
+        Assert.assertEquals(CRUDOperation.INSERT, save3.getCRUDOperationPerformed());
+        Assert.assertEquals("old", save1.getOriginalDocument().get(new Path("field1")).asText());
+    }
+
+    @Test
+    public void saveSameDocTwice() throws Exception {
+        coll.insert(new BasicDBObject("_id", "twice").append("objectType", "test").append("field1", "old"));
+        saver = new BulkDocSaver(translator, new FieldAccessRoleEvaluator(md, ctx.getCallerRoles()), 10);
+        DBObject[] out = new DBObject[1];
+        submit(DocSaver.Op.save, false, "twice", "first", out);
+        submit(DocSaver.Op.save, false, "twice", "second", out);
+        saver.flush(ctx);
+
+        Assert.assertEquals("second", coll.findOne(new BasicDBObject("_id", "twice")).get("field1"));
+    }
+
+    @Test
+    public void insertThenSaveSameDoc() throws Exception {
+        saver = new BulkDocSaver(translator, new FieldAccessRoleEvaluator(md, ctx.getCallerRoles()), 10);
+        DBObject[] out = new DBObject[1];
+        DocCtx insert = submit(DocSaver.Op.insert, false, "insertSave", "first", out);
+        DocCtx save = submit(DocSaver.Op.save, false, "insertSave", "second", out);
+        // The save starts a new batch, the insert is written
+        Assert.assertEquals(1, coll.find(new BasicDBObject("_id", "insertSave")).count());
+        saver.flush(ctx);
+
+        Assert.assertFalse(insert.hasErrors());
+        Assert.assertFalse(save.hasErrors());
+        Assert.assertEquals(CRUDOperation.INSERT, insert.getCRUDOperationPerformed());
+        Assert.assertEquals(CRUDOperation.UPDATE, save.getCRUDOperationPerformed());
+        Assert.assertEquals("second", coll.findOne(new BasicDBObject("_id", "insertSave")).get("field1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBatchSize() {
+        new BulkDocSaver(translator, null, 0);
+    }
+}
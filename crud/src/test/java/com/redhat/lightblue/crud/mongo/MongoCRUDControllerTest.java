@@ -33,6 +33,7 @@ import com.mongodb.DBCollection;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
 import com.redhat.lightblue.crud.CRUDDeleteResponse;
 import com.redhat.lightblue.crud.CRUDInsertionResponse;
 import com.redhat.lightblue.crud.CRUDSaveResponse;
@@ -51,6 +52,8 @@ import com.redhat.lightblue.metadata.constraints.IdentityConstraint;
 
 import com.redhat.lightblue.common.mongo.MongoDataStore;
 import com.redhat.lightblue.common.mongo.DBResolver;
+import com.redhat.lightblue.common.mongo.DatasourceSettings;
+import com.redhat.lightblue.common.mongo.DatasourceSettingsResolver;
 import com.redhat.lightblue.query.Projection;
 import com.redhat.lightblue.query.SortKey;
 import com.redhat.lightblue.util.JsonDoc;
@@ -60,6 +63,7 @@ import com.redhat.lightblue.util.Error;
 public class MongoCRUDControllerTest extends AbstractMongoCrudTest {
 
     private MongoCRUDController controller;
+    private DatasourceSettings settings;
 
     @Before
     public void setup() throws Exception {
@@ -68,11 +72,17 @@ public class MongoCRUDControllerTest extends AbstractMongoCrudTest {
         final DB dbx = db;
         dbx.createCollection(COLL_NAME, null);
 
-        controller = new MongoCRUDController(new DBResolver() {
+        settings = new DatasourceSettings();
+        controller = new MongoCRUDController(new DatasourceSettingsResolver() {
             @Override
             public DB get(MongoDataStore store) {
                 return dbx;
             }
+
+            @Override
+            public DatasourceSettings getSettings(MongoDataStore store) {
+                return settings;
+            }
         });
     }
 
@@ -94,6 +104,24 @@ public class MongoCRUDControllerTest extends AbstractMongoCrudTest {
         Assert.assertEquals(1, coll.find(new BasicDBObject("_id", Translator.createIdFrom(id))).count());
     }
     
+    @Test
+    public void insertTest_resolverWithoutSettings() throws Exception {
+        final DB dbx = db;
+        MongoCRUDController plainController = new MongoCRUDController(new DBResolver() {
+            @Override
+            public DB get(MongoDataStore store) {
+                return dbx;
+            }
+        });
+        EntityMetadata md = getMd("./testMetadata.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.INSERT);
+        ctx.add(md);
+        ctx.addDocument(new JsonDoc(loadJsonNode("./testdata1.json")));
+        CRUDInsertionResponse response = plainController.insert(ctx, projection("{'field':'_id'}"));
+        Assert.assertTrue(ctx.getErrors() == null || ctx.getErrors().isEmpty());
+        Assert.assertEquals(1, response.getNumInserted());
+    }
+
     @Test
     public void insertTest_nullReqField() throws Exception {
         EntityMetadata md = getMd("./testMetadata-requiredFields2.json");
@@ -342,8 +370,7 @@ public class MongoCRUDControllerTest extends AbstractMongoCrudTest {
                 projection("{'field':'_id'}"));
         Assert.assertEquals(1, upd.getNumUpdated());
         Assert.assertEquals(0, upd.getNumFailed());
-        //Assert.assertEquals(AtomicIterateUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
-        Assert.assertEquals(IterateAndUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
+        Assert.assertEquals(AtomicIterateUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
         DBObject obj = coll.find(new BasicDBObject("field3", 1000), new BasicDBObject("_id", 1)).next();
         Assert.assertNotNull(obj);
         System.out.println("DBObject:" + obj);
@@ -358,8 +385,7 @@ public class MongoCRUDControllerTest extends AbstractMongoCrudTest {
         upd = controller.update(ctx, query("{'field':'field3','op':'>','rvalue':10}"),
                 update("{ '$set': { 'field3' : 1000 } }"),
                 projection("{'field':'_id'}"));
-        //Assert.assertEquals(AtomicIterateUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
-        Assert.assertEquals(IterateAndUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
+        Assert.assertEquals(AtomicIterateUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
         Assert.assertEquals(10, upd.getNumUpdated());
         Assert.assertEquals(0, upd.getNumFailed());
         Assert.assertEquals(10, coll.find(new BasicDBObject("field3", new BasicDBObject("$gt", 10))).count());
@@ -369,12 +395,23 @@ public class MongoCRUDControllerTest extends AbstractMongoCrudTest {
         ctx.add(md);
         upd = controller.update(ctx, query("{'field':'field3','op':'>','rvalue':10}"),
                 update("{ '$set': { 'field3' : 1000 } }"), null);
-        //Assert.assertEquals(AtomicIterateUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
-        Assert.assertEquals(IterateAndUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
+        Assert.assertEquals(AtomicIterateUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
         Assert.assertEquals(10, upd.getNumUpdated());
         Assert.assertEquals(0, upd.getNumFailed());
         Assert.assertEquals(10, coll.find(new BasicDBObject("field3", new BasicDBObject("$gt", 10))).count());
 
+        // Server side multi-document update
+        settings.setServerSideUpdate(true);
+        ctx = new TestCRUDOperationContext(CRUDOperation.UPDATE);
+        ctx.add(md);
+        upd = controller.update(ctx, query("{'field':'field3','op':'>','rvalue':10}"),
+                update("{ '$add': { 'field3' : 1 } }"), null);
+        Assert.assertEquals(ServerSideUpdater.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
+        Assert.assertEquals(10, upd.getNumUpdated());
+        Assert.assertEquals(0, upd.getNumFailed());
+        Assert.assertEquals(10, coll.find(new BasicDBObject("field3", 1001)).count());
+        settings.setServerSideUpdate(false);
+
         // Iterate update
         ctx = new TestCRUDOperationContext(CRUDOperation.UPDATE);
         ctx.add(md);
@@ -387,6 +424,65 @@ public class MongoCRUDControllerTest extends AbstractMongoCrudTest {
         Assert.assertEquals(10, coll.find(new BasicDBObject("field7.0.elemf1", "blah")).count());
     }
 
+    @Test
+    public void updateTest_batched() throws Exception {
+        EntityMetadata md = getMd("./testMetadata.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.INSERT);
+        ctx.add(md);
+        List<JsonDoc> docs = new ArrayList<>();
+        int numDocs = 20;
+        for (int i = 0; i < numDocs; i++) {
+            JsonDoc doc = new JsonDoc(loadJsonNode("./testdata1.json"));
+            doc.modify(new Path("field1"), nodeFactory.textNode("doc" + i), false);
+            doc.modify(new Path("field3"), nodeFactory.numberNode(i), false);
+            docs.add(doc);
+        }
+        ctx.addDocuments(docs);
+        controller.insert(ctx, projection("{'field':'_id'}"));
+        Assert.assertEquals(numDocs, coll.find(null).count());
+
+        settings.setUpdateBatchSize(3);
+        ctx = new TestCRUDOperationContext(CRUDOperation.UPDATE);
+        ctx.add(md);
+        CRUDUpdateResponse upd = controller.update(ctx, query("{'field':'field3','op':'>=','rvalue':10}"),
+                update("{ '$set': { 'field7.0.elemf1' : 'batched' } }"), projection("{'field':'_id'}"));
+        Assert.assertEquals(3, ((IterateAndUpdate) ctx.getProperty(MongoCRUDController.PROP_UPDATER)).getBatchSize());
+        Assert.assertEquals(10, upd.getNumUpdated());
+        Assert.assertEquals(0, upd.getNumFailed());
+        Assert.assertEquals(10, coll.find(new BasicDBObject("field7.0.elemf1", "batched")).count());
+        Assert.assertEquals(10, ctx.getDocuments().size());
+        for (DocCtx doc : ctx.getDocuments()) {
+            Assert.assertEquals(CRUDOperation.UPDATE, doc.getCRUDOperationPerformed());
+            Assert.assertNotNull(doc.getOutputDocument().get(new Path("_id")));
+            Assert.assertNull(doc.getOutputDocument().get(new Path("field1")));
+        }
+    }
+
+    @Test
+    public void updateTest_unsetParentOfRequiredField() throws Exception {
+        EntityMetadata md = getMd("./testMetadata-requiredNested.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.INSERT);
+        ctx.add(md);
+        ctx.addDocument(new JsonDoc(loadJsonNode("./testdata1.json")));
+        controller.insert(ctx, projection("{'field':'_id'}"));
+
+        // field6.nf7.nnf1 is required, so removing field6.nf7 cannot be done atomically
+        ctx = new TestCRUDOperationContext(CRUDOperation.UPDATE);
+        ctx.add(md);
+        controller.update(ctx, query("{'field':'field2','op':'=','rvalue':'f2'}"),
+                update("{ '$unset': 'field6.nf7' }"),
+                projection("{'field':'_id'}"));
+        Assert.assertEquals(IterateAndUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
+
+        // field6 has array descendants
+        ctx = new TestCRUDOperationContext(CRUDOperation.UPDATE);
+        ctx.add(md);
+        controller.update(ctx, query("{'field':'field2','op':'=','rvalue':'f2'}"),
+                update("{ '$unset': 'field6' }"),
+                projection("{'field':'_id'}"));
+        Assert.assertEquals(IterateAndUpdate.class, ctx.getProperty(MongoCRUDController.PROP_UPDATER).getClass());
+    }
+
     @Test
     public void updateTest_nullReqField() throws Exception {
         EntityMetadata md = getMd("./testMetadata-requiredFields2.json");
@@ -499,6 +595,103 @@ public class MongoCRUDControllerTest extends AbstractMongoCrudTest {
         }
     }
 
+    @Test
+    public void findReadPreferenceTest() throws Exception {
+        EntityMetadata md = getMd("./testMetadata.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.INSERT);
+        ctx.add(md);
+        ctx.addDocument(new JsonDoc(loadJsonNode("./testdata1.json")));
+        controller.insert(ctx, projection("{'field':'_id'}"));
+
+        // Datasource read preference
+        settings.setFindReadPreference("secondaryPreferred");
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        controller.find(ctx, query("{'field':'field3','op':'>=','rvalue':0}"),
+                projection("{'field':'*','recursive':1}"), null, null, null);
+        Assert.assertEquals(1, ctx.getDocuments().size());
+        StreamingDocFinder finder = (StreamingDocFinder) ctx.getProperty(MongoCRUDController.PROP_FINDER);
+        Assert.assertEquals(ReadPreference.secondaryPreferred(), finder.getReadPreference());
+
+        // Entity read preference overrides the datasource
+        ((MongoDataStore) md.getDataStore()).setReadPreference("nearest");
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        controller.find(ctx, query("{'field':'field3','op':'>=','rvalue':0}"),
+                projection("{'field':'*','recursive':1}"), null, null, null);
+        Assert.assertEquals(1, ctx.getDocuments().size());
+        finder = (StreamingDocFinder) ctx.getProperty(MongoCRUDController.PROP_FINDER);
+        Assert.assertEquals(ReadPreference.nearest(), finder.getReadPreference());
+    }
+
+    @Test
+    public void findCursorOptionsTest() throws Exception {
+        EntityMetadata md = getMd("./testMetadata.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.INSERT);
+        ctx.add(md);
+        ctx.addDocument(new JsonDoc(loadJsonNode("./testdata1.json")));
+        controller.insert(ctx, projection("{'field':'_id'}"));
+
+        // Datasource settings
+        settings.setFindBatchSize(5);
+        settings.setFindMaxTimeMS(60000);
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        controller.find(ctx, query("{'field':'field3','op':'>=','rvalue':0}"),
+                projection("{'field':'*','recursive':1}"), null, null, null);
+        Assert.assertEquals(1, ctx.getDocuments().size());
+        StreamingDocFinder finder = (StreamingDocFinder) ctx.getProperty(MongoCRUDController.PROP_FINDER);
+        Assert.assertEquals(5, finder.getBatchSize());
+        Assert.assertEquals(60000, finder.getCursorOptions().getMaxTimeMS());
+
+        // Request overrides the datasource
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        ctx.setProperty(MongoCRUDController.PROP_FIND_BATCH_SIZE, 2);
+        ctx.setProperty(MongoCRUDController.PROP_FIND_MAX_TIME_MS, "10000");
+        controller.find(ctx, query("{'field':'field3','op':'>=','rvalue':0}"),
+                projection("{'field':'*','recursive':1}"), null, null, null);
+        Assert.assertEquals(1, ctx.getDocuments().size());
+        finder = (StreamingDocFinder) ctx.getProperty(MongoCRUDController.PROP_FINDER);
+        Assert.assertEquals(2, finder.getBatchSize());
+        Assert.assertEquals(10000, finder.getCursorOptions().getMaxTimeMS());
+    }
+
+    @Test
+    public void operationMetricsTest() throws Exception {
+        JmxMetricsRegistry registry = new JmxMetricsRegistry(null);
+        registry.setCountBytes(true);
+        controller.setMetricsRegistry(registry);
+        EntityMetadata md = getMd("./testMetadata.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.INSERT);
+        ctx.add(md);
+        ctx.addDocument(new JsonDoc(loadJsonNode("./testdata1.json")));
+        controller.insert(ctx, projection("{'field':'_id'}"));
+
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        controller.find(ctx, query("{'field':'field3','op':'>=','rvalue':0}"),
+                projection("{'field':'*','recursive':1}"), null, null, null);
+        Assert.assertEquals(1, ctx.getDocuments().size());
+
+        OperationStats insertStats = registry.getStats(md.getName(), MongoCRUDController.OP_INSERT);
+        Assert.assertEquals(1, insertStats.getPhase(OperationMetrics.PHASE_TOTAL).getCount());
+        Assert.assertEquals(1, insertStats.getPhase(OperationMetrics.PHASE_TO_BSON).getCount());
+        Assert.assertEquals(1, insertStats.getPhase(OperationMetrics.PHASE_WRITE).getCount());
+        Assert.assertEquals(1, insertStats.getCounter(OperationMetrics.COUNT_WRITTEN));
+
+        OperationStats findStats = registry.getStats(md.getName(), MongoCRUDController.OP_FIND);
+        Assert.assertEquals(1, findStats.getPhase(OperationMetrics.PHASE_TOTAL).getCount());
+        Assert.assertEquals(1, findStats.getPhase(OperationMetrics.PHASE_TRANSLATE).getCount());
+        Assert.assertEquals(1, findStats.getPhase(OperationMetrics.PHASE_HYSTRIX).getCount());
+        Assert.assertEquals(1, findStats.getPhase(OperationMetrics.PHASE_FETCH).getCount());
+        Assert.assertEquals(1, findStats.getPhase(OperationMetrics.PHASE_TO_JSON).getCount());
+        Assert.assertEquals(1, findStats.getCounter(OperationMetrics.COUNT_READ));
+        Assert.assertTrue(findStats.getCounter(OperationMetrics.COUNT_BYTES) > 0);
+        Assert.assertTrue(findStats.getPhase(OperationMetrics.PHASE_TOTAL).getMaxMillis()
+                >= findStats.getPhase(OperationMetrics.PHASE_TRANSLATE).getMaxMillis());
+    }
+
     @Test
     public void fieldArrayComparisonTest() throws Exception {
         EntityMetadata md = getMd("./testMetadata.json");
@@ -771,6 +964,43 @@ public class MongoCRUDControllerTest extends AbstractMongoCrudTest {
         Assert.assertEquals(10, coll.find(null).count());
     }
 
+    @Test
+    public void deleteTest_serverSide() throws Exception {
+        EntityMetadata md = getMd("./testMetadata.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.INSERT);
+        ctx.add(md);
+        List<JsonDoc> docs = new ArrayList<>();
+        int numDocs = 20;
+        for (int i = 0; i < numDocs; i++) {
+            JsonDoc jsonDOc = new JsonDoc(loadJsonNode("./testdata1.json"));
+            jsonDOc.modify(new Path("field1"), nodeFactory.textNode("doc" + i), false);
+            jsonDOc.modify(new Path("field3"), nodeFactory.numberNode(i), false);
+            docs.add(jsonDOc);
+        }
+        ctx.addDocuments(docs);
+        controller.insert(ctx, projection("{'field':'_id'}"));
+        Assert.assertEquals(numDocs, coll.find(null).count());
+
+        settings.setServerSideDelete(true);
+
+        // Single remove
+        ctx = new TestCRUDOperationContext(CRUDOperation.DELETE);
+        ctx.add(md);
+        CRUDDeleteResponse del = controller.delete(ctx, query("{'field':'field3','op':'<','rvalue':5}"));
+        Assert.assertEquals(ServerSideDeleter.class, ctx.getProperty(MongoCRUDController.PROP_DELETER).getClass());
+        Assert.assertEquals(5, del.getNumDeleted());
+        Assert.assertTrue(ctx.getDocuments() == null || ctx.getDocuments().isEmpty());
+        Assert.assertEquals(numDocs - 5, coll.find(null).count());
+
+        // Batched remove
+        settings.setDeleteBatchSize(4);
+        ctx = new TestCRUDOperationContext(CRUDOperation.DELETE);
+        ctx.add(md);
+        del = controller.delete(ctx, query("{'field':'field3','op':'>','rvalue':8}"));
+        Assert.assertEquals(11, del.getNumDeleted());
+        Assert.assertEquals(4, coll.find(null).count());
+    }
+
     @Test
     public void elemMatchTest_Not() throws Exception {
         EntityMetadata md = getMd("./testMetadata5.json");
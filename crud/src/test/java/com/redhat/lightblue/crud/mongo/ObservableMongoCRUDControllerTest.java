@@ -0,0 +1,156 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import rx.Observable;
+
+import com.mongodb.DB;
+import com.redhat.lightblue.common.mongo.DBResolver;
+import com.redhat.lightblue.common.mongo.DatasourceSettings;
+import com.redhat.lightblue.common.mongo.DatasourceSettingsResolver;
+import com.redhat.lightblue.common.mongo.MongoDataStore;
+import com.redhat.lightblue.crud.CRUDDeleteResponse;
+import com.redhat.lightblue.crud.CRUDFindResponse;
+import com.redhat.lightblue.crud.CRUDInsertionResponse;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.CRUDOperationContext;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.query.Sort;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+public class ObservableMongoCRUDControllerTest extends AbstractMongoCrudTest {
+
+    private ObservableMongoCRUDController controller;
+    private ExecutorService executor;
+    private DBResolver resolver;
+
+    @Before
+    public void setup() throws Exception {
+        super.setup();
+
+        final DB dbx = db;
+        dbx.createCollection(COLL_NAME, null);
+
+        final DatasourceSettings settings = new DatasourceSettings();
+        executor = Executors.newFixedThreadPool(2);
+        resolver = new DatasourceSettingsResolver() {
+            @Override
+            public DB get(MongoDataStore store) {
+                return dbx;
+            }
+
+            @Override
+            public DatasourceSettings getSettings(MongoDataStore store) {
+                return settings;
+            }
+        };
+        controller = new ObservableMongoCRUDController(new MongoCRUDController(resolver), executor);
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void insertFindDelete() throws Exception {
+        EntityMetadata md = getMd("./testMetadata.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.INSERT);
+        ctx.add(md);
+        for (int i = 0; i < 20; i++) {
+            JsonDoc doc = new JsonDoc(loadJsonNode("./testdata1.json"));
+            doc.modify(new Path("field1"), nodeFactory.textNode("doc" + i), false);
+            doc.modify(new Path("field3"), nodeFactory.numberNode(i), false);
+            ctx.addDocument(doc);
+        }
+        CRUDInsertionResponse ins = controller.insert(ctx, projection("{'field':'_id'}")).toBlocking().single();
+        Assert.assertEquals(20, ins.getNumInserted());
+        Assert.assertTrue(ctx.getErrors() == null || ctx.getErrors().isEmpty());
+
+        // Two finds running at the same time
+        TestCRUDOperationContext ctx1 = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx1.add(md);
+        TestCRUDOperationContext ctx2 = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx2.add(md);
+        Observable<CRUDFindResponse> f1 = controller.find(ctx1, query("{'field':'field3','op':'<','rvalue':5}"),
+                projection("{'field':'*','recursive':1}"), null, null, null);
+        Observable<CRUDFindResponse> f2 = controller.find(ctx2, query("{'field':'field3','op':'>=','rvalue':5}"),
+                projection("{'field':'*','recursive':1}"), null, null, null);
+        Assert.assertEquals(5, f1.toBlocking().single().getSize());
+        Assert.assertEquals(15, f2.toBlocking().toFuture().get().getSize());
+        Assert.assertEquals(15, ctx2.getDocuments().size());
+
+        ctx = new TestCRUDOperationContext(CRUDOperation.DELETE);
+        ctx.add(md);
+        CRUDDeleteResponse del = controller.delete(ctx, query("{'field':'field3','op':'>','rvalue':2}")).toBlocking().single();
+        Assert.assertEquals(17, del.getNumDeleted());
+        Assert.assertEquals(3, coll.count());
+    }
+
+    @Test
+    public void rejected() throws Exception {
+        executor.shutdown();
+        EntityMetadata md = getMd("./testMetadata.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        try {
+            controller.find(ctx, query("{'field':'field3','op':'>','rvalue':2}"),
+                    projection("{'field':'*','recursive':1}"), null, null, null).toBlocking().single();
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+        }
+    }
+
+    @Test
+    public void operationThrowsError() throws Exception {
+        ObservableMongoCRUDController failing = new ObservableMongoCRUDController(new MongoCRUDController(resolver) {
+            @Override
+            public CRUDFindResponse find(CRUDOperationContext ctx,
+                                         QueryExpression query,
+                                         Projection projection,
+                                         Sort sort,
+                                         Long from,
+                                         Long to) {
+                throw new LinkageError("find");
+            }
+        }, executor);
+        EntityMetadata md = getMd("./testMetadata.json");
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        try {
+            failing.find(ctx, query("{'field':'field3','op':'>','rvalue':2}"),
+                    projection("{'field':'*','recursive':1}"), null, null, null).toBlocking().single();
+            Assert.fail();
+        } catch (LinkageError e) {
+            Assert.assertEquals("find", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.ReflectionException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OperationStatsTest {
+
+    @Test
+    public void bucketBoundsTest() {
+        for (long n : new long[]{0, 1, 7, 8, 9, 100, 1000, 123456789L, Long.MAX_VALUE / 2}) {
+            int index = OperationStats.Histogram.index(n);
+            Assert.assertTrue(OperationStats.Histogram.upperBound(index) >= n);
+            if (index > 0) {
+                Assert.assertTrue(OperationStats.Histogram.upperBound(index - 1) < n);
+            }
+        }
+    }
+
+    @Test
+    public void percentilesTest() {
+        OperationStats.Histogram h = new OperationStats.Histogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(i * 1000000L);
+        }
+        Assert.assertEquals(100, h.getCount());
+        Assert.assertEquals(50.5, h.getMeanMillis(), 0.001);
+        Assert.assertEquals(100.0, h.getMaxMillis(), 0.001);
+        double p50 = h.getPercentileMillis(50);
+        Assert.assertTrue(p50 >= 50 && p50 <= 50 * 1.125);
+        double p99 = h.getPercentileMillis(99);
+        Assert.assertTrue(p99 >= 99 && p99 <= 100);
+    }
+
+    @Test
+    public void attributesTest() throws Exception {
+        OperationStats stats = new OperationStats();
+        stats.recordTime(OperationMetrics.PHASE_TOTAL, 2000000L);
+        stats.count(OperationMetrics.COUNT_READ, 3);
+        stats.count(OperationMetrics.COUNT_READ, 2);
+        Assert.assertEquals(1L, stats.getAttribute("total.count"));
+        Assert.assertEquals(2.0, (Double) stats.getAttribute("total.maxMillis"), 0.001);
+        Assert.assertEquals(5L, stats.getAttribute(OperationMetrics.COUNT_READ));
+        Assert.assertEquals(6, stats.getMBeanInfo().getAttributes().length);
+        try {
+            stats.getAttribute("fetch.count");
+            Assert.fail();
+        } catch (AttributeNotFoundException e) {
+        }
+        try {
+            stats.invoke("clear", null, null);
+            Assert.fail();
+        } catch (ReflectionException e) {
+            Assert.assertTrue(e.getTargetException() instanceof NoSuchMethodException);
+        }
+        stats.invoke("reset", null, null);
+        Assert.assertNull(stats.getPhase(OperationMetrics.PHASE_TOTAL));
+        Assert.assertEquals(0, stats.getCounter(OperationMetrics.COUNT_READ));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.DBObject;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.QueryExpression;
+import com.redhat.lightblue.util.Error;
+
+public class QueryTemplateTest extends AbstractMongoCrudTest {
+
+    private TestCRUDOperationContext ctx;
+    private EntityMetadata md;
+    private Translator compiled;
+    private Translator interpreted;
+
+    @Before
+    public void setup() throws Exception {
+        super.setup();
+
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        md = getMd("./testMetadata.json");
+        ctx.add(md);
+        compiled = new Translator(ctx, nodeFactory, true);
+        interpreted = new Translator(ctx, nodeFactory, false);
+        QueryTemplate.invalidateAll();
+    }
+
+    private void assertSameTranslation(String q) throws Exception {
+        QueryExpression query = query(q);
+        Assert.assertEquals(interpreted.translate(md, query), compiled.translate(md, query));
+    }
+
+    @Test
+    public void sameShapeDifferentValues() throws Exception {
+        String q1 = "{'$and':[{'field':'field1','op':'=','rvalue':'a'},{'field':'field3','op':'>','rvalue':1}]}";
+        String q2 = "{'$and':[{'field':'field1','op':'=','rvalue':'b'},{'field':'field3','op':'>','rvalue':5}]}";
+        List<Object> l1 = new ArrayList<>();
+        List<Object> l2 = new ArrayList<>();
+        Assert.assertEquals(QueryTemplate.getShape(query(q1), l1), QueryTemplate.getShape(query(q2), l2));
+        Assert.assertEquals(2, l1.size());
+        Assert.assertNotEquals(l1, l2);
+
+        assertSameTranslation(q1);
+        String shape = "q:" + QueryTemplate.getShape(query(q1), new ArrayList<Object>());
+        QueryTemplate template = QueryTemplate.get(md, shape);
+        Assert.assertNotNull(template);
+
+        DBObject t2 = compiled.translate(md, query(q2));
+        Assert.assertSame(template, QueryTemplate.get(md, shape));
+        Assert.assertEquals(interpreted.translate(md, query(q2)), t2);
+    }
+
+    @Test
+    public void differentShapes() throws Exception {
+        Assert.assertNotEquals(QueryTemplate.getShape(query("{'field':'field1','op':'=','rvalue':'a'}"), new ArrayList<Object>()),
+                QueryTemplate.getShape(query("{'field':'field2','op':'=','rvalue':'a'}"), new ArrayList<Object>()));
+        Assert.assertNotEquals(QueryTemplate.getShape(query("{'field':'field1','op':'=','rvalue':'a'}"), new ArrayList<Object>()),
+                QueryTemplate.getShape(query("{'field':'field1','op':'!=','rvalue':'a'}"), new ArrayList<Object>()));
+    }
+
+    @Test
+    public void allExpressionTypes() throws Exception {
+        assertSameTranslation("{'field':'_id','op':'=','rvalue':'5463bd4ba7b8dd1a4b19e23e'}");
+        assertSameTranslation("{'field':'_id','op':'=','rvalue':'notanobjectid'}");
+        assertSameTranslation("{'field':'field3','op':'$in','values':[1,2,3]}");
+        assertSameTranslation("{'field':'field1','regex':'a.*','caseInsensitive':true}");
+        assertSameTranslation("{'array':'field6.nf5','contains':'$all','values':[1,2]}");
+        assertSameTranslation("{'array':'field6.nf6','contains':'$any','values':['a','b']}");
+        assertSameTranslation("{'array':'field6.nf6','contains':'$none','values':['a']}");
+        assertSameTranslation("{'array':'field7','elemMatch':{'field':'elemf3','op':'>','rvalue':4}}");
+        assertSameTranslation("{'$not':{'field':'field1','op':'=','rfield':'field2'}}");
+        assertSameTranslation("{'$or':[{'field':'field1','op':'$in','rfield':'field6.nf6'},{'field':'field5','op':'=','rvalue':true}]}");
+    }
+
+    @Test
+    public void regexIsAParameter() throws Exception {
+        String q1 = "{'field':'field1','regex':'a.*','caseInsensitive':true}";
+        String q2 = "{'field':'field1','regex':'b[0-9]+','caseInsensitive':true}";
+        List<Object> l1 = new ArrayList<>();
+        Assert.assertEquals(QueryTemplate.getShape(query(q1), l1), QueryTemplate.getShape(query(q2), new ArrayList<Object>()));
+        Assert.assertEquals(1, l1.size());
+        Assert.assertEquals("a.*", l1.get(0));
+        Assert.assertNotEquals(QueryTemplate.getShape(query(q1), new ArrayList<Object>()),
+                QueryTemplate.getShape(query("{'field':'field1','regex':'a.*'}"), new ArrayList<Object>()));
+
+        assertSameTranslation(q1);
+        assertSameTranslation(q2);
+        Assert.assertEquals(1, QueryTemplate.size());
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        for (int i = 0; i < QueryTemplate.MAX_TEMPLATES + 10; i++) {
+            QueryTemplate.put(md, "shape" + i, null);
+        }
+        Assert.assertEquals(QueryTemplate.MAX_TEMPLATES, QueryTemplate.size());
+        // Least recently used templates are removed first
+        Assert.assertNull(QueryTemplate.get(md, "shape0"));
+        Assert.assertNotNull(QueryTemplate.get(md, "shape" + (QueryTemplate.MAX_TEMPLATES + 9)));
+    }
+
+    @Test
+    public void invalidValueIsReportedAtBind() throws Exception {
+        // Template is cached by the first query
+        compiled.translate(md, query("{'field':'field3','op':'$in','values':[1,2]}"));
+        try {
+            compiled.translate(md, query("{'field':'field3','op':'$in','values':[]}"));
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(MongoCrudConstants.ERR_INVALID_OBJECT, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void projectionIsCached() throws Exception {
+        QueryExpression q = query("{'field':'field1','op':'=','rvalue':'a'}");
+        DBObject p1 = compiled.translateProjection(md, projection("{'field':'field3'}"), q, null);
+        DBObject p2 = compiled.translateProjection(md, projection("{'field':'field3'}"),
+                query("{'field':'field1','op':'=','rvalue':'b'}"), null);
+        Assert.assertEquals(interpreted.translateProjection(md, projection("{'field':'field3'}"), q, null), p1);
+        Assert.assertEquals(p1, p2);
+        Assert.assertNotSame(p1, p2);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.ReadPreference;
+import com.redhat.lightblue.common.mongo.DatasourceSettings;
+import com.redhat.lightblue.metadata.EntityMetadata;
+
+public class SlowOperationRecorderTest extends AbstractMongoCrudTest {
+
+    private EntityMetadata md;
+    private DatasourceSettings settings;
+
+    @Before
+    public void setup() throws Exception {
+        super.setup();
+        md = getMd("./testMetadata.json");
+        settings = new DatasourceSettings();
+        settings.setSlowOperationThresholdMS(1000);
+    }
+
+    private long secondsAgo(int n) {
+        return System.nanoTime() - TimeUnit.SECONDS.toNanos(n);
+    }
+
+    @Test
+    public void notRecordedWithoutThreshold() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder(10);
+        Assert.assertNull(recorder.start(null, md, MongoCRUDController.OP_FIND, new DatasourceSettings(), 0));
+    }
+
+    @Test
+    public void recordSlowOperation() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder(10);
+        JmxMetricsRegistry registry = new JmxMetricsRegistry(null);
+        SlowOperationRecorder.Capture capture = recorder.start(registry, md, MongoCRUDController.OP_FIND, settings, secondsAgo(2));
+        capture.setQuery(coll, new BasicDBObject("field1", "x"), new BasicDBObject("field2", 1), null, null);
+        capture.getMetrics().record(OperationMetrics.PHASE_FETCH, TimeUnit.MILLISECONDS.toNanos(1500));
+        capture.getMetrics().count(OperationMetrics.COUNT_READ, 3);
+        recorder.complete(capture);
+
+        List<SlowOperation> ops = recorder.getOperations();
+        Assert.assertEquals(1, ops.size());
+        SlowOperation op = ops.get(0);
+        Assert.assertEquals(md.getName(), op.getEntity());
+        Assert.assertEquals(md.getVersion().getValue(), op.getVersion());
+        Assert.assertEquals(MongoCRUDController.OP_FIND, op.getOperation());
+        Assert.assertEquals(coll.getFullName(), op.getCollection());
+        Assert.assertTrue(op.getDurationMS() >= 2000);
+        Assert.assertTrue(op.getQuery().contains("field1"));
+        Assert.assertTrue(op.getSort().contains("field2"));
+        Assert.assertNull(op.getProjection());
+        Assert.assertEquals(1500.0, op.getPhases().get(OperationMetrics.PHASE_FETCH), 0.001);
+        Assert.assertEquals(Long.valueOf(3), op.getCounters().get(OperationMetrics.COUNT_READ));
+        Assert.assertTrue(op.toDBObject().get("counters").toString().contains(OperationMetrics.COUNT_READ));
+        Assert.assertTrue(recorder.getSlowOperations()[0].contains(OperationMetrics.COUNT_READ));
+        Assert.assertEquals(1, recorder.getSlowOperations().length);
+
+        // Phase times and counters are forwarded to the registry
+        Assert.assertEquals(1, registry.getStats(md.getName(), MongoCRUDController.OP_FIND).getPhase(OperationMetrics.PHASE_FETCH).getCount());
+        Assert.assertEquals(3, registry.getStats(md.getName(), MongoCRUDController.OP_FIND).getCounter(OperationMetrics.COUNT_READ));
+    }
+
+    @Test
+    public void fastOperationNotRecorded() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder(10);
+        SlowOperationRecorder.Capture capture = recorder.start(null, md, MongoCRUDController.OP_DELETE, settings, 0);
+        capture.setQuery(coll, new BasicDBObject("field1", "x"), null, null, ReadPreference.primary());
+        recorder.complete(capture);
+        Assert.assertTrue(recorder.getOperations().isEmpty());
+    }
+
+    @Test
+    public void ringBuffer() {
+        SlowOperationRecorder recorder = new SlowOperationRecorder(2);
+        for (int i = 0; i < 3; i++) {
+            SlowOperationRecorder.Capture capture = recorder.start(null, md, MongoCRUDController.OP_UPDATE, settings, secondsAgo(2));
+            capture.setQuery(coll, new BasicDBObject("field3", i), null, null, ReadPreference.primary());
+            recorder.complete(capture);
+        }
+        List<SlowOperation> ops = recorder.getOperations();
+        Assert.assertEquals(2, ops.size());
+        Assert.assertEquals(3, recorder.getRecordedCount());
+        // Most recent first
+        Assert.assertTrue(ops.get(0).getQuery().contains("2"));
+        Assert.assertTrue(ops.get(1).getQuery().contains("1"));
+        recorder.clear();
+        Assert.assertTrue(recorder.getOperations().isEmpty());
+        Assert.assertEquals(0, recorder.getRecordedCount());
+    }
+}
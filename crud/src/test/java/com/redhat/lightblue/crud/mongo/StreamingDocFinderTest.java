@@ -0,0 +1,275 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.crud.DocCtx;
+import com.redhat.lightblue.eval.Projector;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.query.Projection;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.Path;
+
+public class StreamingDocFinderTest extends AbstractMongoCrudTest {
+
+    private TestCRUDOperationContext ctx;
+    private Translator translator;
+    private EntityMetadata md;
+
+    @Before
+    public void setup() throws Exception {
+        super.setup();
+
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        md = getMd("./testMetadata.json");
+        ctx.add(md);
+        translator = new Translator(ctx, nodeFactory);
+    }
+
+    private void insert(String id, String field1) {
+        coll.insert(new BasicDBObject("_id", id).append("objectType", "test").append("field1", field1));
+    }
+
+    @Test
+    public void findAllInSmallBatches() throws Exception {
+        for (int i = 0; i < 7; i++) {
+            insert("streamAll" + i, "value" + i);
+        }
+        StreamingDocFinder finder = new StreamingDocFinder(translator, null, 2, DocFinder.CountMode.exact);
+
+        long count = finder.find(ctx, coll, null, null, null, null, null);
+
+        Assert.assertEquals(7, count);
+        Assert.assertEquals(7, ctx.getDocumentsWithoutErrors().size());
+        for (DocCtx doc : ctx.getDocuments()) {
+            Assert.assertEquals(CRUDOperation.FIND, doc.getCRUDOperationPerformed());
+        }
+    }
+
+    @Test
+    public void findSortSkipLimitAndProject() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            insert("streamSort" + i, "value" + i);
+        }
+        Projector projector = Projector.getInstance(projection("{'field':'_id'}"), md);
+        StreamingDocFinder finder = new StreamingDocFinder(translator, projector, 1, DocFinder.CountMode.exact);
+
+        DBObject sort = new BasicDBObject("_id", -1);
+        long count = finder.find(ctx, coll, null, null, sort, 1l, 2l);
+
+        Assert.assertEquals(5, count);
+        Assert.assertEquals(2, ctx.getDocuments().size());
+        Assert.assertEquals("streamSort3", ctx.getDocuments().get(0).getOutputDocument().get(new Path("_id")).asText());
+        Assert.assertEquals("streamSort2", ctx.getDocuments().get(1).getOutputDocument().get(new Path("_id")).asText());
+        // Projected out
+        Assert.assertNull(ctx.getDocuments().get(0).getOutputDocument().get(new Path("field1")));
+        // Still available in the found document
+        Assert.assertEquals("value3", ctx.getDocuments().get(0).get(new Path("field1")).asText());
+    }
+
+    @Test
+    public void pagedCountModes() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            insert("streamCount" + i, i < 3 ? "match" : "nomatch");
+        }
+        DBObject query = new BasicDBObject("field1", "match");
+
+        // First page, end of result set not reached
+        long count = new StreamingDocFinder(translator, null, 2, DocFinder.CountMode.exact).
+                find(ctx, coll, query, null, null, 0l, 1l);
+        Assert.assertEquals(3, count);
+
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        count = new StreamingDocFinder(translator, null, 2, DocFinder.CountMode.none).
+                find(ctx, coll, query, null, null, 0l, 1l);
+        Assert.assertEquals(-1, count);
+        Assert.assertEquals(2, ctx.getDocuments().size());
+
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        count = new StreamingDocFinder(translator, null, 2, DocFinder.CountMode.estimate).
+                find(ctx, coll, query, null, null, 0l, 1l);
+        Assert.assertEquals(5, count);
+
+        // Last page, size is known without counting
+        ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        ctx.add(md);
+        count = new StreamingDocFinder(translator, null, 2, DocFinder.CountMode.none).
+                find(ctx, coll, query, null, null, 2l, 3l);
+        Assert.assertEquals(3, count);
+        Assert.assertEquals(1, ctx.getDocuments().size());
+    }
+
+    @Test
+    public void parallelTranslateAndProject() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            insert("streamParallel" + (i < 10 ? "0" : "") + i, "value" + i);
+        }
+        Projection projection = projection("{'field':'_id'}");
+        StreamingDocFinder finder = new StreamingDocFinder(translator, Projector.getInstance(projection, md), 7,
+                DocFinder.CountMode.exact);
+        finder.setParallelProcessor(new ParallelDocProcessor(new ForkJoinPool(4), 30), projection, md);
+
+        long count = finder.find(ctx, coll, null, null, new BasicDBObject("_id", 1), null, null);
+
+        Assert.assertEquals(100, count);
+        Assert.assertEquals(100, ctx.getDocuments().size());
+        for (int i = 0; i < 100; i++) {
+            DocCtx doc = ctx.getDocuments().get(i);
+            String id = "streamParallel" + (i < 10 ? "0" : "") + i;
+            Assert.assertEquals(CRUDOperation.FIND, doc.getCRUDOperationPerformed());
+            Assert.assertEquals(id, doc.getOutputDocument().get(new Path("_id")).asText());
+            Assert.assertNull(doc.getOutputDocument().get(new Path("field1")));
+            Assert.assertEquals("value" + i, doc.get(new Path("field1")).asText());
+        }
+    }
+
+    @Test
+    public void keysetPagination() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            insert("streamKeyset" + i, i < 2 ? "a" : "b");
+        }
+        DBObject sort = new BasicDBObject("field1", -1);
+        List<String> ids = new ArrayList<>();
+        String continuation = "";
+        int pages = 0;
+        while (continuation != null) {
+            ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+            ctx.add(md);
+            StreamingDocFinder finder = new StreamingDocFinder(translator, null, 2, DocFinder.CountMode.exact);
+            finder.setContinuation(continuation);
+            // from is ignored
+            long count = finder.find(ctx, coll, null, null, sort, 10l, 11l);
+            Assert.assertEquals(5 - ids.size(), count);
+            for (DocCtx doc : ctx.getDocuments()) {
+                ids.add(doc.get(new Path("_id")).asText());
+            }
+            continuation = finder.getNextContinuation();
+            pages++;
+        }
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(Arrays.asList("streamKeyset2", "streamKeyset3", "streamKeyset4", "streamKeyset0", "streamKeyset1"), ids);
+    }
+
+    @Test
+    public void keysetPaginationWithNullSortKey() throws Exception {
+        insert("streamNull0", null);
+        insert("streamNull1", "a");
+        insert("streamNull2", null);
+        for (int dir : new int[]{1, -1}) {
+            DBObject sort = new BasicDBObject("field1", dir);
+            List<String> ids = new ArrayList<>();
+            String continuation = "";
+            while (continuation != null) {
+                ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+                ctx.add(md);
+                StreamingDocFinder finder = new StreamingDocFinder(translator, null, 1, DocFinder.CountMode.none);
+                finder.setContinuation(continuation);
+                finder.find(ctx, coll, null, null, sort, 0l, 0l);
+                for (DocCtx doc : ctx.getDocuments()) {
+                    ids.add(doc.get(new Path("_id")).asText());
+                }
+                continuation = finder.getNextContinuation();
+            }
+            if (dir > 0) {
+                Assert.assertEquals(Arrays.asList("streamNull0", "streamNull2", "streamNull1"), ids);
+            } else {
+                Assert.assertEquals(Arrays.asList("streamNull1", "streamNull0", "streamNull2"), ids);
+            }
+        }
+    }
+
+    @Test
+    public void invalidContinuation() throws Exception {
+        insert("streamInvalid0", "a");
+        StreamingDocFinder finder = new StreamingDocFinder(translator, null, 1, DocFinder.CountMode.exact);
+        finder.setContinuation("");
+        finder.find(ctx, coll, null, null, new BasicDBObject("field1", 1), 0l, 0l);
+        String continuation = finder.getNextContinuation();
+        Assert.assertNotNull(continuation);
+
+        // Token created for a different sort
+        finder.setContinuation(continuation);
+        try {
+            finder.find(ctx, coll, null, null, new BasicDBObject("field1", -1), 0l, 0l);
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(MongoCrudConstants.ERR_INVALID_CONTINUATION, e.getErrorCode());
+        }
+
+        finder.setContinuation("not a token");
+        try {
+            finder.find(ctx, coll, null, null, null, 0l, 0l);
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(MongoCrudConstants.ERR_INVALID_CONTINUATION, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void forgedContinuation() throws Exception {
+        insert("streamForged0", "a");
+        StreamingDocFinder finder = new StreamingDocFinder(translator, null, 1, DocFinder.CountMode.exact);
+        // Operator in a token value
+        finder.setContinuation(token("{'k':['field1:1','_id:1'],'v':[{'$where':'sleep(1000)'},'x']}"));
+        try {
+            finder.find(ctx, coll, null, null, new BasicDBObject("field1", 1), 0l, 0l);
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(MongoCrudConstants.ERR_INVALID_CONTINUATION, e.getErrorCode());
+        }
+
+        // Token keys are not the sort keys
+        finder.setContinuation(token("{'k':['field2:1','_id:1'],'v':['a','x']}"));
+        try {
+            finder.find(ctx, coll, null, null, new BasicDBObject("field1", 1), 0l, 0l);
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(MongoCrudConstants.ERR_INVALID_CONTINUATION, e.getErrorCode());
+        }
+
+        // A well formed token is accepted
+        finder.setContinuation(token("{'k':['field1:1','_id:1'],'v':[null,'x']}"));
+        finder.find(ctx, coll, null, null, new BasicDBObject("field1", 1), 0l, 0l);
+    }
+
+    private static String token(String json) {
+        return DatatypeConverter.printBase64Binary(json.replace('\'', '"').getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBatchSize() {
+        new StreamingDocFinder(translator, null, 0, DocFinder.CountMode.exact);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.crud.mongo;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.redhat.lightblue.crud.CRUDOperation;
+import com.redhat.lightblue.metadata.EntityMetadata;
+import com.redhat.lightblue.metadata.Version;
+import com.redhat.lightblue.util.Error;
+import com.redhat.lightblue.util.JsonDoc;
+import com.redhat.lightblue.util.Path;
+
+public class TranslationPlanTest extends AbstractMongoCrudTest {
+
+    private Translator compiled;
+    private Translator interpreted;
+    private EntityMetadata md;
+
+    @Before
+    public void setup() throws Exception {
+        super.setup();
+
+        TestCRUDOperationContext ctx = new TestCRUDOperationContext(CRUDOperation.FIND);
+        md = getMd("./testMetadata.json");
+        ctx.add(md);
+        compiled = new Translator(ctx, nodeFactory, true);
+        interpreted = new Translator(ctx, nodeFactory, false);
+    }
+
+    @Test
+    public void planIsReusedForSameVersion() throws Exception {
+        TranslationPlan plan = TranslationPlan.get(md);
+        Assert.assertSame(plan, TranslationPlan.get(md));
+        // Reparsed metadata of the same version uses the cached plan
+        Assert.assertSame(plan, TranslationPlan.get(getMd("./testMetadata.json")));
+        TranslationPlan.invalidate(md.getName());
+        Assert.assertNotSame(plan, TranslationPlan.get(md));
+    }
+
+    @Test
+    public void cacheIsBounded() throws Exception {
+        TranslationPlan.invalidateAll();
+        TranslationPlan first = TranslationPlan.get(md);
+        EntityMetadata x = getMd("./testMetadata.json");
+        for (int i = 0; i < TranslationPlan.MAX_PLANS; i++) {
+            x.setVersion(new Version("1." + i, null, null));
+            TranslationPlan.get(x);
+        }
+        Assert.assertEquals(TranslationPlan.MAX_PLANS, TranslationPlan.size());
+        // The least recently used plan is evicted
+        Assert.assertNotSame(first, TranslationPlan.get(md));
+    }
+
+    @Test
+    public void toBsonSameAsInterpreted() throws Exception {
+        JsonDoc doc = new JsonDoc(json(loadResource("./testdata1.json")));
+        DBObject expected = interpreted.toBson(doc);
+        DBObject actual = compiled.toBson(doc);
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void toJsonSameAsInterpreted() throws Exception {
+        JsonDoc doc = new JsonDoc(json(loadResource("./testdata1.json")));
+        DBObject bson = interpreted.toBson(doc);
+        Assert.assertEquals(interpreted.toJson(bson).getRoot(), compiled.toJson(bson).getRoot());
+    }
+
+    @Test
+    public void nullObjectAndArray() throws Exception {
+        JsonDoc doc = new JsonDoc(json(loadResource("./testdata1.json")));
+        doc.modify(new Path("field6"), nodeFactory.nullNode(), true);
+        doc.modify(new Path("field7"), nodeFactory.nullNode(), true);
+        DBObject bdoc = compiled.toBson(doc);
+        Assert.assertTrue(bdoc.containsField("field6"));
+        Assert.assertNull(bdoc.get("field6"));
+        Assert.assertTrue(bdoc.containsField("field7"));
+        Assert.assertNull(bdoc.get("field7"));
+
+        BasicDBObject obj = new BasicDBObject("objectType", "test");
+        Assert.assertEquals(interpreted.toJson(obj).getRoot(), compiled.toJson(obj).getRoot());
+    }
+
+    @Test
+    public void valueInObjectArray() throws Exception {
+        JsonDoc doc = new JsonDoc(json(loadResource("./testdata1.json")));
+        doc.modify(new Path("field7.0"), nodeFactory.textNode("value"), true);
+        DBObject expected = interpreted.toBson(doc);
+        DBObject actual = compiled.toBson(doc);
+        Assert.assertEquals(expected, actual);
+        Assert.assertNull(((List<?>) actual.get("field7")).get(0));
+    }
+
+    @Test
+    public void invalidField() throws Exception {
+        JsonDoc doc = new JsonDoc(json(loadResource("./testdata1.json")));
+        doc.modify(new Path("field6"), nodeFactory.textNode("value"), true);
+        try {
+            compiled.toBson(doc);
+            Assert.fail();
+        } catch (Error e) {
+            Assert.assertEquals(Translator.ERR_INVALID_FIELD, e.getErrorCode());
+        }
+    }
+}
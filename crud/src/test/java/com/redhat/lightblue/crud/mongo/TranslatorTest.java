@@ -23,6 +23,7 @@ import com.fasterxml.jackson.databind.node.NullNode;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
 import com.mongodb.DBObject;
 import com.mongodb.BasicDBObject;
+import com.mongodb.util.JSON;
 import com.redhat.lightblue.crud.CRUDOperation;
 import com.redhat.lightblue.metadata.EntityMetadata;
 import com.redhat.lightblue.query.UpdateExpression;
@@ -193,6 +194,37 @@ public class TranslatorTest extends AbstractMongoCrudTest {
                             obj.get("$where").toString().trim());
     }
 
+    @Test
+    public void translateExprComparisons() throws Exception {
+        translator.setExprComparisons(true);
+        // Ordering comparisons require both fields to be non-null
+        DBObject obj = translator.translate(md, query("{'field':'field3','op':'<','rfield':'field6.nf3'}"));
+        Assert.assertEquals((DBObject) JSON.parse("{'$expr':{'$and':[{'$gt':['$field3',null]},{'$gt':['$field6.nf3',null]},"
+                + "{'$lt':['$field3','$field6.nf3']}]}}"), obj);
+
+        obj = translator.translate(md, query("{'field':'field3','op':'>=','rfield':'field6.nf3'}"));
+        Assert.assertEquals((DBObject) JSON.parse("{'$expr':{'$and':[{'$gt':['$field3',null]},{'$gt':['$field6.nf3',null]},"
+                + "{'$gte':['$field3','$field6.nf3']}]}}"), obj);
+
+        // Equality treats missing fields as null
+        obj = translator.translate(md, query("{'field':'field3','op':'!=','rfield':'field6.nf3'}"));
+        Assert.assertEquals((DBObject) JSON.parse("{'$expr':{'$ne':[{'$ifNull':['$field3',null]},{'$ifNull':['$field6.nf3',null]}]}}"), obj);
+
+        obj = translator.translate(md, query("{'field':'field1','op':'$in','rfield':'field6.nf6'}"));
+        Assert.assertEquals((DBObject) JSON.parse("{'$expr':{'$in':[{'$ifNull':['$field1',null]},{'$ifNull':['$field6.nf6',[]]}]}}"), obj);
+
+        obj = translator.translate(md, query("{'field':'field1','op':'$nin','rfield':'field6.nf6'}"));
+        Assert.assertEquals((DBObject) JSON.parse("{'$expr':{'$not':[{'$in':[{'$ifNull':['$field1',null]},{'$ifNull':['$field6.nf6',[]]}]}]}}"), obj);
+
+        // Fields in arrays fall back to $where
+        obj = translator.translate(md, query("{'field':'field7.*.elemf1','op':'=','rfield':'field7.*.elemf2'}"));
+        Assert.assertNotNull(obj.get("$where"));
+        obj = translator.translate(md, query("{'field':'field6.nf5','op':'=','rfield':'field6.nf5'}"));
+        Assert.assertNotNull(obj.get("$where"));
+        obj = translator.translate(md, query("{'array':'field7','elemMatch':{'field':'elemf1','op':'=','rfield':'elemf2'}}"));
+        Assert.assertNotNull(((DBObject) ((DBObject) obj.get("field7")).get("$elemMatch")).get("$where"));
+    }
+
     @Test
     public void createIdFrom_null() {
         Object idObj = Translator.createIdFrom(null);
@@ -25,10 +25,22 @@ import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.HystrixCommandKey;
 import com.netflix.hystrix.HystrixThreadPoolKey;
 import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixThreadPoolProperties;
 import com.netflix.hystrix.exception.HystrixBadRequestException;
 
 /**
- * The groupkey for all mongodb commands are "mongodb"
+ * The groupkey for all mongodb commands are "mongodb". If Hystrix settings are
+ * registered for the client of the collection, the command and thread pool
+ * keys and properties come from those settings, see
+ * DatasourceCommandSettings.
+ *
+ * Commands run on the Hystrix thread pool by default. Cheap commands, such as
+ * lookups by _id, can be created with SEMAPHORE isolation instead. Those run on
+ * the calling thread, without the thread handoff, and still go through the
+ * circuit breaker and the Hystrix metrics. Semaphore isolated commands use the
+ * command key of the command type followed by ":semaphore", so their
+ * properties and metrics are separate from the thread isolated commands of
+ * the same type.
  *
  * @author nmalik
  */
@@ -39,6 +51,17 @@ public abstract class AbstractMongoCommand<T> extends HystrixCommand<T> {
      */
     public static final String GROUPKEY = "mongodb";
 
+    /**
+     * Suffix of the command keys of semaphore isolated commands
+     */
+    public static final String SEMAPHORE_SUFFIX = ":semaphore";
+
+    /**
+     * Default maximum number of concurrent semaphore isolated commands of a
+     * command key
+     */
+    public static final int DEFAULT_SEMAPHORE_MAX_CONCURRENT_REQUESTS = 100;
+
     private final DBCollection collection;
 
     /**
@@ -48,12 +71,72 @@ public abstract class AbstractMongoCommand<T> extends HystrixCommand<T> {
      * @param collection REQUIRED
      */
     public AbstractMongoCommand(String commandKey, DBCollection collection) {
-        super(HystrixCommand.Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(GROUPKEY)).
-                andCommandKey(HystrixCommandKey.Factory.asKey(GROUPKEY + ":" + commandKey)).
-                andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(GROUPKEY)));
+        this(commandKey, collection, null);
+    }
+
+    /**
+     * @param commandKey REQUIRED
+     * @param collection REQUIRED
+     * @param isolation OPTIONAL isolation strategy of the command, defaults
+     * to THREAD. The isolation strategy in the datasource settings overrides
+     * this value.
+     */
+    public AbstractMongoCommand(String commandKey, DBCollection collection,
+                                HystrixCommandProperties.ExecutionIsolationStrategy isolation) {
+        super(getSetter(commandKey, DatasourceCommandSettings.get(collection), isolation));
         this.collection = collection;
     }
 
+    /**
+     * Returns the Hystrix setter for a command
+     *
+     * @param commandKey The command key
+     * @param dsSettings Optional settings of the datasource
+     * @param isolation Optional isolation strategy
+     */
+    static HystrixCommand.Setter getSetter(String commandKey,
+                                           DatasourceCommandSettings dsSettings,
+                                           HystrixCommandProperties.ExecutionIsolationStrategy isolation) {
+        HystrixCommandProperties.Setter commandProperties = HystrixCommandProperties.Setter();
+        String key = commandKey;
+        if (isolation == HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE) {
+            key = commandKey + SEMAPHORE_SUFFIX;
+            commandProperties.withExecutionIsolationStrategy(isolation).
+                    withExecutionIsolationSemaphoreMaxConcurrentRequests(DEFAULT_SEMAPHORE_MAX_CONCURRENT_REQUESTS);
+        }
+        if (dsSettings == null) {
+            return HystrixCommand.Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(GROUPKEY)).
+                    andCommandKey(HystrixCommandKey.Factory.asKey(GROUPKEY + ":" + key)).
+                    andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(GROUPKEY)).
+                    andCommandPropertiesDefaults(commandProperties);
+        }
+        CommandSettings settings = dsSettings.getCommandSettings(commandKey);
+        String threadPoolKey = settings.getThreadPoolKey() == null ? GROUPKEY + ":" + dsSettings.getName() : settings.getThreadPoolKey();
+
+        if (settings.getIsolation() != null) {
+            commandProperties.withExecutionIsolationStrategy(settings.getIsolation());
+        }
+        if (settings.getTimeoutMS() != null) {
+            commandProperties.withExecutionTimeoutInMilliseconds(settings.getTimeoutMS());
+        }
+        if (settings.getMaxConcurrentRequests() != null) {
+            commandProperties.withExecutionIsolationSemaphoreMaxConcurrentRequests(settings.getMaxConcurrentRequests());
+        }
+        HystrixThreadPoolProperties.Setter threadPoolProperties = HystrixThreadPoolProperties.Setter();
+        if (settings.getPoolSize() != null) {
+            threadPoolProperties.withCoreSize(settings.getPoolSize());
+        }
+        if (settings.getQueueSize() != null) {
+            threadPoolProperties.withMaxQueueSize(settings.getQueueSize()).
+                    withQueueSizeRejectionThreshold(settings.getQueueSize());
+        }
+        return HystrixCommand.Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(GROUPKEY)).
+                andCommandKey(HystrixCommandKey.Factory.asKey(GROUPKEY + ":" + dsSettings.getName() + ":" + key)).
+                andThreadPoolKey(HystrixThreadPoolKey.Factory.asKey(threadPoolKey)).
+                andCommandPropertiesDefaults(commandProperties).
+                andThreadPoolPropertiesDefaults(threadPoolProperties);
+    }
+
     protected DBCollection getDBCollection() {
         return collection;
     }
@@ -0,0 +1,46 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.hystrix;
+
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DBCollection;
+import com.mongodb.WriteConcern;
+
+/**
+ * Executes a bulk write operation. The bulk write operation must be
+ * initialized from the same collection. A failure of some of the writes is
+ * reported as a BulkWriteException, which contains the errors of the
+ * individual writes.
+ */
+public class BulkWriteCommand extends AbstractMongoCommand<BulkWriteResult> {
+    private final BulkWriteOperation bulk;
+    private final WriteConcern concern;
+
+    public BulkWriteCommand(DBCollection collection, BulkWriteOperation bulk, WriteConcern concern) {
+        super(BulkWriteCommand.class.getSimpleName(), collection);
+        this.bulk = bulk;
+        this.concern = concern;
+    }
+
+    @Override
+    protected BulkWriteResult runMongoCommand() {
+        return bulk.execute(concern);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.hystrix;
+
+import java.io.Serializable;
+
+import com.netflix.hystrix.HystrixCommandProperties;
+
+/**
+ * Hystrix settings of a mongo command. Null values are not set, so the Hystrix
+ * defaults, or the settings they are merged into, are used.
+ */
+public class CommandSettings implements Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    private String threadPoolKey;
+    private HystrixCommandProperties.ExecutionIsolationStrategy isolation;
+    private Integer poolSize;
+    private Integer queueSize;
+    private Integer timeoutMS;
+    private Integer maxConcurrentRequests;
+
+    /**
+     * The key of the thread pool running the commands
+     */
+    public String getThreadPoolKey() {
+        return threadPoolKey;
+    }
+
+    /**
+     * The key of the thread pool running the commands
+     */
+    public void setThreadPoolKey(String threadPoolKey) {
+        this.threadPoolKey = threadPoolKey;
+    }
+
+    /**
+     * THREAD runs the commands on a thread pool, SEMAPHORE runs the commands
+     * on the calling thread, limiting the number of concurrent calls
+     */
+    public HystrixCommandProperties.ExecutionIsolationStrategy getIsolation() {
+        return isolation;
+    }
+
+    /**
+     * THREAD runs the commands on a thread pool, SEMAPHORE runs the commands
+     * on the calling thread, limiting the number of concurrent calls
+     */
+    public void setIsolation(HystrixCommandProperties.ExecutionIsolationStrategy isolation) {
+        this.isolation = isolation;
+    }
+
+    /**
+     * Number of threads of the thread pool
+     */
+    public Integer getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Number of threads of the thread pool
+     */
+    public void setPoolSize(Integer poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Number of commands waiting for a thread before new commands are
+     * rejected
+     */
+    public Integer getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Number of commands waiting for a thread before new commands are
+     * rejected
+     */
+    public void setQueueSize(Integer queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Execution timeout of the commands in milliseconds
+     */
+    public Integer getTimeoutMS() {
+        return timeoutMS;
+    }
+
+    /**
+     * Execution timeout of the commands in milliseconds
+     */
+    public void setTimeoutMS(Integer timeoutMS) {
+        this.timeoutMS = timeoutMS;
+    }
+
+    /**
+     * Maximum number of concurrent commands with SEMAPHORE isolation
+     */
+    public Integer getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Maximum number of concurrent commands with SEMAPHORE isolation
+     */
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Returns the settings with the non-null values of this object overriding
+     * the values of the given settings
+     *
+     * @param defaults Optional defaults
+     */
+    public CommandSettings merge(CommandSettings defaults) {
+        CommandSettings ret = new CommandSettings();
+        if (defaults != null) {
+            ret.threadPoolKey = defaults.threadPoolKey;
+            ret.isolation = defaults.isolation;
+            ret.poolSize = defaults.poolSize;
+            ret.queueSize = defaults.queueSize;
+            ret.timeoutMS = defaults.timeoutMS;
+            ret.maxConcurrentRequests = defaults.maxConcurrentRequests;
+        }
+        if (threadPoolKey != null) {
+            ret.threadPoolKey = threadPoolKey;
+        }
+        if (isolation != null) {
+            ret.isolation = isolation;
+        }
+        if (poolSize != null) {
+            ret.poolSize = poolSize;
+        }
+        if (queueSize != null) {
+            ret.queueSize = queueSize;
+        }
+        if (timeoutMS != null) {
+            ret.timeoutMS = timeoutMS;
+        }
+        if (maxConcurrentRequests != null) {
+            ret.maxConcurrentRequests = maxConcurrentRequests;
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "threadPoolKey:" + threadPoolKey + " isolation:" + isolation + " poolSize:" + poolSize
+                + " queueSize:" + queueSize + " timeoutMS:" + timeoutMS
+                + " maxConcurrentRequests:" + maxConcurrentRequests;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.hystrix;
+
+import java.io.Serializable;
+
+/**
+ * Options applied to the cursors returned by FindCommand
+ */
+public class CursorOptions implements Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    private int batchSize;
+    private long maxTimeMS;
+    private boolean noCursorTimeout;
+    private boolean partial;
+    private boolean exhaust;
+
+    /**
+     * Number of documents returned by the server in one batch. If 0, the
+     * server default is used.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of documents returned by the server in one batch. If 0, the
+     * server default is used.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Maximum time in milliseconds the server spends executing the query. If
+     * 0 or less, there is no time limit. The limit is independent of the
+     * Hystrix execution timeout of the find command: the command only creates
+     * the cursor, and the query runs when the cursor is iterated, after the
+     * command returns.
+     */
+    public long getMaxTimeMS() {
+        return maxTimeMS;
+    }
+
+    /**
+     * Maximum time in milliseconds the server spends executing the query. If
+     * 0 or less, there is no time limit. The limit is independent of the
+     * Hystrix execution timeout of the find command: the command only creates
+     * the cursor, and the query runs when the cursor is iterated, after the
+     * command returns.
+     */
+    public void setMaxTimeMS(long maxTimeMS) {
+        this.maxTimeMS = maxTimeMS;
+    }
+
+    /**
+     * If true, the server does not time out idle cursors. Such cursors must be
+     * closed by the client.
+     */
+    public boolean isNoCursorTimeout() {
+        return noCursorTimeout;
+    }
+
+    /**
+     * If true, the server does not time out idle cursors. Such cursors must be
+     * closed by the client.
+     */
+    public void setNoCursorTimeout(boolean noCursorTimeout) {
+        this.noCursorTimeout = noCursorTimeout;
+    }
+
+    /**
+     * If true, a sharded cluster returns partial results instead of an error
+     * when some shards are down
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * If true, a sharded cluster returns partial results instead of an error
+     * when some shards are down
+     */
+    public void setPartial(boolean partial) {
+        this.partial = partial;
+    }
+
+    /**
+     * If true, the server streams all batches without waiting for getMore
+     * requests. Exhaust cursors are not supported by mongos.
+     */
+    public boolean isExhaust() {
+        return exhaust;
+    }
+
+    /**
+     * If true, the server streams all batches without waiting for getMore
+     * requests. Exhaust cursors are not supported by mongos.
+     */
+    public void setExhaust(boolean exhaust) {
+        this.exhaust = exhaust;
+    }
+
+    @Override
+    public String toString() {
+        return "batchSize:" + batchSize + " maxTimeMS:" + maxTimeMS + " noCursorTimeout:" + noCursorTimeout
+                + " partial:" + partial + " exhaust:" + exhaust;
+    }
+}
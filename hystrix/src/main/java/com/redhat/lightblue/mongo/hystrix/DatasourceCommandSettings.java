@@ -0,0 +1,128 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.hystrix;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.mongodb.DBCollection;
+import com.mongodb.Mongo;
+
+/**
+ * Hystrix settings of the commands running on a datasource. The settings are
+ * registered for the client of the datasource, and the commands look up the
+ * settings using the client of their collection. Commands running on clients
+ * without registered settings use the shared "mongodb" thread pool and the
+ * Hystrix defaults.
+ *
+ * Hystrix initializes the properties of a command key or a thread pool key
+ * once, so the commands of a datasource with registered settings use the
+ * command keys mongodb:&lt;name&gt;:&lt;command&gt;, and unless a thread pool
+ * key is given, the thread pool key mongodb:&lt;name&gt;.
+ */
+public class DatasourceCommandSettings implements Serializable {
+
+    private static final long serialVersionUID = 1l;
+
+    private static final Map<Mongo, DatasourceCommandSettings> REGISTRY = new ConcurrentHashMap<>();
+
+    private final String name;
+    private CommandSettings defaults = new CommandSettings();
+    private final Map<String, CommandSettings> commands = new HashMap<>();
+
+    /**
+     * @param name The name of the datasource, used in the command and thread
+     * pool keys
+     */
+    public DatasourceCommandSettings(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The settings of all commands of the datasource
+     */
+    public CommandSettings getDefaults() {
+        return defaults;
+    }
+
+    /**
+     * The settings of all commands of the datasource
+     */
+    public void setDefaults(CommandSettings defaults) {
+        this.defaults = defaults == null ? new CommandSettings() : defaults;
+    }
+
+    /**
+     * Sets the settings of a command type, overriding the settings of all
+     * commands
+     *
+     * @param command The command type, the simple name of the command class,
+     * such as FindCommand
+     * @param settings The settings
+     */
+    public void setCommandSettings(String command, CommandSettings settings) {
+        commands.put(command, settings);
+    }
+
+    /**
+     * Returns the settings of a command type, with the settings of all commands
+     * merged in
+     *
+     * @param command The command type, the simple name of the command class
+     */
+    public CommandSettings getCommandSettings(String command) {
+        CommandSettings s = commands.get(command);
+        return s == null ? defaults.merge(null) : s.merge(defaults);
+    }
+
+    /**
+     * Registers the settings for the commands running with the given client
+     */
+    public static void register(Mongo client, DatasourceCommandSettings settings) {
+        REGISTRY.put(client, settings);
+    }
+
+    /**
+     * Removes the settings of a client
+     */
+    public static void unregister(Mongo client) {
+        REGISTRY.remove(client);
+    }
+
+    /**
+     * Returns the settings registered for the client of a collection, or null
+     */
+    public static DatasourceCommandSettings get(DBCollection collection) {
+        if (collection == null || REGISTRY.isEmpty()) {
+            return null;
+        }
+        return REGISTRY.get(collection.getDB().getMongo());
+    }
+
+    @Override
+    public String toString() {
+        return "name:" + name + " defaults:{" + defaults + "} commands:" + commands;
+    }
+}
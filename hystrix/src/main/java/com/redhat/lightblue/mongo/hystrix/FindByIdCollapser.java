@@ -0,0 +1,177 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.hystrix;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.netflix.hystrix.HystrixCollapser;
+import com.netflix.hystrix.HystrixCollapserKey;
+import com.netflix.hystrix.HystrixCollapserProperties;
+import com.netflix.hystrix.HystrixCommand;
+
+/**
+ * Looks up a document by _id. Concurrent lookups on the same collection with
+ * the same read preference are collapsed into a single find with an $in query.
+ * The lookups submitted within the batch delay are sent together, so a lookup
+ * may wait up to the batch delay before it is sent.
+ *
+ * The collapser key is built from the server addresses of the client, the
+ * database name and the full name of the collection, so lookups on
+ * collections of different servers are never collapsed together. The batch
+ * delay and the maximum batch size of a collapser key can be changed using the
+ * Hystrix collapser properties.
+ *
+ * Numeric _ids are matched by value, as mongo does, so a lookup for an
+ * Integer _id finds a document whose _id is stored as a Long or a Double.
+ */
+public class FindByIdCollapser extends HystrixCollapser<List<DBObject>, DBObject, Object> {
+
+    /**
+     * Default time in milliseconds lookups are collected before they are sent
+     */
+    public static final int DEFAULT_BATCH_DELAY_MS = 2;
+
+    /**
+     * Default maximum number of lookups sent in one batch
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    private static final String ID = "_id";
+
+    private final DBCollection collection;
+    private final Object id;
+    private final ReadPreference readPreference;
+
+    /**
+     * @param collection The collection
+     * @param id The _id of the document
+     */
+    public FindByIdCollapser(DBCollection collection, Object id) {
+        this(collection, id, null);
+    }
+
+    /**
+     * @param collection The collection
+     * @param id The _id of the document
+     * @param readPreference The read preference. If null, the read preference
+     * of the collection is used.
+     */
+    public FindByIdCollapser(DBCollection collection, Object id, ReadPreference readPreference) {
+        super(HystrixCollapser.Setter.withCollapserKey(HystrixCollapserKey.Factory.asKey(getCollapserKey(collection, readPreference))).
+                andScope(Scope.GLOBAL).
+                andCollapserPropertiesDefaults(HystrixCollapserProperties.Setter().
+                        withTimerDelayInMilliseconds(DEFAULT_BATCH_DELAY_MS).
+                        withMaxRequestsInBatch(DEFAULT_MAX_BATCH_SIZE).
+                        withRequestCacheEnabled(false)));
+        this.collection = collection;
+        this.id = id;
+        this.readPreference = readPreference;
+    }
+
+    private static String getCollapserKey(DBCollection collection, ReadPreference readPreference) {
+        return AbstractMongoCommand.GROUPKEY + ":FindById:" + collection.getDB().getMongo().getAllAddress()
+                + ":" + collection.getDB().getName() + ":" + collection.getFullName()
+                + (readPreference == null ? "" : ":" + readPreference.getName());
+    }
+
+    @Override
+    public Object getRequestArgument() {
+        return id;
+    }
+
+    @Override
+    protected HystrixCommand<List<DBObject>> createCommand(Collection<CollapsedRequest<DBObject, Object>> requests) {
+        List<Object> ids = new ArrayList<>(requests.size());
+        for (CollapsedRequest<DBObject, Object> request : requests) {
+            ids.add(request.getArgument());
+        }
+        return new FindByIdsCommand(collection, ids, readPreference);
+    }
+
+    @Override
+    protected void mapResponseToRequests(List<DBObject> batchResponse,
+                                         Collection<CollapsedRequest<DBObject, Object>> requests) {
+        Map<Object, DBObject> docs = new HashMap<>();
+        for (DBObject doc : batchResponse) {
+            docs.put(normalizeId(doc.get(ID)), doc);
+        }
+        for (CollapsedRequest<DBObject, Object> request : requests) {
+            request.setResponse(docs.get(normalizeId(request.getArgument())));
+        }
+    }
+
+    /**
+     * Returns the id as a map key. Numbers are compared by value, so integral
+     * numbers are returned as Long, and others as Double.
+     */
+    private static Object normalizeId(Object id) {
+        if (id instanceof Number) {
+            Number n = (Number) id;
+            double d = n.doubleValue();
+            if (d == Math.rint(d) && !Double.isInfinite(d)) {
+                return Long.valueOf(n.longValue());
+            } else {
+                return Double.valueOf(d);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Retrieves the documents with the given _ids
+     */
+    private static final class FindByIdsCommand extends AbstractMongoCommand<List<DBObject>> {
+        private final List<Object> ids;
+        private final ReadPreference readPreference;
+
+        FindByIdsCommand(DBCollection collection, List<Object> ids, ReadPreference readPreference) {
+            super(FindByIdsCommand.class.getSimpleName(), collection);
+            this.ids = ids;
+            this.readPreference = readPreference;
+        }
+
+        @Override
+        protected List<DBObject> runMongoCommand() {
+            DBObject query;
+            if (ids.size() == 1) {
+                query = new BasicDBObject(ID, ids.get(0));
+            } else {
+                query = new BasicDBObject(ID, new BasicDBObject("$in", ids));
+            }
+            DBCursor cursor = getDBCollection().find(query);
+            try {
+                if (readPreference != null) {
+                    cursor.setReadPreference(readPreference);
+                }
+                return cursor.toArray();
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+}
@@ -18,9 +18,13 @@
  */
 package com.redhat.lightblue.mongo.hystrix;
 
+import java.util.concurrent.TimeUnit;
+
+import com.mongodb.Bytes;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
 
 /**
  * Hystrix command for executing findOne on a MongoDB collection.
@@ -30,6 +34,8 @@ import com.mongodb.DBObject;
 public class FindCommand extends AbstractMongoCommand<DBCursor> {
     private final DBObject query;
     private final DBObject projection;
+    private final ReadPreference readPreference;
+    private final CursorOptions options;
 
     /**
      *
@@ -37,13 +43,60 @@ public class FindCommand extends AbstractMongoCommand<DBCursor> {
      * @param query
      */
     public FindCommand(DBCollection collection, DBObject query, DBObject projection) {
+        this(collection, query, projection, null);
+    }
+
+    /**
+     * @param collection The collection
+     * @param query The query
+     * @param projection The projection
+     * @param readPreference The read preference of the cursor. If null, the
+     * read preference of the collection is used.
+     */
+    public FindCommand(DBCollection collection, DBObject query, DBObject projection, ReadPreference readPreference) {
+        this(collection, query, projection, readPreference, null);
+    }
+
+    /**
+     * @param collection The collection
+     * @param query The query
+     * @param projection The projection
+     * @param readPreference The read preference of the cursor. If null, the
+     * read preference of the collection is used.
+     * @param options Optional cursor options
+     */
+    public FindCommand(DBCollection collection, DBObject query, DBObject projection, ReadPreference readPreference,
+                       CursorOptions options) {
         super(FindCommand.class.getSimpleName(), collection);
         this.query = query;
         this.projection = projection;
+        this.readPreference = readPreference;
+        this.options = options;
     }
 
     @Override
     protected DBCursor runMongoCommand() {
-        return getDBCollection().find(query, projection);
+        DBCursor cursor = getDBCollection().find(query, projection);
+        if (readPreference != null) {
+            cursor.setReadPreference(readPreference);
+        }
+        if (options != null) {
+            if (options.getBatchSize() > 0) {
+                cursor.batchSize(options.getBatchSize());
+            }
+            if (options.getMaxTimeMS() > 0) {
+                cursor.maxTime(options.getMaxTimeMS(), TimeUnit.MILLISECONDS);
+            }
+            if (options.isNoCursorTimeout()) {
+                cursor.addOption(Bytes.QUERYOPTION_NOTIMEOUT);
+            }
+            if (options.isPartial()) {
+                cursor.addOption(Bytes.QUERYOPTION_PARTIAL);
+            }
+            if (options.isExhaust()) {
+                cursor.addOption(Bytes.QUERYOPTION_EXHAUST);
+            }
+        }
+        return cursor;
     }
 }
@@ -20,6 +20,8 @@ package com.redhat.lightblue.mongo.hystrix;
 
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.netflix.hystrix.HystrixCommandProperties;
 
 /**
  * Hystrix command for executing findOne on a MongoDB collection.
@@ -28,6 +30,7 @@ import com.mongodb.DBObject;
  */
 public class FindOneCommand extends AbstractMongoCommand<DBObject> {
     private final DBObject query;
+    private final ReadPreference readPreference;
 
     /**
      *
@@ -35,12 +38,40 @@ public class FindOneCommand extends AbstractMongoCommand<DBObject> {
      * @param query
      */
     public FindOneCommand(DBCollection collection, DBObject query) {
-        super(FindOneCommand.class.getSimpleName(), collection);
+        this(collection, query, null);
+    }
+
+    /**
+     * @param collection The collection
+     * @param query The query
+     * @param readPreference The read preference. If null, the read preference
+     * of the collection is used.
+     */
+    public FindOneCommand(DBCollection collection, DBObject query, ReadPreference readPreference) {
+        this(collection, query, readPreference, null);
+    }
+
+    /**
+     * @param collection The collection
+     * @param query The query
+     * @param readPreference The read preference. If null, the read preference
+     * of the collection is used.
+     * @param isolation The isolation strategy. If null, the command runs on
+     * the thread pool.
+     */
+    public FindOneCommand(DBCollection collection, DBObject query, ReadPreference readPreference,
+                          HystrixCommandProperties.ExecutionIsolationStrategy isolation) {
+        super(FindOneCommand.class.getSimpleName(), collection, isolation);
         this.query = query;
+        this.readPreference = readPreference;
     }
 
     @Override
     protected DBObject runMongoCommand() {
-        return getDBCollection().findOne(query);
+        if (readPreference == null) {
+            return getDBCollection().findOne(query);
+        } else {
+            return getDBCollection().findOne(query, null, readPreference);
+        }
     }
 }
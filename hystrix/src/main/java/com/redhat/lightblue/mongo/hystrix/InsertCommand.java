@@ -22,6 +22,7 @@ import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
+import com.netflix.hystrix.HystrixCommandProperties;
 
 /**
  *
@@ -36,7 +37,19 @@ public class InsertCommand extends AbstractMongoCommand<WriteResult> {
     }
 
     public InsertCommand(DBCollection collection, DBObject[] data, WriteConcern concern) {
-        super(InsertCommand.class.getSimpleName(), collection);
+        this(collection, data, concern, null);
+    }
+
+    /**
+     * @param collection The collection
+     * @param data The documents to insert
+     * @param concern The write concern
+     * @param isolation The isolation strategy. If null, the command runs on
+     * the thread pool.
+     */
+    public InsertCommand(DBCollection collection, DBObject[] data, WriteConcern concern,
+                         HystrixCommandProperties.ExecutionIsolationStrategy isolation) {
+        super(InsertCommand.class.getSimpleName(), collection, isolation);
         this.data = data;
         this.concern = concern;
     }
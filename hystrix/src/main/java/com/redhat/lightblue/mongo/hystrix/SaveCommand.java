@@ -21,6 +21,7 @@ package com.redhat.lightblue.mongo.hystrix;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.WriteResult;
+import com.netflix.hystrix.HystrixCommandProperties;
 
 /**
  *
@@ -30,7 +31,18 @@ public class SaveCommand extends AbstractMongoCommand<WriteResult> {
     private final DBObject data;
 
     public SaveCommand(DBCollection collection, DBObject data) {
-        super(SaveCommand.class.getSimpleName(), collection);
+        this(collection, data, null);
+    }
+
+    /**
+     * @param collection The collection
+     * @param data The document to save
+     * @param isolation The isolation strategy. If null, the command runs on
+     * the thread pool.
+     */
+    public SaveCommand(DBCollection collection, DBObject data,
+                       HystrixCommandProperties.ExecutionIsolationStrategy isolation) {
+        super(SaveCommand.class.getSimpleName(), collection, isolation);
         this.data = data;
     }
 
@@ -0,0 +1,68 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.hystrix;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.WriteConcern;
+import com.netflix.hystrix.exception.HystrixBadRequestException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkWriteCommandTest extends AbstractMongoTest {
+    @Before
+    @Override
+    public void setup() {
+        coll = db.getCollection(COLL_NAME);
+    }
+
+    @Test
+    public void executeInserts() {
+        BulkWriteOperation bulk = coll.initializeUnorderedBulkOperation();
+        bulk.insert(new BasicDBObject("name", "obj1"));
+        bulk.insert(new BasicDBObject("name", "obj2"));
+        BulkWriteResult result = new BulkWriteCommand(coll, bulk, WriteConcern.SAFE).execute();
+
+        Assert.assertEquals(2, result.getInsertedCount());
+        Assert.assertEquals(2, coll.find().count());
+    }
+
+    @Test
+    public void executeWithDuplicate() {
+        coll.insert(new BasicDBObject("_id", "dup"));
+        BulkWriteOperation bulk = coll.initializeUnorderedBulkOperation();
+        bulk.insert(new BasicDBObject("_id", "a"));
+        bulk.insert(new BasicDBObject("_id", "dup"));
+        bulk.insert(new BasicDBObject("_id", "b"));
+        try {
+            new BulkWriteCommand(coll, bulk, WriteConcern.SAFE).execute();
+            Assert.fail();
+        } catch (HystrixBadRequestException e) {
+            Assert.assertTrue(e.getCause() instanceof BulkWriteException);
+            BulkWriteException bwe = (BulkWriteException) e.getCause();
+            Assert.assertEquals(1, bwe.getWriteErrors().size());
+            Assert.assertEquals(1, bwe.getWriteErrors().get(0).getIndex());
+        }
+        // Unordered, so the writes after the failing one are executed
+        Assert.assertEquals(3, coll.find().count());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.hystrix;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.netflix.hystrix.HystrixCommandProperties;
+
+public class DatasourceCommandSettingsTest extends AbstractMongoTest {
+
+    @Test
+    public void mergeCommandSettings() {
+        DatasourceCommandSettings ds = new DatasourceCommandSettings("ds");
+        CommandSettings defaults = new CommandSettings();
+        defaults.setPoolSize(5);
+        defaults.setTimeoutMS(2000);
+        ds.setDefaults(defaults);
+        CommandSettings find = new CommandSettings();
+        find.setTimeoutMS(500);
+        find.setIsolation(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE);
+        ds.setCommandSettings("FindCommand", find);
+
+        CommandSettings s = ds.getCommandSettings("FindCommand");
+        Assert.assertEquals(Integer.valueOf(5), s.getPoolSize());
+        Assert.assertEquals(Integer.valueOf(500), s.getTimeoutMS());
+        Assert.assertEquals(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE, s.getIsolation());
+
+        s = ds.getCommandSettings("InsertCommand");
+        Assert.assertEquals(Integer.valueOf(5), s.getPoolSize());
+        Assert.assertEquals(Integer.valueOf(2000), s.getTimeoutMS());
+        Assert.assertNull(s.getIsolation());
+    }
+
+    @Test
+    public void registeredSettings() {
+        // No settings, shared pool
+        FindCommand cmd = new FindCommand(coll, new BasicDBObject(key1, "obj1"), null);
+        Assert.assertEquals(AbstractMongoCommand.GROUPKEY + ":FindCommand", cmd.getCommandKey().name());
+        Assert.assertEquals(AbstractMongoCommand.GROUPKEY, cmd.getThreadPoolKey().name());
+
+        DatasourceCommandSettings ds = new DatasourceCommandSettings("registeredSettings");
+        CommandSettings find = new CommandSettings();
+        find.setThreadPoolKey("registeredSettingsReads");
+        find.setIsolation(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE);
+        find.setTimeoutMS(1500);
+        ds.setCommandSettings("FindCommand", find);
+        DatasourceCommandSettings.register(db.getMongo(), ds);
+        try {
+            cmd = new FindCommand(coll, new BasicDBObject(key1, "obj1"), null);
+            Assert.assertEquals("mongodb:registeredSettings:FindCommand", cmd.getCommandKey().name());
+            Assert.assertEquals("registeredSettingsReads", cmd.getThreadPoolKey().name());
+            Assert.assertEquals(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE,
+                    cmd.getProperties().executionIsolationStrategy().get());
+            Assert.assertEquals(Integer.valueOf(1500), cmd.getProperties().executionTimeoutInMilliseconds().get());
+            DBCursor cursor = cmd.execute();
+            Assert.assertEquals(1, cursor.count());
+
+            InsertCommand insert = new InsertCommand(coll, new BasicDBObject(key1, "obj5"), null);
+            Assert.assertEquals("mongodb:registeredSettings:InsertCommand", insert.getCommandKey().name());
+            Assert.assertEquals("mongodb:registeredSettings", insert.getThreadPoolKey().name());
+        } finally {
+            DatasourceCommandSettings.unregister(db.getMongo());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.mongo.hystrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+
+public class FindByIdCollapserTest extends AbstractMongoTest {
+
+    @Test
+    public void findById() {
+        coll.insert(new BasicDBObject("_id", "findById1").append(key1, "value1"));
+
+        DBObject obj = new FindByIdCollapser(coll, "findById1").execute();
+        Assert.assertNotNull(obj);
+        Assert.assertEquals("value1", obj.get(key1));
+
+        Assert.assertNull(new FindByIdCollapser(coll, "findByIdMissing", ReadPreference.primary()).execute());
+    }
+
+    @Test
+    public void collapseConcurrentLookups() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            coll.insert(new BasicDBObject("_id", "collapse" + i).append(key1, "value" + i));
+        }
+        List<Future<DBObject>> futures = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            futures.add(new FindByIdCollapser(coll, "collapse" + i).queue());
+        }
+        for (int i = 0; i < 25; i++) {
+            DBObject obj = futures.get(i).get();
+            if (i < 20) {
+                Assert.assertNotNull(obj);
+                Assert.assertEquals("collapse" + i, obj.get("_id"));
+                Assert.assertEquals("value" + i, obj.get(key1));
+            } else {
+                Assert.assertNull(obj);
+            }
+        }
+    }
+
+    @Test
+    public void numericIds() throws Exception {
+        coll.insert(new BasicDBObject("_id", 1L).append(key1, "long"));
+        coll.insert(new BasicDBObject("_id", 2.0).append(key1, "double"));
+        coll.insert(new BasicDBObject("_id", 2.5).append(key1, "fraction"));
+        Future<DBObject> f1 = new FindByIdCollapser(coll, 1).queue();
+        Future<DBObject> f2 = new FindByIdCollapser(coll, 2).queue();
+        Future<DBObject> f3 = new FindByIdCollapser(coll, 2.5).queue();
+        Future<DBObject> f4 = new FindByIdCollapser(coll, 3).queue();
+        Assert.assertEquals("long", f1.get().get(key1));
+        Assert.assertEquals("double", f2.get().get(key1));
+        Assert.assertEquals("fraction", f3.get().get(key1));
+        Assert.assertNull(f4.get());
+    }
+}
@@ -19,8 +19,10 @@
 package com.redhat.lightblue.mongo.hystrix;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -69,4 +71,37 @@ public class FindCommandTest extends AbstractMongoTest {
         }
         Assert.assertEquals(expectedCount, count);
     }
+
+    @Test
+    public void executeWithReadPreference() {
+        int expectedCount = 2;
+
+        DBObject query = new BasicDBObject(key1, "obj" + expectedCount);
+        DBCursor cur = new FindCommand(coll, query, null, ReadPreference.primaryPreferred()).execute();
+
+        Assert.assertEquals(ReadPreference.primaryPreferred(), cur.getReadPreference());
+        Assert.assertEquals(expectedCount, cur.count());
+    }
+
+    @Test
+    public void executeWithCursorOptions() {
+        int expectedCount = 3;
+
+        CursorOptions options = new CursorOptions();
+        options.setBatchSize(1);
+        options.setMaxTimeMS(60000);
+        options.setNoCursorTimeout(true);
+        DBObject query = new BasicDBObject(key1, "obj" + expectedCount);
+        DBCursor cur = new FindCommand(coll, query, null, null, options).execute();
+
+        Assert.assertTrue((cur.getOptions() & Bytes.QUERYOPTION_NOTIMEOUT) != 0);
+        Assert.assertTrue((cur.getOptions() & Bytes.QUERYOPTION_PARTIAL) == 0);
+        int count = 0;
+        while (cur.hasNext()) {
+            Assert.assertNotNull(cur.next());
+            count++;
+        }
+        cur.close();
+        Assert.assertEquals(expectedCount, count);
+    }
 }
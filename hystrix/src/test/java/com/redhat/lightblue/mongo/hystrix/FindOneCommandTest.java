@@ -20,6 +20,7 @@ package com.redhat.lightblue.mongo.hystrix;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
+import com.netflix.hystrix.HystrixCommandProperties;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -38,4 +39,20 @@ public class FindOneCommandTest extends AbstractMongoTest {
         Assert.assertNotNull(obj.get(key1));
         Assert.assertNotNull(obj.get(key2));
     }
+
+    @Test
+    public void executeSemaphoreIsolated() {
+        DBObject query = new BasicDBObject(key1, "obj4");
+        FindOneCommand cmd = new FindOneCommand(coll, query, null, HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE);
+
+        Assert.assertEquals(AbstractMongoCommand.GROUPKEY + ":FindOneCommand" + AbstractMongoCommand.SEMAPHORE_SUFFIX,
+                cmd.getCommandKey().name());
+        Assert.assertEquals(HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE,
+                cmd.getProperties().executionIsolationStrategy().get());
+        DBObject obj = cmd.execute();
+        Assert.assertNotNull(obj);
+        Assert.assertEquals("obj4", obj.get(key1));
+        Assert.assertTrue(cmd.isExecutionComplete());
+        Assert.assertFalse(cmd.isExecutedInThread());
+    }
 }
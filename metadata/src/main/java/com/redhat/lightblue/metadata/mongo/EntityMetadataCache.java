@@ -0,0 +1,209 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.mongo;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+
+/**
+ * A bounded, thread-safe cache of entity metadata keyed by entity name and
+ * version. Entries expire after a fixed time to live.
+ *
+ * Every invalidation increments the generation of the cache. Metadata loaded
+ * from the db is only cached if the generation did not change while it was
+ * being loaded, so a modification of the metadata that runs concurrently with
+ * a read cannot leave the old metadata in the cache.
+ */
+public class EntityMetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityMetadataCache.class);
+
+    /**
+     * Default time to live of cached metadata
+     */
+    public static final long DEFAULT_TTL_MS = 60000;
+
+    /**
+     * Default maximum number of cached metadata
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final long ttlMS;
+    private final int maxSize;
+    private final ConcurrentMap<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    private static final class CacheEntry {
+        private final EntityMetadata md;
+        private final long expiresAt;
+
+        public CacheEntry(EntityMetadata md, long expiresAt) {
+            this.md = md;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public EntityMetadataCache() {
+        this(DEFAULT_TTL_MS, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param ttlMS Time to live of cached metadata in milliseconds
+     * @param maxSize Maximum number of cached metadata
+     */
+    public EntityMetadataCache(long ttlMS, int maxSize) {
+        if (ttlMS <= 0) {
+            throw new IllegalArgumentException("ttlMS:" + ttlMS);
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize:" + maxSize);
+        }
+        this.ttlMS = ttlMS;
+        this.maxSize = maxSize;
+    }
+
+    public long getTTLMS() {
+        return ttlMS;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of entries in the cache, including the expired
+     * entries that are not removed yet
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the current generation of the cache. This should be read before
+     * loading metadata from the db, and passed to put().
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the cached metadata, or null if the metadata is not cached or
+     * expired
+     *
+     * @param entityName The entity name
+     * @param version The version, null for the default version
+     */
+    public EntityMetadata get(String entityName, String version) {
+        String key = key(entityName, version);
+        CacheEntry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.expiresAt > System.currentTimeMillis()) {
+                return entry.md;
+            }
+            LOGGER.debug("Cached metadata expired: {}", key);
+            entries.remove(key, entry);
+        }
+        return null;
+    }
+
+    /**
+     * Caches metadata loaded from the db. If the cache is invalidated after
+     * the given generation is read, the metadata is not cached.
+     *
+     * @param entityName The entity name
+     * @param version The version requested, null for the default version
+     * @param md The metadata
+     * @param gen The generation of the cache read before loading the metadata
+     */
+    public void put(String entityName, String version, EntityMetadata md, long gen) {
+        if (gen != generation.get()) {
+            LOGGER.debug("Metadata modified while loading, not caching {}:{}", entityName, version);
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        String key = key(entityName, version);
+        CacheEntry entry = new CacheEntry(md, System.currentTimeMillis() + ttlMS);
+        entries.put(key, entry);
+        // An invalidation may have run after the generation check
+        if (gen != generation.get()) {
+            entries.remove(key, entry);
+        }
+    }
+
+    /**
+     * Removes all versions of the given entity from the cache
+     */
+    public void invalidate(String entityName) {
+        LOGGER.debug("Invalidating cached metadata for {}", entityName);
+        generation.incrementAndGet();
+        String prefix = entityName + BSONParser.DELIMITER_ID;
+        for (Iterator<String> itr = entries.keySet().iterator(); itr.hasNext();) {
+            if (itr.next().startsWith(prefix)) {
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes everything from the cache
+     */
+    public void invalidateAll() {
+        LOGGER.debug("Invalidating all cached metadata");
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * Removes the expired entries. If the cache is still full, removes the
+     * entry that expires first.
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        String first = null;
+        long firstExpiresAt = Long.MAX_VALUE;
+        for (Iterator<Map.Entry<String, CacheEntry>> itr = entries.entrySet().iterator(); itr.hasNext();) {
+            Map.Entry<String, CacheEntry> e = itr.next();
+            long expiresAt = e.getValue().expiresAt;
+            if (expiresAt <= now) {
+                itr.remove();
+            } else if (expiresAt < firstExpiresAt) {
+                first = e.getKey();
+                firstExpiresAt = expiresAt;
+            }
+        }
+        if (entries.size() >= maxSize && first != null) {
+            LOGGER.debug("Metadata cache full, evicting {}", first);
+            entries.remove(first);
+        }
+    }
+
+    private static String key(String entityName, String version) {
+        return entityName + BSONParser.DELIMITER_ID + (version == null ? "" : version);
+    }
+}
@@ -18,6 +18,8 @@
  */
 package com.redhat.lightblue.metadata.mongo;
 
+import com.mongodb.ReadPreference;
+
 import com.redhat.lightblue.metadata.MetadataConstants;
 import com.redhat.lightblue.metadata.DataStore;
 import com.redhat.lightblue.metadata.parser.DataStoreParser;
@@ -30,6 +32,7 @@ import com.redhat.lightblue.util.Error;
 public class MongoDataStoreParser<T> implements DataStoreParser<T> {
 
     public static final String COLLECTION_REQUIRED = "COLLECTION_REQUIRED";
+    public static final String INVALID_READ_PREFERENCE = "INVALID_READ_PREFERENCE";
 
     public static final String NAME = "mongo";
 
@@ -47,6 +50,15 @@ public class MongoDataStoreParser<T> implements DataStoreParser<T> {
                 || ds.getCollectionName().length() == 0) {
             throw Error.get(COLLECTION_REQUIRED, "datastore");
         }
+        String readPreference = p.getStringProperty(node, "readPreference");
+        if (readPreference != null) {
+            try {
+                ReadPreference.valueOf(readPreference);
+            } catch (IllegalArgumentException e) {
+                throw Error.get(INVALID_READ_PREFERENCE, readPreference);
+            }
+            ds.setReadPreference(readPreference);
+        }
         return ds;
     }
 
@@ -62,6 +74,9 @@ public class MongoDataStoreParser<T> implements DataStoreParser<T> {
         if (ds.getCollectionName() != null) {
             p.putString(emptyNode, "collection", ds.getCollectionName());
         }
+        if (ds.getReadPreference() != null) {
+            p.putString(emptyNode, "readPreference", ds.getReadPreference());
+        }
     }
 
     @Override
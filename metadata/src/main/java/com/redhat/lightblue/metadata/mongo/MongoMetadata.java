@@ -38,6 +38,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 public class MongoMetadata extends AbstractMetadata {
@@ -52,9 +53,22 @@ public class MongoMetadata extends AbstractMetadata {
     private static final String LITERAL_STATUS_VALUE = "status.value";
     private static final String LITERAL_NAME = "name";
     private static final char[] INVALID_COLLECTION_CHARS = {'-', ' ', '.'};
+    /**
+     * _id of the document in the metadata collection whose version is
+     * incremented whenever metadata is modified. It does not contain the id
+     * delimiter, so it cannot clash with entity info or schema ids.
+     */
+    public static final String CACHE_VERSION_ID = "_metadataCacheVersion";
+    private static final String LITERAL_CACHE_VERSION = "cacheVersion";
+    private static final DBObject CACHE_VERSION_QUERY = new BasicDBObject(LITERAL_ID, CACHE_VERSION_ID);
     private final transient DBCollection collection;
     private final transient BSONParser mdParser;
     private final Factory factory;
+    private transient EntityMetadataCache cache;
+    private long cacheVersionPollMS = 0;
+    private final transient AtomicLong lastCacheVersionPoll = new AtomicLong();
+    private transient volatile long lastCacheVersion = -1;
+    private boolean collapseLookups = false;
 
     public MongoMetadata(DB db,
                          String metadataCollection,
@@ -73,6 +87,63 @@ public class MongoMetadata extends AbstractMetadata {
         this(db, DEFAULT_METADATA_COLLECTION, parserExtensions, typeResolver, factory);
     }
 
+    /**
+     * Returns the entity metadata cache, or null if entity metadata is not
+     * cached
+     */
+    public EntityMetadataCache getEntityMetadataCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the entity metadata cache. If null, entity metadata is read from
+     * the db for every call.
+     */
+    public void setEntityMetadataCache(EntityMetadataCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns how often, in milliseconds, the cache version document is read
+     * to detect metadata modifications made by other nodes. 0 means the
+     * cache version is not checked.
+     */
+    public long getCacheVersionPollMS() {
+        return cacheVersionPollMS;
+    }
+
+    /**
+     * Sets how often, in milliseconds, the cache version document is read to
+     * detect metadata modifications made by other nodes. If the cache version
+     * changed since the last check, the whole cache is invalidated, so
+     * modifications made by other nodes are seen within this delay. 0 means
+     * the cache version is not checked, and cached metadata is only
+     * invalidated by modifications made through this instance or when it
+     * expires.
+     */
+    public void setCacheVersionPollMS(long l) {
+        cacheVersionPollMS = l;
+    }
+
+    /**
+     * Returns whether entity info and schema lookups are collapsed with
+     * concurrent lookups
+     */
+    public boolean isCollapseLookups() {
+        return collapseLookups;
+    }
+
+    /**
+     * Sets whether entity info and schema lookups are collapsed with
+     * concurrent lookups into batched $in queries using FindByIdCollapser. A
+     * collapsed lookup waits up to the collapser batch delay, so this only
+     * helps when many concurrent lookups miss the entity metadata cache. Off
+     * by default.
+     */
+    public void setCollapseLookups(boolean b) {
+        collapseLookups = b;
+    }
+
     @Override
     public EntityMetadata getEntityMetadata(String entityName,
                                             String version) {
@@ -80,6 +151,19 @@ public class MongoMetadata extends AbstractMetadata {
             throw new IllegalArgumentException(LITERAL_ENTITY_NAME);
         }
 
+        EntityMetadataCache c = cache;
+        String requestedVersion = version == null || version.length() == 0 ? null : version;
+        long generation = 0;
+        if (c != null) {
+            pollCacheVersion(c);
+            EntityMetadata md = c.get(entityName, requestedVersion);
+            if (md != null) {
+                LOGGER.debug("Returning cached metadata for {}:{}", entityName, requestedVersion);
+                return md;
+            }
+            generation = c.getGeneration();
+        }
+
         Error.push("getEntityMetadata(" + entityName + ":" + version + ")");
         try {
             EntityInfo info = getEntityInfo(entityName);
@@ -93,14 +177,17 @@ public class MongoMetadata extends AbstractMetadata {
 
             EntitySchema schema;
 
-            BasicDBObject query = new BasicDBObject(LITERAL_ID, entityName + BSONParser.DELIMITER_ID + version);
-            DBObject es = new FindOneCommand(collection, query).execute();
+            DBObject es = findById(entityName + BSONParser.DELIMITER_ID + version);
             if (es != null) {
                 schema = mdParser.parseEntitySchema(es);
             } else {
                 throw Error.get(MongoMetadataConstants.ERR_UNKNOWN_VERSION, entityName + ":" + version);
             }
-            return new EntityMetadata(info, schema);
+            EntityMetadata md = new EntityMetadata(info, schema);
+            if (c != null) {
+                c.put(entityName, requestedVersion, md, generation);
+            }
+            return md;
         } catch (Error | IllegalArgumentException e) {
             // rethrow lightblue error or IllegalArgumentException
             throw e;
@@ -119,8 +206,7 @@ public class MongoMetadata extends AbstractMetadata {
 
         Error.push("getEntityInfo(" + entityName + ")");
         try {
-            BasicDBObject query = new BasicDBObject(LITERAL_ID, entityName + BSONParser.DELIMITER_ID);
-            DBObject ei = new FindOneCommand(collection, query).execute();
+            DBObject ei = findById(entityName + BSONParser.DELIMITER_ID);
             if (ei != null) {
                 return mdParser.parseEntityInfo(ei);
             } else {
@@ -312,6 +398,7 @@ public class MongoMetadata extends AbstractMetadata {
             LOGGER.error("createNewMetadata", e);
             throw analyzeException(e, MetadataConstants.ERR_ILL_FORMED_METADATA);
         } finally {
+            invalidateCache(md.getName());
             Error.pop();
         }
         LOGGER.debug("createNewMetadata: end");
@@ -361,6 +448,7 @@ public class MongoMetadata extends AbstractMetadata {
         } catch (Exception e) {
             throw analyzeException(e, MetadataConstants.ERR_ILL_FORMED_METADATA);
         } finally {
+            invalidateCache(ei.getName());
             Error.pop();
         }
     }
@@ -437,6 +525,7 @@ public class MongoMetadata extends AbstractMetadata {
         } catch (Exception e) {
             throw analyzeException(e, MetadataConstants.ERR_ILL_FORMED_METADATA);
         } finally {
+            invalidateCache(md.getName());
             Error.pop();
         }
     }
@@ -507,6 +596,7 @@ public class MongoMetadata extends AbstractMetadata {
         } catch (Exception e) {
             throw analyzeException(e, MetadataConstants.ERR_ILL_FORMED_METADATA);
         } finally {
+            invalidateCache(entityName);
             Error.pop();
         }
     }
@@ -541,6 +631,68 @@ public class MongoMetadata extends AbstractMetadata {
         } catch (Exception e) {
             LOGGER.error("Error during delete", e);
             throw analyzeException(e, MongoMetadataConstants.ERR_DB_ERROR);
+        } finally {
+            invalidateCache(entityName);
+        }
+    }
+
+    /**
+     * Reads the document with the given _id from the metadata collection
+     */
+    private DBObject findById(String id) {
+        if (collapseLookups) {
+            return new FindByIdCollapser(collection, id).execute();
+        } else {
+            return new FindOneCommand(collection, new BasicDBObject(LITERAL_ID, id)).execute();
+        }
+    }
+
+    /**
+     * Invalidates the cached metadata of the entity, and increments the cache
+     * version so other nodes invalidate their caches as well
+     */
+    private void invalidateCache(String entityName) {
+        EntityMetadataCache c = cache;
+        if (c != null) {
+            c.invalidate(entityName);
+        }
+        try {
+            new UpdateCommand(collection, CACHE_VERSION_QUERY,
+                    new BasicDBObject("$inc", new BasicDBObject(LITERAL_CACHE_VERSION, 1)), true, false).execute();
+        } catch (Exception e) {
+            // Other nodes see the modification when their cached metadata expires
+            LOGGER.warn("Cannot increment metadata cache version", e);
+        }
+    }
+
+    /**
+     * Reads the cache version if it was not read in the last
+     * cacheVersionPollMS milliseconds, and invalidates the cache if the cache
+     * version changed. Only one thread reads the cache version at a time,
+     * other threads use the cache without waiting.
+     */
+    private void pollCacheVersion(EntityMetadataCache c) {
+        if (cacheVersionPollMS > 0) {
+            long now = System.currentTimeMillis();
+            long last = lastCacheVersionPoll.get();
+            if (now - last >= cacheVersionPollMS && lastCacheVersionPoll.compareAndSet(last, now)) {
+                try {
+                    DBObject doc = new FindOneCommand(collection, CACHE_VERSION_QUERY).execute();
+                    Object x = doc == null ? null : doc.get(LITERAL_CACHE_VERSION);
+                    // No version document means metadata was never modified
+                    long v = x instanceof Number ? ((Number) x).longValue() : 0;
+                    long lastVersion = lastCacheVersion;
+                    if (v != lastVersion) {
+                        if (lastVersion >= 0) {
+                            LOGGER.debug("Metadata cache version changed from {} to {}", lastVersion, v);
+                            c.invalidateAll();
+                        }
+                        lastCacheVersion = v;
+                    }
+                } catch (Exception e) {
+                    LOGGER.warn("Cannot read metadata cache version", e);
+                }
+            }
         }
     }
 
@@ -0,0 +1,77 @@
+/*
+ Copyright 2013 Red Hat, Inc. and/or its affiliates.
+
+ This file is part of lightblue.
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.redhat.lightblue.metadata.mongo;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.redhat.lightblue.metadata.EntityMetadata;
+
+public class EntityMetadataCacheTest {
+
+    @Test
+    public void putAndGet() {
+        EntityMetadataCache cache = new EntityMetadataCache();
+        EntityMetadata md = new EntityMetadata("a");
+        cache.put("a", "1.0", md, cache.getGeneration());
+        Assert.assertSame(md, cache.get("a", "1.0"));
+        Assert.assertNull(cache.get("a", "2.0"));
+        Assert.assertNull(cache.get("a", null));
+    }
+
+    @Test
+    public void expiry() throws Exception {
+        EntityMetadataCache cache = new EntityMetadataCache(10, 10);
+        cache.put("a", "1.0", new EntityMetadata("a"), cache.getGeneration());
+        Thread.sleep(20);
+        Assert.assertNull(cache.get("a", "1.0"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidate() {
+        EntityMetadataCache cache = new EntityMetadataCache();
+        cache.put("a", "1.0", new EntityMetadata("a"), cache.getGeneration());
+        cache.put("a", null, new EntityMetadata("a"), cache.getGeneration());
+        cache.put("ab", "1.0", new EntityMetadata("ab"), cache.getGeneration());
+        cache.invalidate("a");
+        Assert.assertNull(cache.get("a", "1.0"));
+        Assert.assertNull(cache.get("a", null));
+        Assert.assertNotNull(cache.get("ab", "1.0"));
+    }
+
+    @Test
+    public void notCachedIfInvalidatedWhileLoading() {
+        EntityMetadataCache cache = new EntityMetadataCache();
+        long gen = cache.getGeneration();
+        cache.invalidate("a");
+        cache.put("a", "1.0", new EntityMetadata("a"), gen);
+        Assert.assertNull(cache.get("a", "1.0"));
+    }
+
+    @Test
+    public void bounded() {
+        EntityMetadataCache cache = new EntityMetadataCache(60000, 3);
+        for (int i = 0; i < 10; i++) {
+            cache.put("e" + i, "1.0", new EntityMetadata("e" + i), cache.getGeneration());
+        }
+        Assert.assertEquals(3, cache.size());
+        Assert.assertNotNull(cache.get("e9", "1.0"));
+    }
+}
@@ -261,6 +261,74 @@ public class MongoMetadataTest {
         Assert.assertEquals(MetadataStatus.DEPRECATED, g1.getStatus());
     }
 
+    @Test
+    public void cachedMetadataTest() throws Exception {
+        md.setEntityMetadataCache(new EntityMetadataCache());
+        EntityMetadata e = new EntityMetadata("testEntity");
+        e.setVersion(new Version("1.0.0", null, "some text blah blah"));
+        e.setStatus(MetadataStatus.ACTIVE);
+        e.setDataStore(new MongoDataStore(null, null, "testCollection"));
+        e.getFields().put(new SimpleField("field1", StringType.TYPE));
+        e.getEntityInfo().setDefaultVersion("1.0.0");
+        md.createNewMetadata(e);
+
+        EntityMetadata g = md.getEntityMetadata("testEntity", "1.0.0");
+        Assert.assertSame(g, md.getEntityMetadata("testEntity", "1.0.0"));
+        EntityMetadata d = md.getEntityMetadata("testEntity", null);
+        Assert.assertSame(d, md.getEntityMetadata("testEntity", ""));
+
+        // Status change invalidates all versions
+        md.setMetadataStatus("testEntity", "1.0.0", MetadataStatus.DEPRECATED, "deprecate");
+        EntityMetadata g1 = md.getEntityMetadata("testEntity", "1.0.0");
+        Assert.assertNotSame(g, g1);
+        Assert.assertEquals(MetadataStatus.DEPRECATED, g1.getStatus());
+        Assert.assertEquals(MetadataStatus.DEPRECATED, md.getEntityMetadata("testEntity", null).getStatus());
+
+        // New schema and default version change
+        EntityMetadata e2 = new EntityMetadata("testEntity");
+        e2.setVersion(new Version("2.0.0", null, "some text blah blah"));
+        e2.setStatus(MetadataStatus.ACTIVE);
+        e2.setDataStore(new MongoDataStore(null, null, "testCollection"));
+        e2.getFields().put(new SimpleField("field1", StringType.TYPE));
+        md.createNewSchema(e2);
+        EntityInfo info = md.getEntityInfo("testEntity");
+        info.setDefaultVersion("2.0.0");
+        md.updateEntityInfo(info);
+        Assert.assertEquals("2.0.0", md.getEntityMetadata("testEntity", null).getVersion().getValue());
+    }
+
+    @Test
+    public void cacheInvalidatedByOtherNodeTest() throws Exception {
+        Factory factory = new Factory();
+        factory.addCRUDController("mongo", new TestCRUDController());
+        Extensions<BSONObject> x = new Extensions<>();
+        x.addDefaultExtensions();
+        x.registerDataStoreParser("mongo", new MongoDataStoreParser<BSONObject>());
+        MongoMetadata node1 = new MongoMetadata(mongo.getDB(), x, new DefaultTypes(), factory);
+        node1.setEntityMetadataCache(new EntityMetadataCache());
+        node1.setCacheVersionPollMS(1);
+        // The other node does not cache
+        MongoMetadata node2 = md;
+
+        EntityMetadata e = new EntityMetadata("testEntity");
+        e.setVersion(new Version("1.0.0", null, "some text blah blah"));
+        e.setStatus(MetadataStatus.ACTIVE);
+        e.setDataStore(new MongoDataStore(null, null, "testCollection"));
+        e.getFields().put(new SimpleField("field1", StringType.TYPE));
+        e.getEntityInfo().setDefaultVersion("1.0.0");
+        node2.createNewMetadata(e);
+
+        EntityMetadata g = node1.getEntityMetadata("testEntity", "1.0.0");
+        Assert.assertEquals(MetadataStatus.ACTIVE, g.getStatus());
+        Assert.assertSame(g, node1.getEntityMetadata("testEntity", "1.0.0"));
+
+        node2.setMetadataStatus("testEntity", "1.0.0", MetadataStatus.DEPRECATED, "deprecate");
+        Thread.sleep(10);
+        Assert.assertEquals(MetadataStatus.DEPRECATED, node1.getEntityMetadata("testEntity", "1.0.0").getStatus());
+        // Entity names are not affected by the cache version document
+        Assert.assertEquals(1, node1.getEntityNames().length);
+    }
+
     @Test
     public void disabledDefaultUpdateTest() throws Exception {
         EntityMetadata e = new EntityMetadata("testEntity");